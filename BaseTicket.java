@@ -0,0 +1,33 @@
+import java.util.Date;
+
+abstract class BaseTicket {
+    String ticketId;
+    String name;
+    int age;
+    String seat;
+    String coach;
+    String from;
+    String to;
+    double price;
+    Date bookedOn;
+
+    BaseTicket(String ticketId, String name, int age, String seat, String coach,String from, String to, double price, Date bookedOn) {
+        this.ticketId = ticketId;
+        this.name = name;
+        this.age = age;
+        this.seat = seat;
+        this.coach = coach;
+        this.from = from;
+        this.to = to;
+        this.price = price;
+        this.bookedOn = bookedOn;
+    }
+
+    // Prices are whole paise; price holds them as rupees
+    long pricePaise() {
+        return Math.round(price * 100);
+    }
+
+    // Polymorphic method
+    abstract String getTicketType();
+}
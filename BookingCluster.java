@@ -0,0 +1,156 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Several {@link BookingNode}s in one JVM, each with its own server on a loopback port and all
+ * sharing one data directory: a way to run a cluster, and move departures between its nodes,
+ * without deploying one. It also coordinates membership: {@link #join} and {@link #leave} run the
+ * two-step change on every node.
+ *
+ * <pre>
+ * java BookingCluster [maxNodes] [seconds] [clients] [-forward]
+ * </pre>
+ *
+ * As a program it measures how throughput grows with nodes: for 1 to {@code maxNodes} nodes (default
+ * 4) it books 32 departures of demo trains through {@link LoadGenerator} for {@code seconds} (default
+ * 10) with {@code clients} clients (default 400). Clients send each request to the departure's owner,
+ * as a client holding the shard map would; with {@code -forward} they pick any node and let it
+ * forward. Nodes only add throughput while there are idle cores to run them.
+ */
+public class BookingCluster implements Closeable {
+
+    private static final int DEMO_TRAINS = 16;
+    private static final int DEMO_DAYS = 2;
+
+    public static void main(String[] args) throws Exception {
+        List<String> rest = new ArrayList<>(Arrays.asList(args));
+        boolean forward = rest.remove("-forward");
+        int maxNodes = rest.size() > 0 ? Integer.parseInt(rest.get(0)) : 4;
+        int seconds = rest.size() > 1 ? Integer.parseInt(rest.get(1)) : 10;
+        int clients = rest.size() > 2 ? Integer.parseInt(rest.get(2)) : 400;
+        List<Train> trains = new ArrayList<>();
+        for (int i = 0; i < DEMO_TRAINS; i++)
+            trains.add(LoadGenerator.demoTrain(Integer.toString(90000 + i)));
+        System.out.println(Runtime.getRuntime().availableProcessors() + " CPUs, " + clients + " clients, "
+                + (forward ? "any node (forwarded)" : "owner directly"));
+        double single = 0;
+        // Round 0 is one node again, untimed, so the JIT has compiled the booking path before round 1
+        for (int n = 0; n <= maxNodes; n++) {
+            Path dir = Files.createTempDirectory("railway-cluster");
+            try (BookingCluster cluster = new BookingCluster(trains, dir, 100_000)) {
+                for (int i = 0; i < Math.max(1, n); i++)
+                    cluster.join();
+                LoadGenerator.Result r = new LoadGenerator(cluster.targets(forward)).run(clients, seconds);
+                if (n == 0)
+                    continue;
+                if (n == 1)
+                    single = r.perSecond;
+                System.out.printf(Locale.ROOT, "%d node(s): %s, %.2fx one node%n", n, r, r.perSecond / single);
+            } finally {
+                deleteTree(dir);
+            }
+        }
+    }
+
+    private final Collection<Train> trains;
+    private final Path dataDir;
+    private final int snapshotEvery;
+    private final Map<Integer, BookingNode> nodes = new TreeMap<>();
+    private ShardMap map;
+
+    BookingCluster(Collection<Train> trains, Path dataDir, int snapshotEvery) {
+        this.trains = trains;
+        this.dataDir = dataDir;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    /** Starts a node with the lowest free node ID and gives it its share of the departures. */
+    synchronized BookingNode join() throws IOException {
+        int id = 0;
+        while (nodes.containsKey(id))
+            id++;
+        if (id > TicketIds.MAX_NODE)
+            throw new IllegalStateException("No free node ID");
+        BookingNode node = new BookingNode(id, trains, dataDir, snapshotEvery, 0);
+        nodes.put(id, node);
+        change(map == null ? new ShardMap(List.of(node.member())) : map.with(node.member()));
+        return node;
+    }
+
+    /** Hands a node's departures to the others, then stops it. */
+    synchronized void leave(int nodeId) {
+        BookingNode node = nodes.get(nodeId);
+        if (node == null)
+            throw new IllegalArgumentException("No node " + nodeId);
+        change(map.without(nodeId));
+        nodes.remove(nodeId);
+        node.close();
+    }
+
+    // Every node stops serving what moves before any new owner opens it
+    private void change(ShardMap next) {
+        for (BookingNode n : nodes.values())
+            n.prepare(next);
+        for (BookingNode n : nodes.values()) {
+            if (next.member(n.id()) != null)
+                n.commit(next);
+        }
+        map = next;
+    }
+
+    synchronized ShardMap map() {
+        return map;
+    }
+
+    synchronized BookingNode node(int nodeId) {
+        return nodes.get(nodeId);
+    }
+
+    /**
+     * Every departure of every train over the next {@value #DEMO_DAYS} days, sent to its owner, or
+     * with {@code anyNode} to a node picked in turn.
+     */
+    synchronized List<LoadGenerator.Target> targets(boolean anyNode) {
+        List<ShardMap.Member> members = map.members();
+        List<LoadGenerator.Target> out = new ArrayList<>();
+        for (Train t : trains) {
+            for (int d = 1; d <= DEMO_DAYS; d++) {
+                LocalDate date = LocalDate.now().plusDays(d);
+                String url = anyNode ? members.get(out.size() % members.size()).url : map.owner(t.number, date).url;
+                out.add(new LoadGenerator.Target(url, t.number, date.toString()));
+            }
+        }
+        return out;
+    }
+
+    /** Stops every node; their departures stay on disk. */
+    @Override
+    public synchronized void close() {
+        for (BookingNode n : nodes.values())
+            n.close();
+        nodes.clear();
+    }
+
+    /** Deletes a data directory and everything under it; reports, rather than throws, what it cannot delete. */
+    static void deleteTree(Path root) {
+        if (!Files.exists(root))
+            return;
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Could not delete " + root + ": " + e.getMessage());
+        }
+    }
+}
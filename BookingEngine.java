@@ -0,0 +1,924 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Headless booking core. Holds all seat and ticket state so the Swing UI (or any other
+ * caller) only books, cancels and queries through this class.
+ *
+ * Seats live in a leg-aware {@link SeatInventory}, so claiming a seat for a from/to journey is a
+ * single CAS on the coach's bit word. A seat can carry several tickets on non-overlapping legs.
+ *
+ * Passengers who find their coach full can join a {@link Waitlist}. Whenever seat segments come free
+ * (a cancellation or a released hold) the earliest waiting passengers that fit are booked into them
+ * under the coach's waitlist lock, with the same CAS that frees the segments, so a concurrent new
+ * booking cannot slip in between. New bookings never take that lock.
+ *
+ * Free-seat counts are kept per coach and journey as seats change, so {@link #availability} is a
+ * few array reads. Windows showing seats subscribe to {@link #seatEvents()} for batched changes
+ * instead of polling.
+ *
+ * With a {@link BookingJournal} attached, book/cancel/reset return only once the event is on disk.
+ *
+ * Bookings may carry an idempotency key from the client, so a retry after a lost response, or a
+ * double click, gets the ticket already booked instead of a second one. The key is journaled with
+ * the booking, so this holds across a restart or a handoff too.
+ *
+ * Bookings, cancellations and waits for the waitlist lock and the journal are timed in
+ * {@link Metrics#process()}, shared by every engine in the JVM. Single-seat bookings and
+ * cancellations are timed one in {@link #SAMPLE_EVERY}, so their timer counts are estimates; how many
+ * bookings succeeded or failed and how many tickets were cancelled is counted exactly, in
+ * {@link java.util.concurrent.atomic.LongAdder}s that stay a few nanoseconds under contention.
+ */
+class BookingEngine {
+
+    // How long a seat stays held while the passenger dialog is open
+    static final long HOLD_MILLIS = 2 * 60 * 1000L;
+    // Re-picks before a group booking gives up on a coach because other bookings keep winning the seats
+    private static final int CLAIM_ATTEMPTS = 8;
+
+    static final int SAMPLE_EVERY = 64;
+    private static final Metrics.Timer BOOK_TIME = Metrics.process().timer("booking.book", SAMPLE_EVERY);
+    private static final Metrics.Timer CANCEL_TIME = Metrics.process().timer("booking.cancel", SAMPLE_EVERY);
+    private static final Metrics.Timer LOCK_WAIT = Metrics.process().timer("booking.lockWait", SAMPLE_EVERY);
+    // Group bookings and journal waits take tens of microseconds or more, so every one is timed
+    private static final Metrics.Timer GROUP_TIME = Metrics.process().timer("booking.bookGroup", 1);
+    private static final Metrics.Timer JOURNAL_WAIT = Metrics.process().timer("booking.journalWait", 1);
+    private static final Metrics.Counter GROUP_BOOKED = Metrics.process().counter("booking.groupTickets");
+    private static final Metrics.Counter WAITLISTED = Metrics.process().counter("booking.waitlisted");
+    private static final Metrics.Counter PROMOTED = Metrics.process().counter("booking.promoted");
+    private static final Metrics.Counter REPLAYED = Metrics.process().counter("booking.replayed");
+    // Every booking call (single, held or group) that booked, or that booked nothing or threw
+    private static final Metrics.Counter BOOKED = Metrics.process().counter("booking.booked");
+    private static final Metrics.Counter FAILED = Metrics.process().counter("booking.failed");
+    private static final Metrics.Counter CANCELLED = Metrics.process().counter("booking.cancelled");
+
+    // Oldest passenger age accepted; the ticket store packs ages into a byte
+    static final int MAX_AGE = 120;
+
+    // Keyed requests remembered per engine, and for how long after the first one
+    static final long IDEMPOTENCY_BYTES = Long.getLong("railway.idempotency.bytes", 2L << 20);
+    static final Duration IDEMPOTENCY_TTL = Duration.ofSeconds(Long.getLong("railway.idempotency.seconds", 600));
+    // A Ticket with its Date and strings, for the idempotency cache's memory estimate
+    private static final int TICKET_BYTES = 240;
+
+    private final String[] stations;
+    private final Map<String, Integer> coachSeatCount;
+    private final FareEngine fares;
+
+    // Storage
+    private final SeatInventory seats;
+    private final Map<String, Integer> stationIndex = new HashMap<>();
+    private final TicketStore tickets;
+    private final Waitlist waitlist;
+    private final TicketIds ids;
+    // Every route segment of the train, as a seat bitmask
+    private final long allSegments;
+    private volatile BookingJournal journal;
+    private final SeatEventBus seatEvents;
+    private final IdempotencyCache<List<Ticket>> requests = new IdempotencyCache<>(IDEMPOTENCY_BYTES,
+            IDEMPOTENCY_TTL, booked -> 16 + booked.size() * TICKET_BYTES, booked -> !booked.isEmpty());
+
+    /** Prices each coach at {@code coachPrice} for the whole route, with evenly spaced stations. */
+    BookingEngine(Map<String, Integer> coachSeatCount, Map<String, Integer> coachPrice, String[] stations) {
+        this(coachSeatCount, stations, new FareTable(coachSeatCount, coachPrice, FareTable.evenlySpaced(stations.length)));
+    }
+
+    BookingEngine(Map<String, Integer> coachSeatCount, String[] stations, FareEngine fares) {
+        this(coachSeatCount, stations, fares, TicketIds.local());
+    }
+
+    /** @param ids where ticket numbers come from; share one per booking node */
+    BookingEngine(Map<String, Integer> coachSeatCount, String[] stations, FareEngine fares, TicketIds ids) {
+        this.coachSeatCount = coachSeatCount;
+        this.fares = fares;
+        this.ids = ids;
+        this.stations = stations;
+        this.seats = new SeatInventory(coachSeatCount, stations.length);
+        this.tickets = new TicketStore(seats, stations);
+        this.waitlist = new Waitlist(seats.coachCount(), seats.segments());
+        this.allSegments = Waitlist.segmentMask(0, seats.segments());
+        this.seatEvents = new SeatEventBus(seats);
+        seats.onChange(seatEvents::seatChanged);
+        for (int i = 0; i < stations.length; i++)
+            stationIndex.put(stations[i], i);
+    }
+
+    // ---------- Booking ----------
+
+    /**
+     * Temporarily reserves a seat for a from/to journey while passenger details are collected.
+     * Returns null if the seat or stations are unknown, or any leg is booked or held. An abandoned
+     * hold simply expires.
+     */
+    SeatHold hold(String seatId, String from, String to) {
+        int key = seats.parse(seatId);
+        int fromSeg = fromSegment(from, to);
+        if (key < 0 || fromSeg < 0)
+            return null;
+        int toSeg = toSegment(from, to);
+        long deadline = System.currentTimeMillis() + HOLD_MILLIS;
+        return seats.hold(key, fromSeg, toSeg, deadline) ? new SeatHold(key, seatId, from, to, deadline) : null;
+    }
+
+    /** Gives a held seat back without booking it; waiting passengers may be booked into it. */
+    void release(SeatHold hold) {
+        seats.release(hold.key, fromSegment(hold.from, hold.to), toSegment(hold.from, hold.to), hold.deadline);
+        int coach = SeatInventory.coachOf(hold.key);
+        if (waitlist.isEmpty(coach))
+            return;
+        CompletableFuture<Void> write;
+        long waitStart = LOCK_WAIT.start();
+        synchronized (waitlist.lock(coach)) {
+            LOCK_WAIT.stop(waitStart);
+            write = journal(null, promote(hold.key, 0));
+        }
+        if (write != null)
+            awaitDurable(write);
+    }
+
+    /**
+     * Turns a hold into a ticket. Empty if the hold expired and the seat was taken meanwhile.
+     * Throws IllegalArgumentException for an age outside 0 to {@value #MAX_AGE}.
+     */
+    Optional<Ticket> tryClaim(SeatHold hold, String name, int age) {
+        return claim(null, hold, name, age);
+    }
+
+    private Optional<Ticket> claim(String requestKey, SeatHold hold, String name, int age) {
+        checkAge(age);
+        long start = BOOK_TIME.start();
+        boolean booked = false;
+        try {
+            int fromSeg = fromSegment(hold.from, hold.to);
+            int toSeg = toSegment(hold.from, hold.to);
+            // An expired hold has been freed; the seat is still ours if nobody took it since
+            if (!seats.confirm(hold.key, fromSeg, toSeg, hold.deadline) && !seats.claim(hold.key, fromSeg, toSeg))
+                return Optional.empty();
+            Ticket t = record(requestKey, hold.key, name, age, hold.from, hold.to);
+            booked = true;
+            return Optional.of(t);
+        } finally {
+            (booked ? BOOKED : FAILED).increment();
+            BOOK_TIME.stop(start);
+        }
+    }
+
+    /**
+     * Books a seat in one step, without a hold. Empty if the seat or stations are unknown, or any
+     * leg of the journey is booked or held. Throws IllegalArgumentException for an age outside 0 to
+     * {@value #MAX_AGE}.
+     */
+    Optional<Ticket> tryClaim(String seatId, String name, int age, String from, String to) {
+        return claim(null, seatId, name, age, from, to);
+    }
+
+    private Optional<Ticket> claim(String requestKey, String seatId, String name, int age, String from, String to) {
+        checkAge(age);
+        long start = BOOK_TIME.start();
+        boolean booked = false;
+        try {
+            int key = seats.parse(seatId);
+            int fromSeg = fromSegment(from, to);
+            if (key < 0 || fromSeg < 0 || !seats.claim(key, fromSeg, toSegment(from, to)))
+                return Optional.empty();
+            Ticket t = record(requestKey, key, name, age, from, to);
+            booked = true;
+            return Optional.of(t);
+        } finally {
+            (booked ? BOOKED : FAILED).increment();
+            BOOK_TIME.stop(start);
+        }
+    }
+
+    /**
+     * {@link #tryClaim(String, String, int, String, String)} for a request carrying an idempotency
+     * key: a repeat of a request that booked a seat gets that ticket back rather than booking again,
+     * for {@link #IDEMPOTENCY_TTL}. A null key books without remembering. Requests that booked nothing
+     * are not remembered, so their retries try again.
+     */
+    Optional<Ticket> tryClaim(String requestKey, String seatId, String name, int age, String from, String to) {
+        if (requestKey == null)
+            return tryClaim(seatId, name, age, from, to);
+        return first(once(requestKey,
+                () -> claim(requestKey, seatId, name, age, from, to).map(List::of).orElse(List.of())));
+    }
+
+    /** {@link #tryClaim(SeatHold, String, int)} deduplicated by idempotency key, as above. */
+    Optional<Ticket> tryClaim(String requestKey, SeatHold hold, String name, int age) {
+        if (requestKey == null)
+            return tryClaim(hold, name, age);
+        return first(once(requestKey, () -> claim(requestKey, hold, name, age).map(List::of).orElse(List.of())));
+    }
+
+    // The first request with the key runs the booking; repeats, and requests racing it, share its tickets
+    private List<Ticket> once(String requestKey, Supplier<List<Ticket>> booking) {
+        boolean[] ran = new boolean[1];
+        List<Ticket> booked = requests.once(requestKey, () -> {
+            ran[0] = true;
+            return booking.get();
+        });
+        if (!ran[0])
+            REPLAYED.increment();
+        return booked;
+    }
+
+    // Before any seat is claimed, so a bad age leaves nothing to undo
+    private static void checkAge(int age) {
+        if (age < 0 || age > MAX_AGE)
+            throw new IllegalArgumentException("Age must be between 0 and " + MAX_AGE + ": " + age);
+    }
+
+    private static Optional<Ticket> first(List<Ticket> booked) {
+        return booked.isEmpty() ? Optional.empty() : Optional.of(booked.get(0));
+    }
+
+    // Only the thread that won the CAS gets here, so the ticket store needs no further locking
+    private Ticket record(String requestKey, int key, String name, int age, String from, String to) {
+        int fromSeg = fromSegment(from, to);
+        int toSeg = toSegment(from, to);
+        int coach = SeatInventory.coachOf(key);
+        // At the occupancy before this seat was claimed, so the buyer's own seat cannot raise the fare
+        long pricePaise = fares.farePaise(coach, fromSeg, toSeg, seats.available(coach, fromSeg, toSeg) + 1,
+                FareEngine.Concession.forAge(age));
+        Ticket t = store(ids.next(), key, name, age, from, to, pricePaise, System.currentTimeMillis());
+        BookingJournal j = journal;
+        if (j != null) {
+            try {
+                awaitDurable(j.appendBook(t, requestKey));
+            } catch (UncheckedIOException e) {
+                // Not durable, so not booked
+                tickets.remove(t);
+                seats.free(key, fromSeg, toSeg);
+                throw e;
+            }
+        }
+        return t;
+    }
+
+    private Ticket store(long number, int key, String name, int age, String from, String to, long pricePaise,
+            long bookedOn) {
+        return tickets.add(number, name, age, key, stationIndex.get(from), stationIndex.get(to), pricePaise,
+                bookedOn);
+    }
+
+    // ---------- Group booking ----------
+
+    enum SeatPreference {
+        /** Any free seats in the coach. */
+        ANY,
+        /** Side by side in one row of the seat grid (or adjacent rows for big parties) if possible. */
+        TOGETHER
+    }
+
+    /**
+     * Books a whole party in one step: either every passenger gets a seat or nobody does. Seats are
+     * claimed in {@code coach} (or the first coach with room, if null), then all tickets are stored
+     * and journaled with a single durable write. Returns the tickets in manifest order, or an empty
+     * list if there were not enough free seats. Throws IllegalArgumentException, with nothing booked,
+     * if any passenger's age is outside 0 to {@value #MAX_AGE}.
+     */
+    List<Ticket> bookGroup(String coach, String from, String to, List<Passenger> manifest, SeatPreference pref) {
+        return group(null, coach, from, to, manifest, pref);
+    }
+
+    private List<Ticket> group(String requestKey, String coach, String from, String to, List<Passenger> manifest,
+            SeatPreference pref) {
+        long start = GROUP_TIME.start();
+        boolean booked = false;
+        try {
+            List<Ticket> placed = placeGroup(requestKey, coach, from, to, manifest, pref);
+            booked = !placed.isEmpty();
+            return placed;
+        } finally {
+            (booked ? BOOKED : FAILED).increment();
+            GROUP_TIME.stop(start);
+        }
+    }
+
+    /** {@link #bookGroup(String, String, String, List, SeatPreference)} deduplicated by idempotency key. */
+    List<Ticket> bookGroup(String requestKey, String coach, String from, String to, List<Passenger> manifest,
+            SeatPreference pref) {
+        if (requestKey == null)
+            return bookGroup(coach, from, to, manifest, pref);
+        return once(requestKey, () -> group(requestKey, coach, from, to, manifest, pref));
+    }
+
+    private List<Ticket> placeGroup(String requestKey, String coach, String from, String to, List<Passenger> manifest,
+            SeatPreference pref) {
+        int fromSeg = fromSegment(from, to);
+        if (fromSeg < 0 || manifest.isEmpty())
+            return Collections.emptyList();
+        for (Passenger p : manifest)
+            checkAge(p.age);
+        int toSeg = toSegment(from, to);
+        int[] keys = claimSeats(coach, fromSeg, toSeg, manifest.size(), pref);
+        if (keys == null)
+            return Collections.emptyList();
+        long now = System.currentTimeMillis();
+        // Every passenger pays the tier the coach was at before the party's seats were claimed
+        int c = SeatInventory.coachOf(keys[0]);
+        int freeBefore = seats.available(c, fromSeg, toSeg) + keys.length;
+        List<Ticket> booked = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            Passenger p = manifest.get(i);
+            long pricePaise = fares.farePaise(c, fromSeg, toSeg, freeBefore, FareEngine.Concession.forAge(p.age));
+            booked.add(store(ids.next(), keys[i], p.name, p.age, from, to, pricePaise, now));
+        }
+        BookingJournal j = journal;
+        if (j != null) {
+            try {
+                awaitDurable(j.appendBooks(booked, requestKey));
+            } catch (UncheckedIOException e) {
+                for (int i = 0; i < keys.length; i++) {
+                    tickets.remove(booked.get(i));
+                    seats.free(keys[i], fromSeg, toSeg);
+                }
+                throw e;
+            }
+        }
+        GROUP_BOOKED.add(booked.size());
+        return booked;
+    }
+
+    // Claims n seats on one coach, or none at all
+    private int[] claimSeats(String coach, int fromSeg, int toSeg, int n, SeatPreference pref) {
+        int first = 0;
+        int last = seats.coachCount() - 1;
+        if (coach != null) {
+            first = last = seats.coachOrdinal(coach);
+            if (first < 0)
+                return null;
+        }
+        for (int c = first; c <= last; c++) {
+            if (seats.available(c, fromSeg, toSeg) < n)
+                continue;
+            int[] got = claimPicked(c, fromSeg, toSeg, n, pref == SeatPreference.TOGETHER);
+            if (got != null)
+                return got;
+        }
+        return null;
+    }
+
+    // Claims the seats the free-run index suggests; retries if a concurrent booking got there first
+    private int[] claimPicked(int coach, int fromSeg, int toSeg, int n, boolean together) {
+        for (int attempt = 0; attempt < CLAIM_ATTEMPTS; attempt++) {
+            int[] picked = seats.findSeats(coach, fromSeg, toSeg, n, together);
+            if (picked == null)
+                return null;
+            int count = 0;
+            while (count < n && seats.claim(picked[count], fromSeg, toSeg))
+                count++;
+            if (count == n)
+                return picked;
+            freeAll(picked, count, fromSeg, toSeg);
+        }
+        return null;
+    }
+
+    private void freeAll(int[] keys, int count, int fromSeg, int toSeg) {
+        for (int i = 0; i < count; i++)
+            seats.free(keys[i], fromSeg, toSeg);
+    }
+
+    /**
+     * Reads a passenger manifest, one "name,age" per line. Blank lines and a header line are skipped.
+     */
+    static List<Passenger> parseManifest(Reader in) throws IOException {
+        List<Passenger> manifest = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            if (line.isBlank())
+                continue;
+            int comma = line.lastIndexOf(',');
+            String name = comma < 0 ? "" : line.substring(0, comma).trim();
+            String ageText = comma < 0 ? "" : line.substring(comma + 1).trim();
+            int age;
+            try {
+                age = Integer.parseInt(ageText);
+            } catch (NumberFormatException e) {
+                if (manifest.isEmpty() && lineNo == 1)
+                    continue; // header
+                throw new IllegalArgumentException("Line " + lineNo + ": age must be a number");
+            }
+            if (name.isEmpty())
+                throw new IllegalArgumentException("Line " + lineNo + ": name is empty");
+            if (age < 0 || age > 120)
+                throw new IllegalArgumentException("Line " + lineNo + ": enter a valid age (0-120)");
+            manifest.add(new Passenger(name, age));
+        }
+        return manifest;
+    }
+
+    /**
+     * Cancels a ticket and frees its legs of the seat, booking waiting passengers into them. False if
+     * it was already cancelled. If the journal write fails the cancellation (and any promotion) still
+     * stands in memory and the error is thrown.
+     */
+    boolean cancel(Ticket t) {
+        long start = CANCEL_TIME.start();
+        try {
+            if (!tickets.remove(t))
+                return false;
+            int key = seats.parse(t.seat);
+            int fromSeg = fromSegment(t.from, t.to);
+            CompletableFuture<Void> write;
+            // Sampled along with the cancellation, to save drawing again
+            long waitStart = start == 0 ? 0 : System.nanoTime();
+            synchronized (waitlist.lock(SeatInventory.coachOf(key))) {
+                LOCK_WAIT.stop(waitStart);
+                write = journal(t, promote(key, Waitlist.segmentMask(fromSeg, toSegment(t.from, t.to))));
+            }
+            if (write != null)
+                awaitDurable(write);
+            CANCELLED.increment();
+            return true;
+        } finally {
+            CANCEL_TIME.stop(start);
+        }
+    }
+
+    // ---------- Waitlist ----------
+
+    /**
+     * Puts a passenger on the coach's waitlist for the journey. If a seat that fits is free right
+     * now, the queue is served first and the passenger may come back already booked: check
+     * {@link #waitlistStatus}, which is null for a booked ticket. Null if the coach or stations are
+     * unknown; IllegalArgumentException for an age outside 0 to {@value #MAX_AGE}.
+     */
+    Ticket joinWaitlist(String coach, String name, int age, String from, String to) {
+        checkAge(age);
+        int c = seats.coachOrdinal(coach);
+        int fromSeg = fromSegment(from, to);
+        if (c < 0 || fromSeg < 0)
+            return null;
+        int toSeg = toSegment(from, to);
+        Ticket waiting = new Ticket(TicketIds.format(ids.next()), name, age, "", coach,
+                from, to, quote(c, fromSeg, toSeg, age) / 100.0, new Date());
+        BookingJournal j = journal;
+        List<CompletableFuture<Void>> writes = new ArrayList<>(2);
+        WAITLISTED.increment();
+        long waitStart = LOCK_WAIT.start();
+        synchronized (waitlist.lock(c)) {
+            LOCK_WAIT.stop(waitStart);
+            waitlist.add(c, waiting, fromSeg, toSeg);
+            if (j != null)
+                writes.add(j.appendWait(waiting));
+            // A seat may have come free without a cancellation to promote into it (e.g. before we queued)
+            for (int attempt = 0; attempt < CLAIM_ATTEMPTS && waitlist.get(waiting.ticketId) != null
+                    && seats.available(c, fromSeg, toSeg) > 0; attempt++) {
+                int[] free = seats.findSeats(c, fromSeg, toSeg, 1, false);
+                if (free == null)
+                    break;
+                CompletableFuture<Void> write = journal(null, promote(free[0], 0));
+                if (write != null)
+                    writes.add(write);
+            }
+        }
+        for (CompletableFuture<Void> write : writes)
+            awaitDurable(write);
+        Ticket booked = waitlist.get(waiting.ticketId) == null ? tickets.byId(waiting.ticketId) : null;
+        return booked != null ? booked : waiting;
+    }
+
+    /** Takes a passenger off the waitlist. False if they are not waiting (any more). */
+    boolean leaveWaitlist(String ticketId) {
+        Waitlist.Entry e = waitlist.get(canonicalId(ticketId));
+        if (e == null)
+            return false;
+        CompletableFuture<Void> write = null;
+        long waitStart = LOCK_WAIT.start();
+        synchronized (waitlist.lock(e.coach)) {
+            LOCK_WAIT.stop(waitStart);
+            if (!waitlist.remove(e))
+                return false;
+            BookingJournal j = journal;
+            if (j != null)
+                write = j.appendCancel(e.ticket);
+        }
+        if (write != null)
+            awaitDurable(write);
+        return true;
+    }
+
+    /** "RAC n" or "WL n" while a ticket is waiting, null once it is booked (or unknown). */
+    String waitlistStatus(String ticketId) {
+        return waitlist.status(canonicalId(ticketId));
+    }
+
+    /** The seatless ticket of a waiting passenger, or null if it is not on the waitlist. */
+    Ticket waitlistedTicket(String ticketId) {
+        Waitlist.Entry e = waitlist.get(canonicalId(ticketId));
+        return e == null ? null : e.ticket;
+    }
+
+    /** Waiting passengers of every coach, in joining order. */
+    List<Ticket> waitlisted() {
+        return waitlist.all();
+    }
+
+    /**
+     * Frees {@code clearSegments} of a seat and books the earliest waiting passengers that fit into
+     * what is then free, in one CAS. Caller holds the coach's waitlist lock.
+     */
+    private List<Ticket> promote(int key, long clearSegments) {
+        int coach = SeatInventory.coachOf(key);
+        while (true) {
+            long free = ~(seats.takenSegments(key) & ~clearSegments) & allSegments;
+            List<Waitlist.Entry> picked = waitlist.pick(coach, free);
+            if (picked.isEmpty() && clearSegments == 0)
+                return Collections.emptyList();
+            long take = 0;
+            for (Waitlist.Entry e : picked)
+                take |= e.mask;
+            // Fails only if a new booking took part of the seat meanwhile; then plan again
+            if (!seats.swap(key, clearSegments, take))
+                continue;
+            if (picked.isEmpty())
+                return Collections.emptyList();
+            long now = System.currentTimeMillis();
+            List<Ticket> booked = new ArrayList<>(picked.size());
+            for (Waitlist.Entry e : picked) {
+                waitlist.remove(e);
+                Ticket w = e.ticket;
+                // Keeps the fare quoted when the passenger joined the waitlist
+                booked.add(store(TicketIds.parse(w.ticketId), key, w.name, w.age, w.from, w.to, w.pricePaise(),
+                        now));
+            }
+            PROMOTED.add(booked.size());
+            return booked;
+        }
+    }
+
+    // Queues a cancellation and the promotions it caused, in that order; null without a journal.
+    // Call under the waitlist lock so records for one passenger cannot be queued out of order.
+    private CompletableFuture<Void> journal(Ticket cancelled, List<Ticket> promoted) {
+        BookingJournal j = journal;
+        if (j == null || (cancelled == null && promoted.isEmpty()))
+            return null;
+        CompletableFuture<Void> cancel = cancelled == null ? null : j.appendCancel(cancelled);
+        CompletableFuture<Void> books = promoted.isEmpty() ? null : j.appendBooks(promoted);
+        if (cancel == null || books == null)
+            return cancel != null ? cancel : books;
+        return CompletableFuture.allOf(cancel, books);
+    }
+
+    /**
+     * Clears every booking. Meant for the DEV reset button; bookings racing with it may survive.
+     */
+    void reset() {
+        seats.clear();
+        tickets.clear();
+        waitlist.clear();
+        BookingJournal j = journal;
+        if (j != null)
+            awaitDurable(j.appendReset());
+    }
+
+    // ---------- Persistence ----------
+
+    /**
+     * Loads recovered tickets, waitlist and keyed requests into an empty engine, re-claiming the
+     * tickets' seats. Call before any booking and before {@link #attachJournal}, so nothing is
+     * journaled again. A request is remembered for what is left of {@link #IDEMPOTENCY_TTL} after its
+     * tickets were booked.
+     */
+    void restore(List<Ticket> recovered, List<Ticket> waiting, Map<String, List<Ticket>> keyed) {
+        restore(recovered);
+        // Oldest first, so they are also the first to go if the cache is over its budget
+        List<Map.Entry<String, List<Ticket>>> byAge = new ArrayList<>(keyed.entrySet());
+        byAge.removeIf(r -> r.getValue().isEmpty());
+        byAge.sort(Comparator.comparingLong(r -> r.getValue().get(0).bookedOn.getTime()));
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, List<Ticket>> r : byAge) {
+            long age = Math.max(0, now - r.getValue().get(0).bookedOn.getTime());
+            requests.restore(r.getKey(), List.copyOf(r.getValue()), Duration.ofMillis(age));
+        }
+        for (Ticket t : waiting) {
+            int c = seats.coachOrdinal(t.coach);
+            int fromSeg = fromSegment(t.from, t.to);
+            long number = TicketIds.parse(t.ticketId);
+            if (c < 0 || fromSeg < 0 || number < 0 || t.age < 0 || t.age > MAX_AGE) {
+                System.err.println("Skipping unrestorable waitlist entry " + t.ticketId);
+                continue;
+            }
+            synchronized (waitlist.lock(c)) {
+                waitlist.add(c, t, fromSeg, toSegment(t.from, t.to));
+            }
+            ids.advancePast(number);
+        }
+    }
+
+    void restore(List<Ticket> recovered) {
+        for (Ticket t : recovered) {
+            int key = seats.parse(t.seat);
+            int fromSeg = fromSegment(t.from, t.to);
+            if (key < 0 || fromSeg < 0 || t.age < 0 || t.age > MAX_AGE
+                    || !seats.claim(key, fromSeg, toSegment(t.from, t.to))) {
+                System.err.println("Skipping unrestorable ticket " + t.ticketId + " on " + t.seat);
+                continue;
+            }
+            if (tickets.add(t) == null) {
+                seats.free(key, fromSeg, toSegment(t.from, t.to));
+                System.err.println("Skipping unrestorable ticket " + t.ticketId + " on " + t.seat);
+                continue;
+            }
+            ids.advancePast(TicketIds.parse(t.ticketId));
+        }
+    }
+
+    /** The tickets of each keyed request still remembered, for the journal's snapshots. */
+    Map<String, List<Ticket>> keyedRequests() {
+        return requests.remembered();
+    }
+
+    void attachJournal(BookingJournal journal) {
+        this.journal = journal;
+    }
+
+    private static void awaitDurable(CompletableFuture<Void> write) {
+        long start = JOURNAL_WAIT.start();
+        try {
+            write.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException
+                    ? new UncheckedIOException("Booking journal write failed", (IOException) cause)
+                    : e;
+        } finally {
+            JOURNAL_WAIT.stop(start);
+        }
+    }
+
+    // ---------- Queries ----------
+
+    boolean isKnownSeat(String seatId) {
+        return seats.parse(seatId) >= 0;
+    }
+
+    /** True if the seat is free on every leg between the two stations. */
+    boolean isAvailable(String seatId, String from, String to) {
+        int key = seats.parse(seatId);
+        int fromSeg = fromSegment(from, to);
+        return key >= 0 && fromSeg >= 0 && seats.isAvailable(key, fromSeg, toSegment(from, to));
+    }
+
+    /** Seats of a coach free for the whole from/to journey. Constant time per coach. */
+    int availableSeats(String coach, String from, String to) {
+        int c = seats.coachOrdinal(coach);
+        int fromSeg = fromSegment(from, to);
+        return c < 0 || fromSeg < 0 ? 0 : seats.available(c, fromSeg, toSegment(from, to));
+    }
+
+    /**
+     * Share of the coach's seat-legs (one seat between two neighbouring stations) that are booked or
+     * held, from 0 to 1, over the whole route. 0 for an unknown coach.
+     */
+    double occupancy(String coach) {
+        int c = seats.coachOrdinal(coach);
+        if (c < 0)
+            return 0;
+        int segments = seats.segments();
+        long free = 0;
+        for (int s = 0; s < segments; s++)
+            free += seats.available(c, s, s + 1);
+        return 1 - free / ((double) seats.seatCount(c) * segments);
+    }
+
+    /** Free and total seats of every coach for the from/to journey, and its adult fare, as of now. */
+    Availability availability(String from, String to) {
+        int fromSeg = fromSegment(from, to);
+        int coachCount = seats.coachCount();
+        String[] names = new String[coachCount];
+        int[] free = new int[coachCount];
+        int[] total = new int[coachCount];
+        long[] fare = new long[coachCount];
+        for (int c = 0; c < coachCount; c++) {
+            names[c] = seats.coachName(c);
+            total[c] = seats.seatCount(c);
+            if (fromSeg < 0)
+                continue;
+            int toSeg = toSegment(from, to);
+            free[c] = seats.available(c, fromSeg, toSeg);
+            fare[c] = fares.farePaise(c, fromSeg, toSeg, free[c], FareEngine.Concession.GENERAL);
+        }
+        return new Availability(from, to, names, free, total, fare);
+    }
+
+    /**
+     * Batches of seats whose state changed (booking, cancellation, hold, promotion or reset), at
+     * most one batch per {@link SeatEventBus#BATCH_MILLIS} per subscriber.
+     */
+    SeatEventBus seatEvents() {
+        return seatEvents;
+    }
+
+    /**
+     * Suggests {@code n} seats of a coach for the journey, side by side where possible, without
+     * claiming them. Empty if the coach does not have that many free.
+     */
+    List<String> suggestSeats(String coach, String from, String to, int n) {
+        int c = seats.coachOrdinal(coach);
+        int fromSeg = fromSegment(from, to);
+        if (c < 0 || fromSeg < 0)
+            return Collections.emptyList();
+        int[] picked = seats.findSeats(c, fromSeg, toSegment(from, to), n, true);
+        if (picked == null)
+            return Collections.emptyList();
+        List<String> ids = new ArrayList<>(picked.length);
+        for (int key : picked)
+            ids.add(seats.seatId(key));
+        return ids;
+    }
+
+    /** Live tickets on a seat, one per booked leg range. */
+    List<Ticket> ticketsForSeat(String seatId) {
+        return tickets.bySeat(seatId);
+    }
+
+    Ticket ticketById(String ticketId) {
+        return tickets.byId(ticketId);
+    }
+
+    List<Ticket> ticketsByName(String namePrefix) {
+        return tickets.byNamePrefix(namePrefix);
+    }
+
+    List<Ticket> ticketsOnRoute(String from, String to) {
+        return tickets.byRoute(from, to);
+    }
+
+    /**
+     * Revenue and ticket totals by coach, station pair and hour booked, kept as tickets come and go,
+     * so this costs the same with a full train as with an empty one.
+     */
+    SalesTotals.Report sales() {
+        return tickets.sales();
+    }
+
+    /** Live (booked, not cancelled) tickets. */
+    int ticketCount() {
+        return tickets.size();
+    }
+
+    /** Snapshot of all live tickets, in booking order. */
+    List<Ticket> tickets() {
+        return tickets.all();
+    }
+
+    /**
+     * Streams every live ticket to {@code action} in manifest order (coach, seat, leg) without taking
+     * a snapshot, for exports too big to hold at once.
+     */
+    void forEachTicket(Consumer<Ticket> action) {
+        tickets.forEachBySeat(action);
+    }
+
+    Set<String> coaches() {
+        return coachSeatCount.keySet();
+    }
+
+    int seatCount(String coach) {
+        return coachSeatCount.getOrDefault(coach, 0);
+    }
+
+    String[] stations() {
+        return stations;
+    }
+
+    // ---------- Helpers ----------
+
+    /**
+     * Current fare in paise for one passenger of this age in the coach for the from/to journey, or -1
+     * if the coach or stations are unknown. Surge pricing makes it move as the coach fills up.
+     */
+    long farePaise(String coach, String from, String to, int age) {
+        int c = seats.coachOrdinal(coach);
+        int fromSeg = fromSegment(from, to);
+        return c < 0 || fromSeg < 0 ? -1 : quote(c, fromSeg, toSegment(from, to), age);
+    }
+
+    private long quote(int coach, int fromSeg, int toSeg, int age) {
+        return fares.farePaise(coach, fromSeg, toSeg, seats.available(coach, fromSeg, toSeg),
+                FareEngine.Concession.forAge(age));
+    }
+
+    static String seatId(String coach, int seatNo) {
+        return coach + "-S" + seatNo;
+    }
+
+    // Waitlist entries are keyed by the canonical ID, so "abc..." finds "ABC..."
+    private static String canonicalId(String ticketId) {
+        long number = TicketIds.parse(ticketId);
+        return number < 0 ? ticketId : TicketIds.format(number);
+    }
+
+    // A journey covers the route segments between its two stations, in either direction
+    private int fromSegment(String from, String to) {
+        Integer a = from == null ? null : stationIndex.get(from);
+        Integer b = to == null ? null : stationIndex.get(to);
+        if (a == null || b == null || a.equals(b))
+            return -1;
+        return Math.min(a, b);
+    }
+
+    private int toSegment(String from, String to) {
+        return Math.max(stationIndex.get(from), stationIndex.get(to));
+    }
+
+    // ---------- Passenger ----------
+    static final class Passenger {
+        final String name;
+        final int age;
+
+        Passenger(String name, int age) {
+            this.name = name;
+            this.age = age;
+        }
+    }
+
+    // ---------- Availability ----------
+
+    /** Read-only free/total seat counts and adult fares per coach for one journey, taken at one moment. */
+    static final class Availability {
+        final String from;
+        final String to;
+        private final String[] coaches;
+        private final int[] free;
+        private final int[] total;
+        private final long[] farePaise;
+
+        Availability(String from, String to, String[] coaches, int[] free, int[] total, long[] farePaise) {
+            this.from = from;
+            this.to = to;
+            this.coaches = coaches;
+            this.free = free;
+            this.total = total;
+            this.farePaise = farePaise;
+        }
+
+        List<String> coaches() {
+            return Collections.unmodifiableList(Arrays.asList(coaches));
+        }
+
+        /** Free seats in the coach, or 0 for an unknown coach. */
+        int free(String coach) {
+            int c = indexOf(coach);
+            return c < 0 ? 0 : free[c];
+        }
+
+        int seats(String coach) {
+            int c = indexOf(coach);
+            return c < 0 ? 0 : total[c];
+        }
+
+        /** Adult fare in paise at the current surge tier, or 0 for an unknown coach or journey. */
+        long farePaise(String coach) {
+            int c = indexOf(coach);
+            return c < 0 ? 0 : farePaise[c];
+        }
+
+        int totalFree() {
+            return Arrays.stream(free).sum();
+        }
+
+        int totalSeats() {
+            return Arrays.stream(total).sum();
+        }
+
+        private int indexOf(String coach) {
+            for (int c = 0; c < coaches.length; c++) {
+                if (coaches[c].equals(coach))
+                    return c;
+            }
+            return -1;
+        }
+    }
+
+    // ---------- Seat hold ----------
+    static final class SeatHold {
+        final int key;
+        final String seatId;
+        final String from;
+        final String to;
+        final long deadline;
+
+        SeatHold(int key, String seatId, String from, String to, long deadline) {
+            this.key = key;
+            this.seatId = seatId;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+        }
+    }
+}
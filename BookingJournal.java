@@ -0,0 +1,499 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Write-ahead journal for bookings, cancellations and waitlist joins, plus periodic snapshots of the
+ * live tickets and the waitlist.
+ *
+ * Callers hand events to a single writer thread, which frames them ([length][crc][lsn][type][body]),
+ * writes everything queued so far in one FileChannel write and fsyncs once (group commit). The
+ * returned future completes when the event is on disk.
+ *
+ * Once the journal grows past {@code snapshotEvery} events the writer saves a snapshot of the live
+ * tickets tagged with the last written LSN, swaps it in atomically and truncates the journal.
+ * Recovery loads the snapshot and replays journal records with a higher LSN. Replay works on the
+ * set of tickets by ID (book = add if absent, cancel = remove), so it does not matter that the
+ * snapshot may already contain some of those later events. Waitlisted passengers are tickets without
+ * a seat: a wait record queues one, and a book record with the same ID promotes it.
+ *
+ * A booking made for a request with an idempotency key is journaled with the key, and snapshots carry
+ * the engine's remembered requests, so a retry after a restart or a handoff to another node still
+ * gets the tickets booked the first time.
+ */
+class BookingJournal implements Closeable {
+
+    private static final byte BOOK = 1;
+    private static final byte CANCEL = 2;
+    private static final byte RESET = 3;
+    private static final byte WAIT = 4;
+    // A book record with the idempotency key of the request that made it
+    private static final byte KEYED_BOOK = 5;
+
+    private static final int SNAPSHOT_MAGIC_V1 = 0x52534E50; // "RSNP", tickets only
+    private static final int SNAPSHOT_MAGIC_V2 = 0x52534E32; // "RSN2", tickets then waitlist
+    private static final int SNAPSHOT_MAGIC = 0x52534E33; // "RSN3", tickets, waitlist, then keyed requests
+    private static final int MAX_BATCH = 4096;
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final FileChannel channel;
+    private final int snapshotEvery;
+    private final Supplier<List<Ticket>> liveTickets;
+    private final Supplier<List<Ticket>> waitlisted;
+    private final Supplier<Map<String, List<Ticket>>> requests;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    private long lastLsn;
+    private int eventsSinceSnapshot;
+    // Keyed bookings written since the last snapshot and in the interval before it. Their callers may
+    // not have told the engine's cache yet when a snapshot is taken, so it would leave them out
+    private Map<String, List<Ticket>> keyedRecently = new HashMap<>();
+    private Map<String, List<Ticket>> keyedBefore = new HashMap<>();
+    private volatile IOException failure;
+    // Checked and set under appendLock, so nothing is queued behind the writer's stop marker
+    private final Object appendLock = new Object();
+    private boolean closed;
+
+    /**
+     * Opens (or creates) the journal in {@code dir}. {@code state} must come from {@link #recover(Path)}
+     * on the same directory; any torn tail it found is cut off before new records are appended.
+     */
+    BookingJournal(Path dir, Recovered state, int snapshotEvery, Supplier<List<Ticket>> liveTickets,
+            Supplier<List<Ticket>> waitlisted) throws IOException {
+        this(dir, state, snapshotEvery, liveTickets, waitlisted, Collections::emptyMap);
+    }
+
+    /** @param requests the tickets of requests with an idempotency key, by key, for snapshots */
+    BookingJournal(Path dir, Recovered state, int snapshotEvery, Supplier<List<Ticket>> liveTickets,
+            Supplier<List<Ticket>> waitlisted, Supplier<Map<String, List<Ticket>>> requests) throws IOException {
+        Files.createDirectories(dir);
+        this.journalFile = dir.resolve("bookings.journal");
+        this.snapshotFile = dir.resolve("bookings.snapshot");
+        this.snapshotEvery = snapshotEvery;
+        this.liveTickets = liveTickets;
+        this.waitlisted = waitlisted;
+        this.requests = requests;
+        this.lastLsn = state.lastLsn;
+        this.eventsSinceSnapshot = state.replayedEvents;
+        this.channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(state.validJournalBytes);
+        channel.position(state.validJournalBytes);
+        this.writer = new Thread(this::writeLoop, "booking-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // ---------- Appends ----------
+
+    CompletableFuture<Void> appendBook(Ticket t) {
+        return appendBook(t, null);
+    }
+
+    /** Journals a booking made for the request with idempotency key {@code requestKey}, if not null. */
+    CompletableFuture<Void> appendBook(Ticket t, String requestKey) {
+        return enqueue(new Pending(BOOK, t, t.ticketId, requestKey));
+    }
+
+    /** Journals several bookings as one queue entry; they share a single write and fsync. */
+    CompletableFuture<Void> appendBooks(List<Ticket> booked) {
+        return appendBooks(booked, null);
+    }
+
+    /** {@link #appendBooks(List)} for the bookings of one request with an idempotency key. */
+    CompletableFuture<Void> appendBooks(List<Ticket> booked, String requestKey) {
+        return enqueue(new Pending(booked, requestKey));
+    }
+
+    /** Journals a passenger joining the waitlist; {@code t} has no seat yet. */
+    CompletableFuture<Void> appendWait(Ticket t) {
+        return enqueue(new Pending(WAIT, t, t.ticketId, null));
+    }
+
+    /** Journals a cancelled ticket or a passenger leaving the waitlist. */
+    CompletableFuture<Void> appendCancel(Ticket t) {
+        return enqueue(new Pending(CANCEL, null, t.ticketId, null));
+    }
+
+    CompletableFuture<Void> appendReset() {
+        return enqueue(new Pending(RESET, null, null, null));
+    }
+
+    private CompletableFuture<Void> enqueue(Pending p) {
+        IOException refused;
+        synchronized (appendLock) {
+            refused = failure != null ? failure : closed ? new IOException("Journal closed") : null;
+            if (refused == null)
+                queue.add(p);
+        }
+        if (refused != null)
+            p.done.completeExceptionally(refused);
+        return p.done;
+    }
+
+    /** Flushes everything queued so far and stops the writer thread. */
+    @Override
+    public void close() throws IOException {
+        stop(Pending.STOP);
+    }
+
+    /**
+     * Like {@link #close()}, but first folds the journal into a final snapshot, leaving an empty
+     * journal behind. Used for departures that will not change any more.
+     */
+    void compactAndClose() throws IOException {
+        stop(Pending.COMPACT);
+        IOException f = failure;
+        if (f != null)
+            throw f;
+    }
+
+    private void stop(Pending marker) throws IOException {
+        synchronized (appendLock) {
+            closed = true;
+            queue.add(marker);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Left only if the writer was interrupted before reaching the marker; their callers must not wait forever
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (Pending p : left) {
+            if (p != Pending.STOP && p != Pending.COMPACT)
+                p.done.completeExceptionally(new IOException("Journal closed"));
+        }
+        channel.close();
+    }
+
+    // ---------- Writer thread ----------
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            boolean compact = batch.remove(Pending.COMPACT);
+            if (compact || batch.remove(Pending.STOP)) {
+                stop = true;
+                queue.drainTo(batch);
+                batch.remove(Pending.STOP);
+            }
+            try {
+                if (failure != null)
+                    throw failure;
+                bytes.reset();
+                int events = 0;
+                for (Pending p : batch) {
+                    if (p.requestKey != null)
+                        keyedRecently.put(p.requestKey, p.batch != null ? p.batch : List.of(p.ticket));
+                    if (p.batch == null) {
+                        writeRecord(out, ++lastLsn, p.type, p.ticket, p.ticketId, p.requestKey);
+                        events++;
+                        continue;
+                    }
+                    for (Ticket t : p.batch)
+                        writeRecord(out, ++lastLsn, BOOK, t, t.ticketId, p.requestKey);
+                    events += p.batch.size();
+                }
+                out.flush();
+                ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+                while (buf.hasRemaining())
+                    channel.write(buf);
+                channel.force(false);
+                for (Pending p : batch)
+                    p.done.complete(null);
+                eventsSinceSnapshot += events;
+                // Not on a plain close: a booking racing the close may be in the live tickets with its
+                // record refused, and the journal alone is exact
+                if (compact || (!stop && eventsSinceSnapshot >= snapshotEvery))
+                    snapshot();
+            } catch (IOException e) {
+                failure = e;
+                for (Pending p : batch)
+                    p.done.completeExceptionally(e);
+            }
+            batch.clear();
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, long lsn, byte type, Ticket ticket, String ticketId,
+            String requestKey) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+        DataOutputStream b = new DataOutputStream(body);
+        b.writeLong(lsn);
+        if (type == BOOK && requestKey != null) {
+            b.writeByte(KEYED_BOOK);
+            b.writeUTF(requestKey);
+        } else {
+            b.writeByte(type);
+        }
+        if (type == BOOK || type == WAIT)
+            writeTicket(b, ticket);
+        else if (type == CANCEL)
+            b.writeUTF(ticketId);
+        b.flush();
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray());
+        out.writeInt(body.size());
+        out.writeInt((int) crc.getValue());
+        body.writeTo(out);
+    }
+
+    // Runs on the writer thread, so no record can be written between picking the LSN and truncating
+    private void snapshot() throws IOException {
+        // Read live before waiting: a promotion in between then leaves the passenger in neither,
+        // and its book record (journaled after this snapshot's LSN) puts it back on replay
+        List<Ticket> live = liveTickets.get();
+        List<Ticket> waiting = waitlisted.get();
+        Map<String, List<Ticket>> keyed = new HashMap<>(keyedBefore);
+        keyed.putAll(keyedRecently);
+        keyed.putAll(requests.get());
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fos, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(lastLsn);
+            out.writeInt(live.size());
+            for (Ticket t : live)
+                writeTicket(out, t);
+            out.writeInt(waiting.size());
+            for (Ticket t : waiting)
+                writeTicket(out, t);
+            out.writeInt(keyed.size());
+            for (Map.Entry<String, List<Ticket>> r : keyed.entrySet()) {
+                out.writeUTF(r.getKey());
+                out.writeInt(r.getValue().size());
+                for (Ticket t : r.getValue())
+                    writeTicket(out, t);
+            }
+            out.flush();
+            long crc = checked.getChecksum().getValue();
+            out.writeLong(crc);
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        eventsSinceSnapshot = 0;
+        keyedBefore = keyedRecently;
+        keyedRecently = new HashMap<>();
+    }
+
+    // ---------- Recovery ----------
+
+    /**
+     * Rebuilds the live tickets from the snapshot and journal in {@code dir}, in booking order, along
+     * with the tickets of each idempotency key. A torn or corrupt record at the end of the journal (a
+     * crash mid-write) ends the replay.
+     */
+    static Recovered recover(Path dir) throws IOException {
+        Path journal = dir.resolve("bookings.journal");
+        Path snapshot = dir.resolve("bookings.snapshot");
+        Map<String, Ticket> live = new LinkedHashMap<>();
+        Map<String, Ticket> waiting = new LinkedHashMap<>();
+        Map<String, List<Ticket>> requests = new LinkedHashMap<>();
+        long snapshotLsn = 0;
+
+        if (Files.exists(snapshot)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16)) {
+                CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+                DataInputStream data = new DataInputStream(checked);
+                int magic = data.readInt();
+                if (magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_MAGIC_V2 && magic != SNAPSHOT_MAGIC_V1)
+                    throw new IOException("Not a booking snapshot: " + snapshot);
+                snapshotLsn = data.readLong();
+                int count = data.readInt();
+                for (int i = 0; i < count; i++) {
+                    Ticket t = readTicket(data);
+                    live.put(t.ticketId, t);
+                }
+                count = magic != SNAPSHOT_MAGIC_V1 ? data.readInt() : 0;
+                for (int i = 0; i < count; i++) {
+                    Ticket t = readTicket(data);
+                    if (!live.containsKey(t.ticketId))
+                        waiting.put(t.ticketId, t);
+                }
+                count = magic == SNAPSHOT_MAGIC ? data.readInt() : 0;
+                for (int i = 0; i < count; i++) {
+                    String key = data.readUTF();
+                    int booked = data.readInt();
+                    for (int k = 0; k < booked; k++)
+                        addRequest(requests, key, readTicket(data));
+                }
+                long expected = checked.getChecksum().getValue();
+                if (new DataInputStream(in).readLong() != expected)
+                    throw new IOException("Corrupt booking snapshot: " + snapshot);
+            }
+        }
+
+        long lastLsn = snapshotLsn;
+        long validBytes = 0;
+        int replayed = 0;
+        if (Files.exists(journal)) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(journal), 1 << 16))) {
+                byte[] body = new byte[256];
+                while (true) {
+                    int len;
+                    int crc;
+                    try {
+                        len = in.readInt();
+                        crc = in.readInt();
+                        if (len <= 0 || len > (1 << 20))
+                            break;
+                        if (body.length < len)
+                            body = new byte[len];
+                        in.readFully(body, 0, len);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    CRC32 check = new CRC32();
+                    check.update(body, 0, len);
+                    if ((int) check.getValue() != crc)
+                        break;
+                    validBytes += 8 + len;
+                    DataInputStream rec = new DataInputStream(new ByteArrayInputStream(body, 0, len));
+                    long lsn = rec.readLong();
+                    byte type = rec.readByte();
+                    lastLsn = Math.max(lastLsn, lsn);
+                    replayed++;
+                    if (lsn <= snapshotLsn)
+                        continue;
+                    if (type == BOOK || type == KEYED_BOOK) {
+                        String key = type == KEYED_BOOK ? rec.readUTF() : null;
+                        Ticket t = readTicket(rec);
+                        waiting.remove(t.ticketId);
+                        live.putIfAbsent(t.ticketId, t);
+                        if (key != null)
+                            addRequest(requests, key, t);
+                    } else if (type == WAIT) {
+                        Ticket t = readTicket(rec);
+                        if (!live.containsKey(t.ticketId))
+                            waiting.putIfAbsent(t.ticketId, t);
+                    } else if (type == CANCEL) {
+                        String ticketId = rec.readUTF();
+                        live.remove(ticketId);
+                        waiting.remove(ticketId);
+                    } else if (type == RESET) {
+                        live.clear();
+                        waiting.clear();
+                        requests.clear();
+                    }
+                }
+            }
+        }
+        return new Recovered(new ArrayList<>(live.values()), new ArrayList<>(waiting.values()), requests, lastLsn,
+                validBytes, replayed);
+    }
+
+    // A booking journaled after the snapshot may already be among the snapshot's requests
+    private static void addRequest(Map<String, List<Ticket>> requests, String key, Ticket t) {
+        List<Ticket> booked = requests.computeIfAbsent(key, k -> new ArrayList<>(1));
+        for (Ticket b : booked) {
+            if (b.ticketId.equals(t.ticketId))
+                return;
+        }
+        booked.add(t);
+    }
+
+    // ---------- Ticket encoding ----------
+
+    private static void writeTicket(DataOutput out, Ticket t) throws IOException {
+        out.writeUTF(t.ticketId);
+        out.writeUTF(t.name);
+        out.writeInt(t.age);
+        out.writeUTF(t.seat);
+        out.writeUTF(t.coach);
+        out.writeUTF(t.from);
+        out.writeUTF(t.to);
+        out.writeDouble(t.price);
+        out.writeLong(t.bookedOn.getTime());
+    }
+
+    private static Ticket readTicket(DataInput in) throws IOException {
+        String ticketId = in.readUTF();
+        String name = in.readUTF();
+        int age = in.readInt();
+        String seat = in.readUTF();
+        String coach = in.readUTF();
+        String from = in.readUTF();
+        String to = in.readUTF();
+        double price = in.readDouble();
+        Date bookedOn = new Date(in.readLong());
+        return new Ticket(ticketId, name, age, seat, coach, from, to, price, bookedOn);
+    }
+
+    // ---------- Types ----------
+
+    static final class Recovered {
+        final List<Ticket> tickets;
+        // Waitlisted passengers in queue order
+        final List<Ticket> waitlisted;
+        // Tickets booked for each idempotency key, cancelled ones included, as the engine remembers them
+        final Map<String, List<Ticket>> requests;
+        final long lastLsn;
+        final long validJournalBytes;
+        final int replayedEvents;
+
+        Recovered(List<Ticket> tickets, List<Ticket> waitlisted, Map<String, List<Ticket>> requests, long lastLsn,
+                long validJournalBytes, int replayedEvents) {
+            this.tickets = tickets;
+            this.waitlisted = waitlisted;
+            this.requests = requests;
+            this.lastLsn = lastLsn;
+            this.validJournalBytes = validJournalBytes;
+            this.replayedEvents = replayedEvents;
+        }
+    }
+
+    private static final class Pending {
+        static final Pending STOP = new Pending((byte) 0, null, null, null);
+        static final Pending COMPACT = new Pending((byte) 0, null, null, null);
+
+        final byte type;
+        final Ticket ticket;
+        final String ticketId;
+        final List<Ticket> batch;
+        final String requestKey;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(byte type, Ticket ticket, String ticketId, String requestKey) {
+            this.type = type;
+            this.ticket = ticket;
+            this.ticketId = ticketId;
+            this.batch = null;
+            this.requestKey = requestKey;
+        }
+
+        Pending(List<Ticket> booked, String requestKey) {
+            this.type = BOOK;
+            this.ticket = null;
+            this.ticketId = null;
+            this.batch = booked;
+            this.requestKey = requestKey;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * One booking node of a cluster: the departures it owns under the cluster's {@link ShardMap}, and a
+ * {@link BookingServer} on loopback that books them and forwards requests for the rest to their
+ * owners. Ticket numbers carry the node ID, so nodes never issue the same PNR.
+ *
+ * Nodes share one data directory and a departure changes owner through its journal: the old owner
+ * closes it, the new one recovers it on first use. So that two nodes never have it open at once, a
+ * membership change is two steps, run by whoever coordinates the cluster (see
+ * {@link BookingCluster}): {@link #prepare} on every node stops each serving the departures that are
+ * changing owner and hands off the ones it is losing, then {@link #commit} on every node lets the
+ * new owners open them. In between, requests for a moving departure get a 503 and are retried.
+ */
+class BookingNode implements Closeable {
+
+    private final int id;
+    private final Departures departures;
+    private final BookingServer server;
+    // Null until the node's first commit; while a change is under way, next is the map it moves to
+    private volatile ShardMap current;
+    private volatile ShardMap next;
+
+    /** Starts the node's server on {@code port} (0 for any free one); it owns nothing until committed. */
+    BookingNode(int nodeId, Collection<Train> trains, Path dataDir, int snapshotEvery, int port) throws IOException {
+        if (dataDir == null)
+            throw new IllegalArgumentException("Cluster nodes hand departures over through a shared data directory");
+        this.id = nodeId;
+        this.departures = new Departures(trains, dataDir, snapshotEvery,
+                e -> System.err.println("Node " + nodeId + ": " + e.getMessage()), new TicketIds(nodeId));
+        departures.restrictTo(this::owns);
+        this.server = new BookingServer(departures, "127.0.0.1", port, this::ownerUrl);
+        server.start();
+    }
+
+    int id() {
+        return id;
+    }
+
+    ShardMap.Member member() {
+        return new ShardMap.Member(id, "http://127.0.0.1:" + server.port());
+    }
+
+    /** Departures this node currently has open. */
+    int openDepartures() {
+        return departures.openCount();
+    }
+
+    /**
+     * First step of a membership change: stops serving every departure whose owner differs between
+     * the current map and {@code next}, and closes those this node has open. Returns how many it
+     * handed off.
+     */
+    int prepare(ShardMap next) {
+        this.next = next;
+        return departures.restrictTo(this::owns);
+    }
+
+    /** Second step, once every node has prepared: {@code next} becomes the map. */
+    void commit(ShardMap next) {
+        this.current = next;
+        this.next = null;
+        departures.restrictTo(this::owns);
+    }
+
+    private boolean owns(String trainNumber, LocalDate date) {
+        ShardMap now = current;
+        ShardMap then = next;
+        return now != null && now.owner(trainNumber, date).nodeId == id
+                && (then == null || then.owner(trainNumber, date).nodeId == id);
+    }
+
+    // Where to forward a departure this node does not serve; null while it is moving
+    private String ownerUrl(String trainNumber, LocalDate date) {
+        ShardMap now = current;
+        ShardMap then = next;
+        if (now == null)
+            return null;
+        ShardMap.Member owner = now.owner(trainNumber, date);
+        if (owner.nodeId == id || (then != null && then.owner(trainNumber, date).nodeId != owner.nodeId))
+            return null;
+        return owner.url;
+    }
+
+    /** Stops the server and closes every open departure. Hand departures off with {@link #prepare} first. */
+    @Override
+    public void close() {
+        server.stop();
+        departures.close();
+    }
+}
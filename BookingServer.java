@@ -0,0 +1,403 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Embedded HTTP/JSON front-end to the same {@link Departures} the Swing UI books through.
+ *
+ * <pre>
+ * GET  /availability?train=12601&amp;date=2026-11-02&amp;from=Bangalore&amp;to=Delhi
+ * POST /book     {"train", "date", "from", "to", "name", "age", and "seat" (e.g. "2AC-S14") or "coach"}
+ * POST /cancel   {"train", "date", "ticketId"}
+ * GET  /tickets/01J8ZK4Q0A7M?train=12601&amp;date=2026-11-02
+ * GET  /sales?train=12601&amp;date=2026-11-02   revenue and tickets by coach, station pair and hour booked
+ * GET  /metrics  plain text, one "name value" line per {@link Metrics} value
+ * </pre>
+ *
+ * Every request runs on its own virtual thread when the JDK has them (21+), otherwise on a cached
+ * pool of platform threads. Handlers call the engine directly and may block on its journal fsync.
+ * Bad input is a 400, an unknown ticket a 404, no free seat a 409 and a journal failure a 503.
+ * A booking sent with an {@code Idempotency-Key} header (up to 128 characters, unique per booking)
+ * can be retried safely: a repeat within ten minutes (by default) returns the ticket the first one booked.
+ * Start it from the app with {@code -Drailway.httpPort=8080}, or see {@link LoadGenerator}.
+ *
+ * As one node of a cluster ({@link BookingNode}) it serves the departures its node owns and
+ * forwards requests for any other departure to the owner, one hop at most. While a departure is
+ * moving between nodes its requests get a 503 with {@code Retry-After}.
+ *
+ * Each request is timed, start to last byte, as {@code http.<endpoint>} in {@link Metrics}. This is
+ * where availability queries are timed: the engine call alone is too quick to time without slowing it.
+ */
+class BookingServer {
+
+    private static final int MAX_BODY = 16 * 1024;
+    // Set on forwarded requests, so a node that has just lost a departure does not forward it again
+    private static final String FORWARDED = "X-Railway-Forwarded";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    static {
+        // The JDK server writes headers and body separately; without TCP_NODELAY every small
+        // response waits out the client's delayed ACK (~40 ms). Read once when the server class loads.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Departures departures;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BiFunction<String, LocalDate, String> router;
+    private final HttpClient forwarder;
+
+    BookingServer(Departures departures, String host, int port) throws IOException {
+        this(departures, host, port, null);
+    }
+
+    /**
+     * @param router for one node of a cluster: given a departure this node does not own, the base
+     *               URL of the node that does, or null while it is moving; null for a lone server
+     */
+    BookingServer(Departures departures, String host, int port, BiFunction<String, LocalDate, String> router)
+            throws IOException {
+        this.departures = departures;
+        this.router = router;
+        this.forwarder = router == null ? null : HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 4096);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        Metrics.Timer availability = timer("availability"), book = timer("book"), cancel = timer("cancel"),
+                ticket = timer("tickets"), sales = timer("sales");
+        server.createContext("/availability", ex -> handle(ex, "GET", availability, this::availability));
+        server.createContext("/book", ex -> handle(ex, "POST", book, this::book));
+        server.createContext("/cancel", ex -> handle(ex, "POST", cancel, this::cancel));
+        server.createContext("/tickets/", ex -> handle(ex, "GET", ticket, this::ticket));
+        server.createContext("/sales", ex -> handle(ex, "GET", sales, this::sales));
+        server.createContext("/metrics", this::metrics);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    /** The port actually bound, useful when constructed with port 0. */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is only there on JDK 21+, so look it up reflectively
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "booking-http-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // ---------- Endpoints ----------
+
+    private Response availability(HttpExchange ex) {
+        Map<String, String> q = query(ex);
+        BookingEngine engine = engine(q);
+        String from = station(engine, q, "from");
+        String to = station(engine, q, "to");
+        BookingEngine.Availability a = engine.availability(from, to);
+        StringBuilder out = new StringBuilder("{\"coaches\":[");
+        String sep = "";
+        for (String coach : a.coaches()) {
+            out.append(sep).append("{\"coach\":");
+            Json.quote(out, coach).append(",\"free\":").append(a.free(coach))
+                    .append(",\"seats\":").append(a.seats(coach))
+                    .append(",\"fare\":").append(FareEngine.rupees(a.farePaise(coach))).append('}');
+            sep = ",";
+        }
+        return new Response(200, out.append("]}").toString());
+    }
+
+    private Response sales(HttpExchange ex) {
+        SalesTotals.Report r = engine(query(ex)).sales();
+        StringBuilder out = new StringBuilder(1024);
+        out.append("{\"tickets\":").append(r.tickets()).append(",\"revenue\":").append(FareEngine.rupees(r.revenuePaise()))
+                .append(",\"children\":").append(r.children()).append(",\"adults\":").append(r.adults())
+                .append(",\"coaches\":[");
+        String sep = "";
+        for (String coach : r.coaches()) {
+            out.append(sep).append("{\"coach\":");
+            Json.quote(out, coach).append(",\"tickets\":").append(r.tickets(coach))
+                    .append(",\"revenue\":").append(FareEngine.rupees(r.revenuePaise(coach)))
+                    .append(",\"children\":").append(r.children(coach)).append('}');
+            sep = ",";
+        }
+        out.append("],\"routes\":[");
+        sep = "";
+        for (String[] route : r.routes()) {
+            out.append(sep).append("{\"from\":");
+            Json.quote(out, route[0]).append(",\"to\":");
+            Json.quote(out, route[1]).append(",\"tickets\":").append(r.tickets(route[0], route[1]))
+                    .append(",\"revenue\":").append(FareEngine.rupees(r.revenuePaise(route[0], route[1]))).append('}');
+            sep = ",";
+        }
+        out.append("],\"revenueByHour\":[");
+        long[] byHour = r.revenuePaiseByHour();
+        for (int h = 0; h < byHour.length; h++)
+            out.append(h == 0 ? "" : ",").append(FareEngine.rupees(byHour[h]));
+        return new Response(200, out.append("]}").toString());
+    }
+
+    // Plain text rather than JSON, so it can be read with curl or scraped line by line
+    private void metrics(HttpExchange ex) throws IOException {
+        if (!"GET".equals(ex.getRequestMethod())) {
+            respond(ex, "GET", null);
+            return;
+        }
+        byte[] bytes = Metrics.process().text().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        ex.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Response book(HttpExchange ex) throws IOException {
+        Map<String, String> b = body(ex);
+        BookingEngine engine = engine(b);
+        String from = station(engine, b, "from");
+        String to = station(engine, b, "to");
+        if (from.equals(to))
+            throw new IllegalArgumentException("From and to must be different stations");
+        String name = required(b, "name").trim();
+        int age = parseInt(required(b, "age"), "age");
+        if (name.isEmpty() || age < 0 || age > 120)
+            throw new IllegalArgumentException("Enter a name and a valid age (0-120)");
+        String key = ex.getRequestHeaders().getFirst(IDEMPOTENCY_KEY);
+        Ticket t;
+        String seat = b.get("seat");
+        if (seat != null) {
+            t = engine.tryClaim(key, seat, name, age, from, to).orElse(null);
+        } else {
+            String coach = required(b, "coach");
+            if (!engine.coaches().contains(coach))
+                throw new IllegalArgumentException("Unknown coach " + coach);
+            List<Ticket> booked = engine.bookGroup(key, coach, from, to,
+                    Collections.singletonList(new BookingEngine.Passenger(name, age)), BookingEngine.SeatPreference.ANY);
+            t = booked.isEmpty() ? null : booked.get(0);
+        }
+        if (t == null)
+            return error(409, "No free seat for that journey");
+        return new Response(201, ticketJson(engine, t));
+    }
+
+    private Response cancel(HttpExchange ex) throws IOException {
+        Map<String, String> b = body(ex);
+        BookingEngine engine = engine(b);
+        String ticketId = required(b, "ticketId");
+        if (engine.leaveWaitlist(ticketId))
+            return new Response(200, "{\"cancelled\":true,\"waitlisted\":true}");
+        Ticket t = engine.ticketById(ticketId);
+        if (t == null || !engine.cancel(t))
+            return error(404, "No such ticket: " + ticketId);
+        return new Response(200, "{\"cancelled\":true}");
+    }
+
+    private Response ticket(HttpExchange ex) {
+        String ticketId = ex.getRequestURI().getPath().substring("/tickets/".length());
+        BookingEngine engine = engine(query(ex));
+        Ticket t = engine.ticketById(ticketId);
+        if (t == null)
+            t = engine.waitlistedTicket(ticketId);
+        if (t == null)
+            return error(404, "No such ticket: " + ticketId);
+        return new Response(200, ticketJson(engine, t));
+    }
+
+    // ---------- Plumbing ----------
+
+    private interface Handler {
+        Response apply(HttpExchange ex) throws IOException;
+    }
+
+    private static final class Response {
+        final int status;
+        final String json;
+
+        Response(int status, String json) {
+            this.status = status;
+            this.json = json;
+        }
+    }
+
+    private static Metrics.Timer timer(String endpoint) {
+        return Metrics.process().timer("http." + endpoint, 1);
+    }
+
+    private void handle(HttpExchange ex, String method, Metrics.Timer timer, Handler handler) throws IOException {
+        long start = timer.start();
+        try {
+            respond(ex, method, handler);
+        } finally {
+            timer.stop(start);
+        }
+    }
+
+    private void respond(HttpExchange ex, String method, Handler handler) throws IOException {
+        Response r;
+        byte[] body = null;
+        if (router != null && "POST".equals(ex.getRequestMethod())) {
+            // Kept in case the request has to be forwarded; the handler reads it again from here
+            try (InputStream in = ex.getRequestBody()) {
+                body = in.readNBytes(MAX_BODY + 1);
+            }
+            ex.setStreams(new ByteArrayInputStream(body), null);
+        }
+        try {
+            if (!method.equals(ex.getRequestMethod()))
+                r = error(405, "Use " + method);
+            else
+                r = handler.apply(ex);
+        } catch (IllegalArgumentException e) {
+            r = error(400, e.getMessage());
+        } catch (UncheckedIOException e) {
+            r = error(503, "Booking could not be saved: " + e.getMessage());
+        } catch (Departures.NotOwnedException e) {
+            r = forward(ex, body, e);
+        } catch (RuntimeException e) {
+            // One line, as the node's storage errors are; the class as well, as many have no message
+            System.err.println("Internal error on " + ex.getRequestMethod() + " " + ex.getRequestURI() + ": " + e);
+            r = error(500, "Internal error");
+        }
+        byte[] bytes = r.json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(r.status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Response forward(HttpExchange ex, byte[] body, Departures.NotOwnedException e) {
+        String owner = router == null ? null : router.apply(e.trainNumber, e.date);
+        if (owner == null || ex.getRequestHeaders().containsKey(FORWARDED)) {
+            ex.getResponseHeaders().set("Retry-After", "1");
+            return error(503, "Train " + e.trainNumber + " on " + e.date + " is moving between nodes, try again");
+        }
+        String query = ex.getRequestURI().getRawQuery();
+        HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(owner + ex.getRequestURI().getRawPath()
+                + (query == null ? "" : "?" + query))).timeout(Duration.ofSeconds(30)).header(FORWARDED, "1");
+        String key = ex.getRequestHeaders().getFirst(IDEMPOTENCY_KEY);
+        if (key != null)
+            req.header(IDEMPOTENCY_KEY, key);
+        if (body != null)
+            req.header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        try {
+            HttpResponse<String> resp = forwarder.send(req.build(), HttpResponse.BodyHandlers.ofString());
+            return new Response(resp.statusCode(), resp.body());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return error(503, "Interrupted forwarding to " + owner);
+        } catch (IOException io) {
+            return error(503, "Node " + owner + " is unreachable: " + io.getMessage());
+        }
+    }
+
+    private BookingEngine engine(Map<String, String> params) {
+        LocalDate date;
+        try {
+            date = LocalDate.parse(required(params, "date"));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("date must be YYYY-MM-DD");
+        }
+        return departures.engine(required(params, "train"), date);
+    }
+
+    private static String ticketJson(BookingEngine engine, Ticket t) {
+        StringBuilder out = new StringBuilder(256).append("{\"ticketId\":");
+        Json.quote(out, t.ticketId).append(",\"name\":");
+        Json.quote(out, t.name).append(",\"age\":").append(t.age).append(",\"coach\":");
+        Json.quote(out, t.coach).append(",\"seat\":");
+        Json.quote(out, t.seat).append(",\"from\":");
+        Json.quote(out, t.from).append(",\"to\":");
+        Json.quote(out, t.to).append(",\"price\":").append(FareEngine.rupees(t.pricePaise()))
+                .append(",\"bookedOn\":").append(t.bookedOn.getTime()).append(",\"status\":");
+        String waiting = engine.waitlistStatus(t.ticketId);
+        return Json.quote(out, waiting != null ? waiting : "CONFIRMED").append('}').toString();
+    }
+
+    private static Response error(int status, String message) {
+        return new Response(status, "{\"error\":" + Json.quote(message) + "}");
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> out = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null)
+            return out;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0)
+                out.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static Map<String, String> body(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY + 1);
+            if (bytes.length > MAX_BODY)
+                throw new IllegalArgumentException("Request body too large");
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String station(BookingEngine engine, Map<String, String> params, String name) {
+        String station = required(params, name);
+        if (!Arrays.asList(engine.stations()).contains(station))
+            throw new IllegalArgumentException("Unknown station " + station);
+        return station;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String v = params.get(name);
+        if (v == null || v.isEmpty())
+            throw new IllegalArgumentException("Missing " + name);
+        return v;
+    }
+
+    private static int parseInt(String text, String name) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+}
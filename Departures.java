@@ -0,0 +1,244 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+/**
+ * Booking inventory for every train on every travel date in the booking window, keyed by
+ * (train number, travel date).
+ *
+ * Nothing is allocated per departure up front. A departure's {@link BookingEngine}, and its journal
+ * under {@code dataDir/<train>/<date>}, is created the first time it is booked or queried, so startup
+ * costs the same for one train or a thousand and memory follows the departures actually in use.
+ * Once a travel date has passed, its departures are dropped from memory and their journals folded
+ * into a final snapshot.
+ *
+ * One node of a cluster opens only the departures it owns, see {@link #restrictTo}.
+ *
+ * While a departure is open it has a {@code tickets.<train>.<date>} gauge of live tickets, and each
+ * of its coaches an {@code occupancy.<train>.<date>.<coach>} gauge, in {@link Metrics#process()}. The
+ * {@code departures.open} gauge counts open departures across every instance in the JVM.
+ */
+class Departures implements Closeable {
+
+    static final int BOOKING_WINDOW_DAYS = 120;
+
+    // Departures open across every instance in the JVM, e.g. every node of an in-process cluster
+    private static final AtomicInteger OPEN = new AtomicInteger();
+
+    static {
+        Metrics.process().gauge("departures.open", OPEN::get);
+    }
+
+    private final Map<String, Train> trains = new LinkedHashMap<>();
+    private final Path dataDir;
+    private final int snapshotEvery;
+    private final Consumer<IOException> storageErrors;
+    private final TicketIds ids;
+    private volatile BiPredicate<String, LocalDate> owns = (train, date) -> true;
+    // "train@date" -> departure, only for departures touched since they went on sale
+    private final Map<String, Departure> open = new ConcurrentHashMap<>();
+    private volatile LocalDate sweptOn;
+
+    /**
+     * @param dataDir       where departures keep their journals, or null to keep bookings in memory only
+     * @param storageErrors told when a departure's journal cannot be opened or compacted; that
+     *                      departure then runs without persistence
+     */
+    Departures(Collection<Train> trains, Path dataDir, int snapshotEvery, Consumer<IOException> storageErrors) {
+        this(trains, dataDir, snapshotEvery, storageErrors, TicketIds.local());
+    }
+
+    /** @param ids where ticket numbers come from, one generator per booking node */
+    Departures(Collection<Train> trains, Path dataDir, int snapshotEvery, Consumer<IOException> storageErrors,
+            TicketIds ids) {
+        for (Train t : trains)
+            this.trains.put(t.number, t);
+        this.dataDir = dataDir;
+        this.snapshotEvery = snapshotEvery;
+        this.storageErrors = storageErrors;
+        this.ids = ids;
+    }
+
+    Collection<Train> trains() {
+        return Collections.unmodifiableCollection(trains.values());
+    }
+
+    Train train(String number) {
+        return trains.get(number);
+    }
+
+    /** Dates in the booking window, today first, on which the train runs. */
+    List<LocalDate> travelDates(String trainNumber) {
+        Train train = trains.get(trainNumber);
+        if (train == null)
+            return Collections.emptyList();
+        List<LocalDate> dates = new ArrayList<>();
+        LocalDate day = LocalDate.now();
+        for (int i = 0; i < BOOKING_WINDOW_DAYS; i++, day = day.plusDays(1)) {
+            if (train.runsOn(day))
+                dates.add(day);
+        }
+        return dates;
+    }
+
+    /**
+     * The engine for one departure, created on first use. Throws IllegalArgumentException if the
+     * train is unknown, does not run that day, or the date is outside the booking window, and
+     * NotOwnedException if another node owns it.
+     */
+    BookingEngine engine(String trainNumber, LocalDate date) {
+        LocalDate today = LocalDate.now();
+        if (!today.equals(sweptOn))
+            evictDeparted(today);
+        Train train = trains.get(trainNumber);
+        if (train == null)
+            throw new IllegalArgumentException("Unknown train " + trainNumber);
+        if (date.isBefore(today) || !date.isBefore(today.plusDays(BOOKING_WINDOW_DAYS)))
+            throw new IllegalArgumentException(date + " is outside the booking window");
+        if (!train.runsOn(date))
+            throw new IllegalArgumentException("Train " + trainNumber + " does not run on " + date);
+        if (!owns.test(trainNumber, date))
+            throw new NotOwnedException(trainNumber, date);
+        return open.computeIfAbsent(trainNumber + "@" + date, k -> new Departure(train, date)).engine();
+    }
+
+    /**
+     * Makes this instance one node of a cluster, opening only departures {@code owns} accepts. Open
+     * departures it no longer accepts are closed and dropped, leaving their journals under the
+     * shared data directory for the node that owns them now. Returns how many were handed off.
+     *
+     * An engine already handed out keeps working in memory, but its journal is closed, so bookings
+     * on it fail as unsaved (and are rolled back) and the caller retries on the new owner.
+     */
+    int restrictTo(BiPredicate<String, LocalDate> owns) {
+        this.owns = owns;
+        int released = 0;
+        for (Iterator<Departure> it = open.values().iterator(); it.hasNext(); ) {
+            Departure d = it.next();
+            if (!owns.test(d.train.number, d.date)) {
+                it.remove();
+                d.close(false);
+                released++;
+            }
+        }
+        return released;
+    }
+
+    /** Departures currently held in memory. */
+    int openCount() {
+        return open.size();
+    }
+
+    /**
+     * Drops every departure dated before {@code today} from memory and compacts its journal. Called
+     * automatically on the first lookup of each day. Returns how many departures were evicted.
+     */
+    int evictDeparted(LocalDate today) {
+        sweptOn = today;
+        int evicted = 0;
+        for (Iterator<Departure> it = open.values().iterator(); it.hasNext(); ) {
+            Departure d = it.next();
+            if (d.date.isBefore(today)) {
+                it.remove();
+                d.close(true);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /** Flushes and closes every open departure's journal. */
+    @Override
+    public void close() {
+        for (Departure d : open.values())
+            d.close(false);
+        open.clear();
+    }
+
+    /** A departure this node does not own, or has just handed to another node. */
+    static final class NotOwnedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final String trainNumber;
+        final LocalDate date;
+
+        NotOwnedException(String trainNumber, LocalDate date) {
+            super("Train " + trainNumber + " on " + date + " is booked on another node");
+            this.trainNumber = trainNumber;
+            this.date = date;
+        }
+    }
+
+    private final class Departure {
+        final Train train;
+        final LocalDate date;
+        private BookingEngine engine;
+        private BookingJournal journal;
+        private boolean closed;
+
+        Departure(Train train, LocalDate date) {
+            this.train = train;
+            this.date = date;
+            OPEN.incrementAndGet();
+        }
+
+        synchronized BookingEngine engine() {
+            // Checked again here: a handoff may have started after the lookup found or added us
+            if (closed || !owns.test(train.number, date))
+                throw new NotOwnedException(train.number, date);
+            if (engine == null) {
+                BookingEngine e = train.newEngine(ids);
+                if (dataDir != null)
+                    openJournal(e);
+                Metrics metrics = Metrics.process();
+                metrics.gauge("tickets." + key(), e::ticketCount);
+                for (String coach : e.coaches())
+                    metrics.gauge("occupancy." + key() + "." + coach, () -> e.occupancy(coach));
+                engine = e;
+            }
+            return engine;
+        }
+
+        private void openJournal(BookingEngine e) {
+            Path dir = dataDir.resolve(train.number).resolve(date.toString());
+            try {
+                BookingJournal.Recovered state = BookingJournal.recover(dir);
+                e.restore(state.tickets, state.waitlisted, state.requests);
+                journal = new BookingJournal(dir, state, snapshotEvery, e::tickets, e::waitlisted, e::keyedRequests);
+                e.attachJournal(journal);
+            } catch (IOException ex) {
+                storageErrors.accept(new IOException("Could not open bookings in " + dir.toAbsolutePath()
+                        + ": " + ex.getMessage(), ex));
+            }
+        }
+
+        private String key() {
+            return train.number + "." + date;
+        }
+
+        synchronized void close(boolean compact) {
+            if (!closed)
+                OPEN.decrementAndGet();
+            closed = true;
+            Metrics.process().removeGauges("tickets." + key());
+            Metrics.process().removeGauges("occupancy." + key() + ".");
+            if (journal == null)
+                return;
+            try {
+                if (compact)
+                    journal.compactAndClose();
+                else
+                    journal.close();
+            } catch (IOException ex) {
+                storageErrors.accept(ex);
+            }
+            journal = null;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Prices journeys in paise (1/100 rupee), so fares add up exactly.
+ *
+ * The booking engine asks for a fare on every booking and the booking window asks for every coach on
+ * every refresh, so implementations should answer from precomputed data and be safe to call from
+ * any thread. {@link FareTable} is the standard one.
+ */
+interface FareEngine {
+
+    /**
+     * Fare for one passenger in a coach (its ordinal in the train's coach map) over route segments
+     * [fromSeg, toSeg), given how many of the coach's seats are still free for that journey.
+     */
+    long farePaise(int coach, int fromSeg, int toSeg, int freeSeats, Concession concession);
+
+    /** "1234.50" for 123450 paise. */
+    static String rupees(long paise) {
+        long abs = Math.abs(paise);
+        return (paise < 0 ? "-" : "") + abs / 100 + "." + (abs % 100 < 10 ? "0" : "") + abs % 100;
+    }
+
+    enum Concession {
+        GENERAL(0),
+        /** Age 15 and under: half fare. */
+        CHILD(5000),
+        /** Age 60 and over. */
+        SENIOR(4000);
+
+        /** Discount in basis points (1/100 of a percent). */
+        final int discountBp;
+
+        Concession(int discountBp) {
+            this.discountBp = discountBp;
+        }
+
+        static Concession forAge(int age) {
+            if (age <= 15)
+                return CHILD;
+            return age >= 60 ? SENIOR : GENERAL;
+        }
+    }
+}
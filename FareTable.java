@@ -0,0 +1,107 @@
+import java.util.Map;
+
+/**
+ * Distance- and demand-based fares, worked out in advance for every coach, journey, surge tier and
+ * concession.
+ *
+ * A coach's configured price is its fare, in rupees, for the whole route. A shorter journey pays
+ * {@link #BASE_SHARE_BP} of that plus the rest in proportion to its kilometres. As the coach fills up
+ * for the journey, surge tiers add a percentage, and concessions then take one off. Each step is
+ * integer paise rounded half up, and the final fare is rounded to whole rupees.
+ *
+ * A quote only has to find the tier. That compares the journey's free-seat count (which
+ * {@link SeatInventory} already keeps) with per-coach seat thresholds, so nothing is cached that
+ * could go stale when occupancy crosses a tier. The whole table is small: four coaches on a
+ * six-station route is 1,728 longs.
+ */
+class FareTable implements FareEngine {
+
+    // Share of the full-route fare that every journey pays, however short, in basis points
+    static final int BASE_SHARE_BP = 2000;
+    // Surge tiers: from this share of the journey's seats taken (percent), add this much (basis points)
+    private static final int[] TIER_OCCUPANCY_PERCENT = {0, 50, 75, 90};
+    private static final int[] TIER_SURGE_BP = {0, 1000, 2500, 4000};
+    private static final int TIERS = TIER_OCCUPANCY_PERCENT.length;
+    private static final int CONCESSIONS = Concession.values().length;
+    // Fare for a coach missing from the price map, in rupees
+    private static final int DEFAULT_PRICE = 500;
+
+    private final int segments;
+    private final int ranges;
+    private final int[] seatCounts;
+    // Per coach, the seats that must be taken to reach each tier
+    private final int[][] tierTaken;
+    // Indexed by slot(coach, rangeIndex(fromSeg, toSeg), tier, concession)
+    private final long[] fares;
+
+    /**
+     * @param stationKm kilometres of each station from a common origin, in route order; only the
+     *                  differences matter, so a reversed route can reuse its forward distances
+     */
+    FareTable(Map<String, Integer> coachSeatCount, Map<String, Integer> coachPrice, int[] stationKm) {
+        if (stationKm.length < 2)
+            throw new IllegalArgumentException("Route needs at least 2 stations");
+        segments = stationKm.length - 1;
+        ranges = (segments + 1) * (segments + 1);
+        int coaches = coachSeatCount.size();
+        seatCounts = new int[coaches];
+        tierTaken = new int[coaches][TIERS];
+        fares = new long[coaches * ranges * TIERS * CONCESSIONS];
+        long routeKm = Math.abs(stationKm[segments] - stationKm[0]);
+        int c = 0;
+        for (Map.Entry<String, Integer> e : coachSeatCount.entrySet()) {
+            int seats = e.getValue();
+            seatCounts[c] = seats;
+            for (int t = 0; t < TIERS; t++)
+                tierTaken[c][t] = (seats * TIER_OCCUPANCY_PERCENT[t] + 99) / 100;
+            long routeFare = coachPrice.getOrDefault(e.getKey(), DEFAULT_PRICE) * 100L;
+            for (int from = 0; from < segments; from++) {
+                for (int to = from + 1; to <= segments; to++) {
+                    long km = Math.abs(stationKm[to] - stationKm[from]);
+                    long distanceFare = routeKm == 0 ? routeFare
+                            : share(routeFare, BASE_SHARE_BP) + divideRounded(
+                                    share(routeFare, 10000 - BASE_SHARE_BP) * km, routeKm);
+                    for (int t = 0; t < TIERS; t++) {
+                        long surged = share(distanceFare, 10000 + TIER_SURGE_BP[t]);
+                        for (Concession k : Concession.values()) {
+                            long fare = share(surged, 10000 - k.discountBp);
+                            fares[slot(c, from * (segments + 1) + to, t, k.ordinal())] = divideRounded(fare, 100) * 100;
+                        }
+                    }
+                }
+            }
+            c++;
+        }
+    }
+
+    /** Equal distances between consecutive stations, for routes without known kilometres. */
+    static int[] evenlySpaced(int stationCount) {
+        int[] km = new int[stationCount];
+        for (int i = 0; i < stationCount; i++)
+            km[i] = i;
+        return km;
+    }
+
+    @Override
+    public long farePaise(int coach, int fromSeg, int toSeg, int freeSeats, Concession concession) {
+        int taken = seatCounts[coach] - freeSeats;
+        int[] thresholds = tierTaken[coach];
+        int tier = 0;
+        while (tier + 1 < TIERS && taken >= thresholds[tier + 1])
+            tier++;
+        return fares[slot(coach, fromSeg * (segments + 1) + toSeg, tier, concession.ordinal())];
+    }
+
+    private int slot(int coach, int range, int tier, int concession) {
+        return ((coach * ranges + range) * TIERS + tier) * CONCESSIONS + concession;
+    }
+
+    // amount * bp / 10000, rounded half up
+    private static long share(long amount, int bp) {
+        return divideRounded(amount * bp, 10000);
+    }
+
+    private static long divideRounded(long value, long divisor) {
+        return (value + divisor / 2) / divisor;
+    }
+}
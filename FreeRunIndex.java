@@ -0,0 +1,155 @@
+import java.util.BitSet;
+
+/**
+ * Free-seat index for one coach and one journey (segment range), laid out in rows of
+ * {@link #ROW_WIDTH} seats like the booking window's seat grid.
+ *
+ * Each row keeps a small bitmask of its free seats, and for every run length L there is a bitset of
+ * the rows whose longest free run is at least L. Finding N seats side by side is then a
+ * {@code nextSetBit} over those bitsets instead of a walk over every seat, which matters most on a
+ * nearly full train where almost every seat would be skipped.
+ *
+ * The index is only a hint: callers still claim the seats through {@link SeatInventory}, and retry
+ * if they lose a seat to a concurrent booking. Queries lock the index; {@link #set} leaves that to
+ * the caller, who re-reads the seat under the same lock.
+ */
+class FreeRunIndex {
+
+    static final int ROW_WIDTH = 5;
+
+    // Longest run of set bits in a row mask
+    private static final int[] LONGEST_RUN = new int[1 << ROW_WIDTH];
+
+    static {
+        for (int m = 0; m < LONGEST_RUN.length; m++) {
+            int best = 0;
+            int run = 0;
+            for (int c = 0; c < ROW_WIDTH; c++) {
+                run = (m & (1 << c)) != 0 ? run + 1 : 0;
+                best = Math.max(best, run);
+            }
+            LONGEST_RUN[m] = best;
+        }
+    }
+
+    private final int rows;
+    private final byte[] rowFree;
+    // runAtLeast[L]: rows with a free run of at least L seats, L = 1..ROW_WIDTH
+    private final BitSet[] runAtLeast = new BitSet[ROW_WIDTH + 1];
+
+    FreeRunIndex(int seatCount) {
+        this.rows = (seatCount + ROW_WIDTH - 1) / ROW_WIDTH;
+        this.rowFree = new byte[rows];
+        for (int len = 1; len <= ROW_WIDTH; len++)
+            runAtLeast[len] = new BitSet(rows);
+    }
+
+    /** Caller holds the index lock. */
+    void set(int seatIndex, boolean free) {
+        int row = seatIndex / ROW_WIDTH;
+        int bit = 1 << (seatIndex % ROW_WIDTH);
+        int before = rowFree[row];
+        int after = free ? before | bit : before & ~bit;
+        if (after == before)
+            return;
+        rowFree[row] = (byte) after;
+        int oldRun = LONGEST_RUN[before];
+        int newRun = LONGEST_RUN[after];
+        for (int len = Math.min(oldRun, newRun) + 1; len <= Math.max(oldRun, newRun); len++)
+            runAtLeast[len].set(row, newRun > oldRun);
+    }
+
+    /**
+     * Picks {@code n} free seat indexes, or null if the coach does not have that many free.
+     * With {@code together}, prefers (in order) one row; whole adjacent rows plus a neighbouring
+     * partial row; whole rows anywhere plus any partial row. Falls back to the first free seats.
+     */
+    synchronized int[] find(int n, boolean together) {
+        if (n <= 0)
+            return null;
+        int[] picked = null;
+        if (together)
+            picked = n <= ROW_WIDTH ? inOneRow(n) : inRowBlock(n);
+        return picked != null ? picked : firstFree(n);
+    }
+
+    private int[] inOneRow(int n) {
+        int row = runAtLeast[n].nextSetBit(0);
+        if (row < 0)
+            return null;
+        int[] out = new int[n];
+        fillRun(row, n, out, 0);
+        return out;
+    }
+
+    private int[] inRowBlock(int n) {
+        int fullRows = n / ROW_WIDTH;
+        int rest = n % ROW_WIDTH;
+        BitSet full = runAtLeast[ROW_WIDTH];
+        int fallbackStart = -1;
+        for (int start = full.nextSetBit(0); start >= 0; ) {
+            int end = full.nextClearBit(start); // rows [start, end) are completely free
+            for (int first = start; first + fullRows <= end; first++) {
+                if (fallbackStart < 0)
+                    fallbackStart = first;
+                if (rest == 0)
+                    return pickRows(first, fullRows, -1, 0);
+                if (first > 0 && runAtLeast[rest].get(first - 1))
+                    return pickRows(first, fullRows, first - 1, rest);
+                int after = first + fullRows;
+                if (after < rows && runAtLeast[rest].get(after))
+                    return pickRows(first, fullRows, after, rest);
+            }
+            start = full.nextSetBit(end);
+        }
+        if (fallbackStart < 0)
+            return null;
+        // Whole rows found but no partial row next to them: take any partial row outside the block
+        for (int row = runAtLeast[rest].nextSetBit(0); row >= 0; row = runAtLeast[rest].nextSetBit(row + 1)) {
+            if (row < fallbackStart || row >= fallbackStart + fullRows)
+                return pickRows(fallbackStart, fullRows, row, rest);
+        }
+        return null;
+    }
+
+    private int[] pickRows(int firstRow, int fullRows, int partialRow, int rest) {
+        int[] out = new int[fullRows * ROW_WIDTH + rest];
+        int at = 0;
+        if (partialRow >= 0 && partialRow < firstRow)
+            at = fillRun(partialRow, rest, out, at);
+        for (int r = firstRow; r < firstRow + fullRows; r++)
+            at = fillRun(r, ROW_WIDTH, out, at);
+        if (partialRow >= firstRow + fullRows)
+            fillRun(partialRow, rest, out, at);
+        return out;
+    }
+
+    // Writes the first run of n free seats in the row; returns the next free slot in out
+    private int fillRun(int row, int n, int[] out, int at) {
+        int mask = rowFree[row];
+        int run = 0;
+        for (int c = 0; c < ROW_WIDTH; c++) {
+            run = (mask & (1 << c)) != 0 ? run + 1 : 0;
+            if (run == n) {
+                for (int k = c - n + 1; k <= c; k++)
+                    out[at++] = row * ROW_WIDTH + k;
+                return at;
+            }
+        }
+        throw new IllegalStateException("Row " + row + " has no run of " + n);
+    }
+
+    private int[] firstFree(int n) {
+        int[] out = new int[n];
+        int at = 0;
+        BitSet any = runAtLeast[1];
+        for (int row = any.nextSetBit(0); row >= 0 && at < n; row = any.nextSetBit(row + 1)) {
+            int mask = rowFree[row];
+            for (int c = 0; c < ROW_WIDTH && at < n; c++) {
+                if ((mask & (1 << c)) != 0)
+                    out[at++] = row * ROW_WIDTH + c;
+            }
+        }
+        return at == n ? out : null;
+    }
+}
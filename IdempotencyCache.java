@@ -0,0 +1,213 @@
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Outcomes of requests by the idempotency key their client sent with them, so a retried or
+ * double-submitted request gets the first one's outcome back instead of being carried out again.
+ *
+ * A request whose key is already in flight waits for that one and shares its outcome. Outcomes the
+ * {@code keep} test rejects (nothing was booked, say) and exceptions are not remembered, so the next
+ * request with that key runs again. Remembered outcomes expire {@code ttl} after the first request.
+ *
+ * Memory is bounded by an estimate of what the entries take: a fixed overhead per entry, two bytes
+ * per key character and what {@code valueBytes} says of the outcome. Past the budget the least
+ * recently used finished entries go, and expired ones are dropped whenever they reach the old end.
+ * Keys are spread over {@value #SEGMENTS} access-ordered maps, each with its own lock and share of
+ * the budget, so concurrent requests seldom wait on each other.
+ *
+ * The cache itself lives in memory only. {@link #remembered} lists what it holds, for the booking
+ * journal to save, and {@link #restore} puts a saved outcome back with the rest of its TTL.
+ */
+final class IdempotencyCache<V> {
+
+    static final int MAX_KEY_LENGTH = 128;
+    // Map node, Entry, its future and the key String, on a 64-bit JVM with compressed references
+    static final int ENTRY_BYTES = 160;
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    private final List<Segment> segments = new ArrayList<>(SEGMENTS);
+    private final long ttlNanos;
+    private final ToIntFunction<V> valueBytes;
+    private final Predicate<V> keep;
+
+    IdempotencyCache(long maxBytes, Duration ttl, ToIntFunction<V> valueBytes, Predicate<V> keep) {
+        for (int i = 0; i < SEGMENTS; i++)
+            segments.add(new Segment(Math.max(1, maxBytes / SEGMENTS)));
+        this.ttlNanos = ttl.toNanos();
+        this.valueBytes = valueBytes;
+        this.keep = keep;
+    }
+
+    /**
+     * The outcome of the request with this key: remembered from an earlier request, or else what
+     * {@code action} returns, run now. Throws IllegalArgumentException for a key longer than
+     * {@value #MAX_KEY_LENGTH} characters.
+     */
+    V once(String key, Supplier<V> action) {
+        if (key.length() > MAX_KEY_LENGTH)
+            throw new IllegalArgumentException("Idempotency key longer than " + MAX_KEY_LENGTH + " characters");
+        Segment s = segmentOf(key);
+        while (true) {
+            Entry<V> e;
+            boolean mine;
+            long now = System.nanoTime();
+            synchronized (s) {
+                e = s.map.get(key);
+                mine = e == null || (e.outcome.isDone() && e.expiresAt - now < 0);
+                if (mine) {
+                    e = new Entry<>(now + ttlNanos, ENTRY_BYTES + 2 * key.length());
+                    s.add(key, e, now);
+                }
+            }
+            if (!mine) {
+                // Null if the first request booked nothing or failed; then this one tries itself
+                V earlier = e.outcome.join();
+                if (earlier != null)
+                    return earlier;
+                continue;
+            }
+            V v;
+            try {
+                v = action.get();
+            } catch (RuntimeException | Error ex) {
+                s.forget(key, e);
+                throw ex;
+            }
+            if (keep.test(v))
+                s.remember(e, v, valueBytes.applyAsInt(v));
+            else
+                s.forget(key, e);
+            return v;
+        }
+    }
+
+    /**
+     * Remembers {@code value} as the outcome of a request made {@code age} ago, before a restart, for
+     * what is left of its TTL. Ignored if that is nothing, or if the key is already known.
+     */
+    void restore(String key, V value, Duration age) {
+        long left = ttlNanos - age.toNanos();
+        if (left <= 0 || key.length() > MAX_KEY_LENGTH)
+            return;
+        Segment s = segmentOf(key);
+        long now = System.nanoTime();
+        Entry<V> e = new Entry<>(now + left, ENTRY_BYTES + 2 * key.length() + valueBytes.applyAsInt(value));
+        e.outcome.complete(value);
+        synchronized (s) {
+            if (!s.map.containsKey(key))
+                s.add(key, e, now);
+        }
+    }
+
+    /** Outcomes remembered and not yet expired, by key; requests still in flight are left out. */
+    Map<String, V> remembered() {
+        Map<String, V> out = new HashMap<>();
+        long now = System.nanoTime();
+        for (Segment s : segments) {
+            synchronized (s) {
+                for (Map.Entry<String, Entry<V>> m : s.map.entrySet()) {
+                    Entry<V> e = m.getValue();
+                    V v = e.outcome.getNow(null);
+                    if (v != null && e.expiresAt - now >= 0)
+                        out.put(m.getKey(), v);
+                }
+            }
+        }
+        return out;
+    }
+
+    // From the top bits: the maps index by the low ones, which would then be alike within a segment
+    private Segment segmentOf(String key) {
+        return segments.get((key.hashCode() * 0x9E3779B9) >>> (32 - SEGMENT_BITS));
+    }
+
+    /** Remembered and in-flight requests. */
+    int size() {
+        int n = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                n += s.map.size();
+            }
+        }
+        return n;
+    }
+
+    /** The memory estimate the budget is checked against. */
+    long estimatedBytes() {
+        long n = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                n += s.bytes;
+            }
+        }
+        return n;
+    }
+
+    private static final class Entry<T> {
+        final long expiresAt;
+        final CompletableFuture<T> outcome = new CompletableFuture<>();
+        int bytes;
+
+        Entry(long expiresAt, int bytes) {
+            this.expiresAt = expiresAt;
+            this.bytes = bytes;
+        }
+    }
+
+    private final class Segment {
+        final LinkedHashMap<String, Entry<V>> map = new LinkedHashMap<>(64, 0.75f, true);
+        final long maxBytes;
+        long bytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        // Caller holds the lock
+        void add(String key, Entry<V> e, long now) {
+            Entry<V> old = map.put(key, e);
+            if (old != null)
+                bytes -= old.bytes;
+            bytes += e.bytes;
+            evict(e, now);
+        }
+
+        void remember(Entry<V> e, V value, int valueSize) {
+            // Still mapped: evict() never takes an entry in flight
+            synchronized (this) {
+                e.bytes += valueSize;
+                bytes += valueSize;
+                // The outcome's bytes were not known when the entry went in; make room for them too
+                evict(e, System.nanoTime());
+            }
+            e.outcome.complete(value);
+        }
+
+        // Caller holds the lock. Oldest first, stopping at e; in-flight entries stay, or a concurrent
+        // retry could run twice
+        private void evict(Entry<V> e, long now) {
+            for (Iterator<Entry<V>> it = map.values().iterator(); it.hasNext(); ) {
+                Entry<V> eldest = it.next();
+                if (eldest == e || (bytes <= maxBytes && eldest.expiresAt - now >= 0))
+                    break;
+                if (!eldest.outcome.isDone())
+                    continue;
+                it.remove();
+                bytes -= eldest.bytes;
+            }
+        }
+
+        void forget(String key, Entry<V> e) {
+            synchronized (this) {
+                if (map.remove(key, e))
+                    bytes -= e.bytes;
+            }
+            e.outcome.complete(null);
+        }
+    }
+}
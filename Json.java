@@ -0,0 +1,149 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the booking service: flat objects of strings, numbers and booleans.
+ * Nested objects and arrays are only ever written, never read.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Parses a flat JSON object into field -> value text. Strings are unescaped; numbers, true,
+     * false and null keep their literal text. Throws IllegalArgumentException on anything else.
+     */
+    static Map<String, String> parseObject(String text) {
+        Map<String, String> out = new LinkedHashMap<>();
+        Parser p = new Parser(text);
+        p.expect('{');
+        if (!p.consume('}')) {
+            do {
+                String key = p.string();
+                p.expect(':');
+                out.put(key, p.peek() == '"' ? p.string() : p.literal());
+            } while (p.consume(','));
+            p.expect('}');
+        }
+        p.end();
+        return out;
+    }
+
+    /** Appends {@code s} as a JSON string literal. */
+    static StringBuilder quote(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20)
+                        out.append(String.format("\\u%04x", (int) c));
+                    else
+                        out.append(c);
+                }
+            }
+        }
+        return out.append('"');
+    }
+
+    static String quote(String s) {
+        return quote(new StringBuilder(s.length() + 2), s).toString();
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        char peek() {
+            skipSpace();
+            if (pos >= text.length())
+                throw error("Unexpected end of JSON");
+            return text.charAt(pos);
+        }
+
+        boolean consume(char c) {
+            if (peek() != c)
+                return false;
+            pos++;
+            return true;
+        }
+
+        void expect(char c) {
+            if (!consume(c))
+                throw error("Expected '" + c + "'");
+        }
+
+        void end() {
+            skipSpace();
+            if (pos != text.length())
+                throw error("Trailing characters");
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (pos >= text.length())
+                    throw error("Unterminated string");
+                char c = text.charAt(pos++);
+                if (c == '"')
+                    return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= text.length())
+                    throw error("Unterminated string");
+                char e = text.charAt(pos++);
+                switch (e) {
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > text.length())
+                            throw error("Bad \\u escape");
+                        try {
+                            sb.append((char) Integer.parseInt(text, pos, pos + 4, 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("Bad \\u escape");
+                        }
+                        pos += 4;
+                    }
+                    default -> sb.append(e);
+                }
+            }
+        }
+
+        // A number, true, false or null, kept as text
+        String literal() {
+            int start = pos;
+            while (pos < text.length() && "{}[],:\" \t\r\n".indexOf(text.charAt(pos)) < 0)
+                pos++;
+            if (pos == start)
+                throw error(text.charAt(pos) == '{' || text.charAt(pos) == '[' ? "Nested values are not supported"
+                        : "Expected a value");
+            return text.substring(start, pos);
+        }
+
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+                pos++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at offset " + pos);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of durations in nanoseconds, in log-linear buckets like an HDR histogram: exact below
+ * 32 ns, then 32 buckets per power of two, so any recorded value is known to within about 3%.
+ * Values from 1 ns to about 18 minutes fit in 1,184 buckets (9 KB); longer ones land in the top
+ * bucket.
+ *
+ * Recording is one atomic increment and never allocates. Reads are not atomic with respect to
+ * concurrent recording, which can only make a snapshot lag by the values being recorded at that
+ * moment.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        sum.addAndGet(nanos);
+        if (nanos > max.get())
+            max.accumulateAndGet(nanos, Math::max);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // Middle of the range of values that land in a bucket
+    static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long low = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return low + ((1L << shift) >>> 1);
+    }
+
+    /** A consistent-enough copy for reporting. */
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.get(), max.get());
+    }
+
+    static final class Snapshot {
+        private final long[] counts;
+        final long count;
+        final long sumNanos;
+        final long maxNanos;
+
+        private Snapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /** The value at quantile {@code q} (0.5 = median) in nanoseconds, or 0 if nothing was recorded. */
+        long quantile(double q) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(valueOf(i), maxNanos);
+            }
+            return maxNanos;
+        }
+
+        double meanNanos() {
+            return count == 0 ? 0 : sumNanos / (double) count;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives a {@link BookingServer} with many concurrent clients and reports latency and throughput.
+ *
+ * <pre>
+ * java LoadGenerator [clients] [seconds] [baseUrl train date]
+ * </pre>
+ *
+ * Without a base URL it starts an in-memory server with one large demo train on a free local port.
+ * Each client is a closed loop (send, wait for the answer, send the next) doing a mix of 70%
+ * availability queries, 20% bookings and 10% ticket lookups or cancellations. Requests are sent
+ * asynchronously, so a thousand clients do not need a thousand client threads. Given several
+ * {@link Target}s, e.g. the departures of a {@link BookingCluster}, each request goes to one picked
+ * at random, and lookups and cancellations to the one the ticket was booked on.
+ */
+public class LoadGenerator {
+
+    private static final String[] DEMO_STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String baseUrl;
+        String train;
+        String date;
+        BookingServer server = null;
+        if (args.length >= 5) {
+            baseUrl = args[2];
+            train = args[3];
+            date = args[4];
+        } else {
+            Train demo = demoTrain("99999");
+            Departures departures = new Departures(List.of(demo), null, 0, Throwable::printStackTrace);
+            server = new BookingServer(departures, "127.0.0.1", 0);
+            server.start();
+            baseUrl = "http://127.0.0.1:" + server.port();
+            train = demo.number;
+            date = LocalDate.now().plusDays(1).toString();
+        }
+        System.out.println("Driving " + baseUrl + " with " + clients + " clients for " + seconds + "s");
+        Result r = new LoadGenerator(baseUrl, train, date).run(clients, seconds);
+        System.out.println(r);
+        if (server != null)
+            server.stop();
+    }
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final List<Target> targets;
+
+    LoadGenerator(String baseUrl, String train, String date) {
+        this(List.of(new Target(baseUrl, train, date)));
+    }
+
+    LoadGenerator(List<Target> targets) {
+        this.targets = targets;
+    }
+
+    /** A train with 20 coaches of 5,000 seats ("C1" to "C20"), which is what the clients book. */
+    static Train demoTrain(String number) {
+        Map<String, Integer> seats = new LinkedHashMap<>();
+        Map<String, Integer> prices = new LinkedHashMap<>();
+        for (int c = 1; c <= 20; c++) {
+            seats.put("C" + c, 5000);
+            prices.put("C" + c, 500);
+        }
+        return new Train(number, "Load Test Special " + number, DEMO_STATIONS, seats, prices);
+    }
+
+    /** A departure of a demo train, and the server to send its requests to. */
+    static final class Target {
+        final String baseUrl;
+        final String train;
+        final String date;
+
+        Target(String baseUrl, String train, String date) {
+            this.baseUrl = baseUrl;
+            this.train = train;
+            this.date = date;
+        }
+    }
+
+    /** Runs {@code clients} closed-loop clients for {@code seconds} after a short warm-up. */
+    Result run(int clients, int seconds) throws InterruptedException {
+        long warmupEnd = System.nanoTime() + Duration.ofSeconds(Math.min(5, seconds / 4)).toNanos();
+        long end = warmupEnd + Duration.ofSeconds(seconds).toNanos();
+        Client[] all = new Client[clients];
+        AtomicInteger running = new AtomicInteger(clients);
+        for (int i = 0; i < clients; i++) {
+            all[i] = new Client(i, warmupEnd, end, running);
+            all[i].next();
+        }
+        synchronized (running) {
+            while (running.get() > 0)
+                running.wait(1000);
+        }
+        long[] latencies = Arrays.stream(all).flatMapToLong(c -> Arrays.stream(c.latencies, 0, c.count)).toArray();
+        Arrays.sort(latencies);
+        long errors = Arrays.stream(all).mapToLong(c -> c.errors).sum();
+        return new Result(latencies, errors, seconds);
+    }
+
+    /** One simulated user: a chain of requests, each sent when the previous answer arrives. */
+    private final class Client {
+        final int id;
+        final long measureFrom;
+        final long end;
+        final AtomicInteger running;
+        // Ticket IDs, each after the index of the target it was booked on
+        final Deque<String[]> myTickets = new ArrayDeque<>();
+        long[] latencies = new long[1024];
+        int count;
+        long errors;
+
+        Client(int id, long measureFrom, long end, AtomicInteger running) {
+            this.id = id;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.running = running;
+        }
+
+        void next() {
+            long start = System.nanoTime();
+            if (start >= end) {
+                if (running.decrementAndGet() == 0) {
+                    synchronized (running) {
+                        running.notifyAll();
+                    }
+                }
+                return;
+            }
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            int from = rnd.nextInt(DEMO_STATIONS.length - 1);
+            int to = from + 1 + rnd.nextInt(DEMO_STATIONS.length - 1 - from);
+            int roll = rnd.nextInt(100);
+            int target = rnd.nextInt(targets.size());
+            Target t = targets.get(target);
+            HttpRequest req;
+            boolean booking = false;
+            if (roll < 70) {
+                req = get(t, "/availability?train=" + t.train + "&date=" + t.date + "&from=" + DEMO_STATIONS[from]
+                        + "&to=" + DEMO_STATIONS[to]);
+            } else if (roll < 90 || myTickets.isEmpty()) {
+                booking = true;
+                req = post(t, "/book", "{\"train\":\"" + t.train + "\",\"date\":\"" + t.date + "\",\"coach\":\"C"
+                        + (1 + rnd.nextInt(20)) + "\",\"from\":\"" + DEMO_STATIONS[from] + "\",\"to\":\""
+                        + DEMO_STATIONS[to] + "\",\"name\":\"Client " + id + "\",\"age\":" + rnd.nextInt(5, 90) + "}");
+            } else if (roll < 95) {
+                String[] mine = myTickets.peekLast();
+                t = targets.get(Integer.parseInt(mine[0]));
+                req = get(t, "/tickets/" + mine[1] + "?train=" + t.train + "&date=" + t.date);
+            } else {
+                String[] mine = myTickets.pollFirst();
+                t = targets.get(Integer.parseInt(mine[0]));
+                req = post(t, "/cancel", "{\"train\":\"" + t.train + "\",\"date\":\"" + t.date
+                        + "\",\"ticketId\":\"" + mine[1] + "\"}");
+            }
+            boolean isBooking = booking;
+            http.sendAsync(req, HttpResponse.BodyHandlers.ofString()).whenComplete((resp, err) -> {
+                long done = System.nanoTime();
+                if (err != null || resp.statusCode() >= 500) {
+                    errors++;
+                } else if (isBooking && resp.statusCode() == 201) {
+                    String body = resp.body();
+                    int at = body.indexOf("\"ticketId\":\"") + 12;
+                    myTickets.addLast(new String[] {Integer.toString(target), body.substring(at, body.indexOf('"', at))});
+                }
+                if (start >= measureFrom)
+                    record(done - start);
+                next();
+            });
+        }
+
+        void record(long nanos) {
+            if (count == latencies.length)
+                latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = nanos;
+        }
+    }
+
+    private HttpRequest get(Target t, String path) {
+        return HttpRequest.newBuilder(URI.create(t.baseUrl + path)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private HttpRequest post(Target t, String path, String json) {
+        return HttpRequest.newBuilder(URI.create(t.baseUrl + path)).timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json)).build();
+    }
+
+    static final class Result {
+        final long requests;
+        final long errors;
+        final double perSecond;
+        final double p50Millis;
+        final double p99Millis;
+
+        Result(long[] sortedNanos, long errors, int seconds) {
+            this.requests = sortedNanos.length;
+            this.errors = errors;
+            this.perSecond = sortedNanos.length / (double) seconds;
+            this.p50Millis = percentile(sortedNanos, 0.50) / 1e6;
+            this.p99Millis = percentile(sortedNanos, 0.99) / 1e6;
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d requests, %.0f req/s, p50 %.2f ms, p99 %.2f ms, %d errors",
+                    requests, perSecond, p50Millis, p99Millis, errors);
+        }
+    }
+}
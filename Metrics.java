@@ -0,0 +1,191 @@
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named counters, latency timers and gauges, readable as text (see {@link BookingServer}'s
+ * {@code GET /metrics}) or over JMX as {@code railway:type=Metrics}.
+ *
+ * Booking calls take a few microseconds and queries tens of nanoseconds, so instruments on those
+ * paths are kept cheap: counters are {@link LongAdder}s, and a timer reads the clock for only one
+ * call in {@code sampleEvery}, picked at random, so its percentiles are those of the sample and its
+ * count is an estimate. Run with {@code -Drailway.metrics=off} to compile all of it away, e.g. to
+ * compare runs of the jmh module's benchmarks with and without ({@code -jvmArgsAppend -Drailway.metrics=off}).
+ */
+final class Metrics {
+
+    static final boolean ENABLED = !"off".equals(System.getProperty("railway.metrics"));
+
+    private static final Metrics PROCESS = new Metrics();
+    private static final String JMX_NAME = "railway:type=Metrics";
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+
+    /** The registry every booking engine in this JVM reports to. */
+    static Metrics process() {
+        return PROCESS;
+    }
+
+    Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /** @param sampleEvery time one call in this many (a power of two); 1 times every call */
+    Timer timer(String name, int sampleEvery) {
+        if (Integer.bitCount(sampleEvery) != 1)
+            throw new IllegalArgumentException("sampleEvery must be a power of two: " + sampleEvery);
+        return timers.computeIfAbsent(name, k -> new Timer(sampleEvery));
+    }
+
+    /** Registers (or replaces) a value read each time metrics are reported. */
+    void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    void removeGauges(String prefix) {
+        gauges.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    /**
+     * Every value by name, sorted. Timers report {@code .count}, {@code .mean_us}, {@code .p50_us},
+     * {@code .p90_us}, {@code .p99_us}, {@code .p999_us} and {@code .max_us}.
+     */
+    SortedMap<String, Number> snapshot() {
+        SortedMap<String, Number> out = new TreeMap<>();
+        counters.forEach((name, c) -> out.put(name, c.get()));
+        timers.forEach((name, t) -> {
+            LatencyHistogram.Snapshot s = t.histogram.snapshot();
+            out.put(name + ".count", s.count * t.sampleEvery);
+            out.put(name + ".mean_us", s.meanNanos() / 1000);
+            out.put(name + ".p50_us", s.quantile(0.50) / 1000.0);
+            out.put(name + ".p90_us", s.quantile(0.90) / 1000.0);
+            out.put(name + ".p99_us", s.quantile(0.99) / 1000.0);
+            out.put(name + ".p999_us", s.quantile(0.999) / 1000.0);
+            out.put(name + ".max_us", s.maxNanos / 1000.0);
+        });
+        gauges.forEach((name, g) -> out.put(name, g.getAsDouble()));
+        return out;
+    }
+
+    /** One {@code name value} line per metric. */
+    String text() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Number> e : snapshot().entrySet()) {
+            out.append(e.getKey()).append(' ');
+            Number v = e.getValue();
+            if (v instanceof Double)
+                out.append(String.format(Locale.ROOT, "%.3f", v.doubleValue()));
+            else
+                out.append(v.longValue());
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /** Publishes this registry on the platform MBean server, once; later calls do nothing. */
+    synchronized void registerJmx() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(JMX_NAME);
+        if (!server.isRegistered(name))
+            server.registerMBean(new Jmx(), name);
+    }
+
+    static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        void increment() {
+            if (ENABLED)
+                count.increment();
+        }
+
+        void add(long n) {
+            if (ENABLED)
+                count.add(n);
+        }
+
+        long get() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * Wrap the timed code in {@code long t = timer.start(); try { ... } finally { timer.stop(t); }}.
+     */
+    static final class Timer {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final int sampleEvery;
+        private final int sampleMask;
+
+        private Timer(int sampleEvery) {
+            this.sampleEvery = sampleEvery;
+            this.sampleMask = sampleEvery - 1;
+        }
+
+        /** A start time to hand to {@link #stop}, or 0 if this call is not sampled. */
+        long start() {
+            if (!ENABLED || (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0))
+                return 0;
+            return System.nanoTime();
+        }
+
+        void stop(long start) {
+            if (start != 0)
+                histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    // Attributes are the snapshot's names; the set grows as departures open and their gauges appear
+    private final class Jmx implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Number value = snapshot().get(attribute);
+            if (value == null)
+                throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            SortedMap<String, Number> values = snapshot();
+            AttributeList out = new AttributeList();
+            for (String a : attributes) {
+                Number value = values.get(a);
+                if (value != null)
+                    out.add(new Attribute(a, value));
+            }
+            return out;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Number> e : snapshot().entrySet())
+                attributes.add(new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(),
+                        e.getKey(), true, false, false));
+            return new MBeanInfo(Metrics.class.getName(), "Booking counters, latencies and occupancy",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -1,621 +1,1107 @@
-import javax.swing.*;
-import javax.swing.border.EmptyBorder;
-import java.awt.*;
-import java.awt.event.*;
-import java.text.SimpleDateFormat;
-import java.util.*;
-import java.util.List;
-import java.util.stream.Collectors;
-
-public class RailwaySystem1 {
-
-    // Station list
-    private static final String[] STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
-
-    // Coach configuration
-    private static final String COACH_1 = "1AC";
-    private static final String COACH_2 = "2AC";
-    private static final String COACH_3 = "3AC";
-    private static final String COACH_GEN = "GEN";
-
-    private static RailwaySystem1 instance;
-
-    private static final Map<String, Integer> COACH_SEAT_COUNT = new LinkedHashMap<>();
-    private static final Map<String, Integer> COACH_PRICE = new LinkedHashMap<>();
-
-    static {
-        COACH_SEAT_COUNT.put(COACH_1, 10);
-        COACH_SEAT_COUNT.put(COACH_2, 20);
-        COACH_SEAT_COUNT.put(COACH_3, 30);
-        COACH_SEAT_COUNT.put(COACH_GEN, 40);
-
-        COACH_PRICE.put(COACH_1, 4000);
-        COACH_PRICE.put(COACH_2, 2500);
-        COACH_PRICE.put(COACH_3, 1000);
-        COACH_PRICE.put(COACH_GEN, 500);
-    }
-
-    // Storage
-    private final Map<String, Boolean> seatsAvailable = new HashMap<>();
-    private final Map<String, Ticket> seatToTicket = new HashMap<>();
-    private final List<Ticket> tickets = new ArrayList<>();
-    private int ticketCounter = 1;
-    private final Object bookingLock = new Object();
-
-    // Main frame
-    private JFrame mainFrame;
-
-    public RailwaySystem1() {
-        instance = this;
-        initializeSeats();
-        SwingUtilities.invokeLater(this::createAndShowGUI);
-    }
-
-    private void initializeSeats() {
-        for (Map.Entry<String, Integer> e : COACH_SEAT_COUNT.entrySet()) {
-            String coach = e.getKey();
-            int count = e.getValue();
-            for (int i = 1; i <= count; i++) {
-                String seatId = (coach.equals(COACH_GEN) ? "GEN" : coach) + "-S" + i;
-                seatsAvailable.put(seatId, true);
-            }
-        }
-    }
-
-    private void createAndShowGUI() {
-        mainFrame = new JFrame("Railway Booking - Main Menu");
-        mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        mainFrame.setSize(520, 300);
-        mainFrame.setLocationRelativeTo(null);
-        mainFrame.setLayout(new BorderLayout(10, 10));
-
-        JLabel title = new JLabel("Railway Ticket Booking System", SwingConstants.CENTER);
-        title.setFont(new Font("SansSerif", Font.BOLD, 20));
-        title.setBorder(new EmptyBorder(10, 10, 10, 10));
-        mainFrame.add(title, BorderLayout.NORTH);
-
-        JPanel center = new JPanel();
-        center.setLayout(new GridLayout(2, 2, 12, 12));
-        center.setBorder(new EmptyBorder(10, 10, 10, 10));
-
-        JButton bookBtn = new JButton("Book Tickets");
-        JButton cancelBtn = new JButton("Cancel Ticket");
-        JButton viewBtn = new JButton("View Tickets (Printable)");
-        JButton resetBtn = new JButton("Reset All (DEV)");
-
-        bookBtn.setFont(new Font("SansSerif", Font.PLAIN, 16));
-        cancelBtn.setFont(new Font("SansSerif", Font.PLAIN, 16));
-        viewBtn.setFont(new Font("SansSerif", Font.PLAIN, 16));
-        resetBtn.setFont(new Font("SansSerif", Font.PLAIN, 12));
-
-        center.add(bookBtn);
-        center.add(cancelBtn);
-        center.add(viewBtn);
-        center.add(resetBtn);
-
-        mainFrame.add(center, BorderLayout.CENTER);
-
-        JLabel footer = new JLabel(
-                "Coaches: 1AC(10), 2AC(20), 3AC(30), General(40) | Age<=15 => Half Fare",
-                SwingConstants.CENTER);
-        footer.setBorder(new EmptyBorder(0, 0, 10, 0));
-        mainFrame.add(footer, BorderLayout.SOUTH);
-
-        bookBtn.addActionListener(e -> SwingUtilities.invokeLater(this::openBookingWindow));
-        cancelBtn.addActionListener(e -> SwingUtilities.invokeLater(this::openCancelWindow));
-        viewBtn.addActionListener(e -> SwingUtilities.invokeLater(this::openViewTicketsWindow));
-        resetBtn.addActionListener(e -> {
-            int confirm = JOptionPane.showConfirmDialog(mainFrame,
-                    "Reset clears ALL bookings. Continue?", "Confirm Reset", JOptionPane.YES_NO_OPTION);
-            if (confirm == JOptionPane.YES_OPTION) {
-                synchronized (bookingLock) {
-                    seatsAvailable.keySet().forEach(k -> seatsAvailable.put(k, true));
-                    seatToTicket.clear();
-                    tickets.clear();
-                    ticketCounter = 1;
-                }
-                JOptionPane.showMessageDialog(mainFrame, "All bookings cleared.", "Reset Done",
-                        JOptionPane.INFORMATION_MESSAGE);
-            }
-        });
-
-        mainFrame.setVisible(true);
-    }
-
-    // ---------- Booking Window ----------
-    private void openBookingWindow() {
-        JDialog bookDialog = new JDialog(mainFrame, "Book Tickets", true);
-        bookDialog.setSize(900, 600);
-        bookDialog.setLocationRelativeTo(mainFrame);
-        bookDialog.setLayout(new BorderLayout(10, 10));
-
-        // Top panel
-        JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 12, 12));
-        topPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
-        topPanel.add(new JLabel("Coach:"));
-        JComboBox<String> coachCombo = new JComboBox<>(COACH_SEAT_COUNT.keySet().toArray(new String[0]));
-        topPanel.add(coachCombo);
-
-        topPanel.add(new JLabel("From:"));
-        JComboBox<String> fromCombo = new JComboBox<>(STATIONS);
-        topPanel.add(fromCombo);
-
-        topPanel.add(new JLabel("To:"));
-        JComboBox<String> toCombo = new JComboBox<>(STATIONS);
-        toCombo.setSelectedIndex(1);
-        topPanel.add(toCombo);
-
-        JLabel availLabel = new JLabel("Available seats: 0");
-        topPanel.add(availLabel);
-        bookDialog.add(topPanel, BorderLayout.NORTH);
-
-        // Center panel
-        JPanel centerPanel = new JPanel(new BorderLayout(8, 8));
-        centerPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
-
-        JPanel seatsContainer = new JPanel();
-        seatsContainer.setLayout(new BorderLayout());
-        JScrollPane seatsScroll = new JScrollPane(seatsContainer, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
-                JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
-        centerPanel.add(seatsScroll, BorderLayout.CENTER);
-
-        JPanel rightPanel = new JPanel();
-        rightPanel.setLayout(new BoxLayout(rightPanel, BoxLayout.Y_AXIS));
-        rightPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
-        rightPanel.setPreferredSize(new Dimension(300, 300));
-
-        JLabel instruction = new JLabel(
-                "<html><b>Instructions:</b><br>1) Choose coach.<br>2) Manually select one or more seats.<br>3) Click 'Proceed' to enter passenger details for each seat.<br>4) Each seat becomes a separate ticket.</html>");
-        instruction.setBorder(new EmptyBorder(0, 0, 10, 0));
-        rightPanel.add(instruction);
-
-        JButton proceedBtn = new JButton("Proceed (Enter passenger data & Book)");
-        proceedBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
-        rightPanel.add(Box.createRigidArea(new Dimension(0, 10)));
-        rightPanel.add(proceedBtn);
-        rightPanel.add(Box.createRigidArea(new Dimension(0, 12)));
-
-        JLabel priceNote = new JLabel("Prices: 1AC=4000 | 2AC=2500 | 3AC=1000 | GEN=500");
-        priceNote.setFont(new Font("SansSerif", Font.PLAIN, 12));
-        rightPanel.add(priceNote);
-        centerPanel.add(rightPanel, BorderLayout.EAST);
-        bookDialog.add(centerPanel, BorderLayout.CENTER);
-
-        // Bottom panel
-        JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
-        JButton closeBtn = new JButton("Close");
-        bottom.add(closeBtn);
-        bookDialog.add(bottom, BorderLayout.SOUTH);
-
-        // Build seat checkboxes
-        final Map<String, JCheckBox> currentSeatCheckboxes = new LinkedHashMap<>();
-        Runnable buildSeatsUI = () -> {
-            seatsContainer.removeAll();
-            currentSeatCheckboxes.clear();
-            String coach = (String) coachCombo.getSelectedItem();
-            if (coach == null)
-                return;
-            int seatCount = COACH_SEAT_COUNT.getOrDefault(coach, 0);
-            JPanel grid = new JPanel(new GridLayout(Math.max(3, (seatCount + 4) / 5), 5, 8, 8));
-            grid.setBorder(new EmptyBorder(8, 8, 8, 8));
-            int available = 0;
-            for (int i = 1; i <= seatCount; i++) {
-                String seatId = (coach.equals(COACH_GEN) ? "GEN" : coach) + "-S" + i;
-                JCheckBox cb = new JCheckBox(seatId);
-                boolean avail = seatsAvailable.getOrDefault(seatId, true);
-                cb.setEnabled(avail);
-                if (!avail)
-                    cb.setText(seatId + " (Booked)");
-                if (avail)
-                    available++;
-                currentSeatCheckboxes.put(seatId, cb);
-                grid.add(cb);
-            }
-            seatsContainer.add(grid, BorderLayout.CENTER);
-            seatsContainer.revalidate();
-            seatsContainer.repaint();
-            availLabel.setText("Available seats: " + available);
-        };
-
-        buildSeatsUI.run();
-        coachCombo.addActionListener(e -> buildSeatsUI.run());
-
-        proceedBtn.addActionListener(e -> {
-            String coach = (String) coachCombo.getSelectedItem();
-            String from = (String) fromCombo.getSelectedItem();
-            String to = (String) toCombo.getSelectedItem();
-            if (from == null || to == null || from.equals(to)) {
-                JOptionPane.showMessageDialog(bookDialog, "Please select different 'From' and 'To' stations.",
-                        "Invalid Stations", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-            List<String> selectedSeats = currentSeatCheckboxes.entrySet().stream()
-                    .filter(entry -> entry.getValue().isSelected() && entry.getValue().isEnabled())
-                    .map(Map.Entry::getKey).collect(Collectors.toList());
-            if (selectedSeats.isEmpty()) {
-                JOptionPane.showMessageDialog(bookDialog, "No seats selected. Please select seat(s) to book.",
-                        "No Selection", JOptionPane.WARNING_MESSAGE);
-                return;
-            }
-            double totalCost = 0;
-            int bookedCount = 0;
-            for (String seatId : selectedSeats) {
-                PassengerDialog pd = new PassengerDialog(bookDialog, seatId);
-                pd.setVisible(true);
-                if (!pd.isConfirmed())
-                    continue;
-                String pname = pd.getPassengerName();
-                int age = pd.getPassengerAge();
-                int basePrice = COACH_PRICE.getOrDefault(coach, 500);
-                double price = age <= 15 ? basePrice / 2.0 : basePrice;
-                String ticketId = generateTicketId();
-                Ticket t = new Ticket(ticketId, pname, age, seatId, coach, from, to, price, new Date());
-                synchronized (bookingLock) {
-                    tickets.add(t);
-                    seatToTicket.put(seatId, t);
-                    seatsAvailable.put(seatId, false);
-                }
-
-                JCheckBox cb = currentSeatCheckboxes.get(seatId);
-                if (cb != null) {
-                    cb.setEnabled(false);
-                    cb.setSelected(false);
-                    cb.setText(seatId + " (Booked)");
-                }
-                totalCost += price;
-                bookedCount++;
-            }
-            buildSeatsUI.run();
-            if (bookedCount > 0) {
-                JOptionPane.showMessageDialog(bookDialog, bookedCount + " ticket(s) booked. Total: Rs. "
-                        + String.format("%.2f", totalCost), "Booking Successful", JOptionPane.INFORMATION_MESSAGE);
-            } else {
-                JOptionPane.showMessageDialog(bookDialog,
-                        "No tickets were booked (maybe you cancelled some passenger dialogs).",
-                        "Booking Cancelled", JOptionPane.INFORMATION_MESSAGE);
-            }
-        });
-
-        closeBtn.addActionListener(e -> bookDialog.dispose());
-        bookDialog.setVisible(true);
-    }
-
-    // ---------- Passenger Dialog ----------
-    private static class PassengerDialog extends JDialog {
-        private boolean confirmed = false;
-        private final JTextField nameField;
-        private final JTextField ageField;
-
-        PassengerDialog(Window parent, String seatId) {
-            super(parent, "Passenger for " + seatId, ModalityType.APPLICATION_MODAL);
-            setSize(360, 220);
-            setLocationRelativeTo(parent);
-            setLayout(null);
-
-            JLabel info = new JLabel("Enter passenger details for " + seatId);
-            info.setBounds(16, 10, 320, 24);
-            add(info);
-
-            JLabel nameLbl = new JLabel("Name:");
-            nameLbl.setBounds(16, 48, 80, 24);
-            add(nameLbl);
-            nameField = new JTextField();
-            nameField.setBounds(100, 48, 220, 24);
-            add(nameField);
-
-            JLabel ageLbl = new JLabel("Age:");
-            ageLbl.setBounds(16, 88, 80, 24);
-            add(ageLbl);
-            ageField = new JTextField();
-            ageField.setBounds(100, 88, 80, 24);
-            add(ageField);
-
-            JButton ok = new JButton("OK");
-            ok.setBounds(60, 130, 100, 30);
-            add(ok);
-            JButton cancel = new JButton("Cancel");
-            cancel.setBounds(190, 130, 100, 30);
-            add(cancel);
-
-            ok.addActionListener(e -> {
-                String name = nameField.getText().trim();
-                String ageText = ageField.getText().trim();
-                if (name.isEmpty() || ageText.isEmpty()) {
-                    JOptionPane.showMessageDialog(this, "Please fill both name and age.", "Input Required",
-                            JOptionPane.WARNING_MESSAGE);
-                    return;
-                }
-                int age;
-                try {
-                    age = Integer.parseInt(ageText);
-                    if (age < 0 || age > 120) {
-                        JOptionPane.showMessageDialog(this, "Enter a valid age (0-120).", "Invalid Age",
-                                JOptionPane.WARNING_MESSAGE);
-                        return;
-                    }
-                } catch (NumberFormatException ex) {
-                    JOptionPane.showMessageDialog(this, "Age must be a number.", "Invalid Input",
-                            JOptionPane.WARNING_MESSAGE);
-                    return;
-                }
-                confirmed = true;
-                setVisible(false);
-            });
-
-            cancel.addActionListener(e -> {
-                confirmed = false;
-                setVisible(false);
-            });
-        }
-
-        boolean isConfirmed() {
-            return confirmed;
-        }
-
-        String getPassengerName() {
-            return nameField.getText().trim();
-        }
-
-        int getPassengerAge() {
-            try {
-                return Integer.parseInt(ageField.getText().trim());
-            } catch (Exception e) {
-                return 0;
-            }
-        }
-    }
-
-    // ---------- Cancel Ticket ----------
-    private void openCancelWindow() {
-        JDialog cancelDialog = new JDialog(mainFrame, "Cancel Ticket", true);
-        cancelDialog.setSize(420, 220);
-        cancelDialog.setLocationRelativeTo(mainFrame);
-        cancelDialog.setLayout(new BorderLayout(8, 8));
-        cancelDialog.setResizable(false);
-
-        JPanel main = new JPanel();
-        main.setLayout(new BoxLayout(main, BoxLayout.Y_AXIS));
-        main.setBorder(new EmptyBorder(12, 12, 12, 12));
-
-        JLabel lbl = new JLabel("Enter seat ID to cancel (e.g., 1AC-S3 or GEN-S12):");
-        lbl.setAlignmentX(Component.LEFT_ALIGNMENT);
-        main.add(lbl);
-
-        JTextField seatField = new JTextField();
-        seatField.setMaximumSize(new Dimension(Integer.MAX_VALUE, 28));
-        seatField.setAlignmentX(Component.LEFT_ALIGNMENT);
-        main.add(Box.createRigidArea(new Dimension(0, 8)));
-        main.add(seatField);
-        main.add(Box.createRigidArea(new Dimension(0, 12)));
-
-        JButton cancelBtn = new JButton("Cancel Ticket");
-        cancelBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
-        main.add(cancelBtn);
-        main.add(Box.createRigidArea(new Dimension(0, 8)));
-
-        JLabel note = new JLabel("<html><i>Note:</i> Seat IDs are coach-prefixed. Example: 2AC-S5, GEN-S12. Use exact ID.</html>");
-        note.setAlignmentX(Component.LEFT_ALIGNMENT);
-        main.add(note);
-
-        cancelDialog.add(main, BorderLayout.CENTER);
-
-        cancelBtn.addActionListener(e -> {
-            String seatInput = seatField.getText().trim().toUpperCase();
-            if (seatInput.isEmpty()) {
-                JOptionPane.showMessageDialog(cancelDialog, "Please enter a seat ID.", "Input Required",
-                        JOptionPane.WARNING_MESSAGE);
-                return;
-            }
-            if (!seatsAvailable.containsKey(seatInput)) {
-                JOptionPane.showMessageDialog(cancelDialog, "Seat ID not recognized: " + seatInput, "Invalid Seat",
-                        JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-            Ticket t = seatToTicket.get(seatInput);
-            if (t == null) {
-                JOptionPane.showMessageDialog(cancelDialog, "No booking found for " + seatInput, "Not Found",
-                        JOptionPane.ERROR_MESSAGE);
-                return;
-            }
-            int conf = JOptionPane.showConfirmDialog(cancelDialog,
-                    "Cancel ticket " + t.ticketId + " for " + t.name + " (Seat " + seatInput + ")?", "Confirm Cancel",
-                    JOptionPane.YES_NO_OPTION);
-            if (conf != JOptionPane.YES_OPTION)
-                return;
-
-            synchronized (bookingLock) {
-                tickets.remove(t);
-                seatToTicket.remove(seatInput);
-                seatsAvailable.put(seatInput, true);
-            }
-
-            JOptionPane.showMessageDialog(cancelDialog, "Ticket cancelled. Seat " + seatInput + " is now available.",
-                    "Cancelled", JOptionPane.INFORMATION_MESSAGE);
-            seatField.setText("");
-        });
-
-        cancelDialog.setVisible(true);
-    }
-
-    private static abstract class BaseTicket {
-        String ticketId;
-        String name;
-        int age;
-        String seat;
-        String coach;
-        String from;
-        String to;
-        double price;
-        Date bookedOn;
-
-        BaseTicket(String ticketId, String name, int age, String seat, String coach,String from, String to, double price, Date bookedOn) {
-            this.ticketId = ticketId;
-            this.name = name;
-            this.age = age;
-            this.seat = seat;
-            this.coach = coach;
-            this.from = from;
-            this.to = to;
-            this.price = price;
-            this.bookedOn = bookedOn;
-        }
-
-        // Polymorphic method
-        abstract String getTicketType();
-    }
-
-    // ---------- Ticket class ----------
-    private static class Ticket extends BaseTicket {
-
-        Ticket(String ticketId, String name, int age,
-            String seat, String coach,
-            String from, String to,
-            double price, Date bookedOn) {
-
-            super(ticketId, name, age, seat, coach, from, to, price, bookedOn);
-        }
-
-        @Override
-        String getTicketType() {
-            return "Regular Ticket";
-        }
-    }
-
-    // ---------- TicketPanel (with Ticket) ----------
-    private class TicketPanel extends JPanel {
-        private Image bgImg;
-        private final SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
-        private Ticket ticket;
-
-        TicketPanel(Ticket t) {
-            this.ticket = t;
-            try {
-                bgImg = Toolkit.getDefaultToolkit().getImage("train_bg.png"); // optional background image
-            } catch (Exception ignored) {}
-            setPreferredSize(new Dimension(2000, 180)); // broader width
-            setMaximumSize(new Dimension(2000, 180));  // keep consistent width in BoxLayout
-        }
-
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            if (ticket == null) return;
-
-            Graphics2D g2 = (Graphics2D) g;
-
-            // Yellow gradient block
-            Color topColor = new Color(255, 245, 180);
-            Color bottomColor = new Color(255, 255, 210);
-            GradientPaint gp = new GradientPaint(0, 0, topColor, 0, getHeight(), bottomColor);
-            g2.setPaint(gp);
-            g2.fillRoundRect(5, 5, getWidth() - 10, getHeight() - 10, 20, 20);
-
-            // Optional train image
-            if (bgImg != null) {
-                g2.setClip(new Rectangle(5, 5, getWidth() - 10, getHeight() - 10));
-                g2.drawImage(bgImg, 5, 5, getWidth() - 10, getHeight() - 10, this);
-                g2.setClip(null);
-            }
-
-            // Draw ticket details - left aligned with padding
-            g2.setColor(Color.BLACK);
-            g2.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
-            int paddingX = 20; // horizontal padding from left
-            int paddingY = 15; // vertical padding from top
-            int lineSpacing = 12; // spacing between lines
-
-            int y = paddingY;
-            g2.drawString("Ticket ID : " + ticket.ticketId, paddingX, y);
-            y += lineSpacing;
-            g2.drawString("Type      : " + ticket.getTicketType(), paddingX, y);
-            y += lineSpacing;
-            g2.drawString("Name      : " + ticket.name, paddingX, y);
-            y += lineSpacing;
-            g2.drawString("Age       : " + ticket.age, paddingX, y);
-            y += lineSpacing;
-            g2.drawString("Coach     : " + ticket.coach, paddingX, y);
-            y += lineSpacing;
-            g2.drawString("Seat      : " + ticket.seat, paddingX, y);
-            y += lineSpacing;
-            g2.drawString("From      : " + ticket.from, paddingX, y);
-            y += lineSpacing;
-            g2.drawString("To        : " + ticket.to, paddingX, y);
-            y += lineSpacing;
-            g2.drawString("Price     : Rs. " + ticket.price, paddingX, y);
-            y += lineSpacing;
-            g2.drawString("Booked On : " + sdf.format(ticket.bookedOn), paddingX, y);
-        }
-    }
-
-    // ---------- View Tickets ----------
-    private void openViewTicketsWindow() {
-        JDialog viewDialog = new JDialog(mainFrame, "View Tickets (Printable)", true);
-        viewDialog.setSize(700, 600);
-        viewDialog.setLocationRelativeTo(mainFrame);
-        viewDialog.setLayout(new BorderLayout(8, 8));
-
-        JPanel ticketsPanel = new JPanel();
-        ticketsPanel.setLayout(new BoxLayout(ticketsPanel, BoxLayout.Y_AXIS));
-        ticketsPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-
-        loadTicketPanels(ticketsPanel);
-
-        JScrollPane scroll = new JScrollPane(ticketsPanel);
-        viewDialog.add(scroll, BorderLayout.CENTER);
-
-        JButton refreshBtn = new JButton("Refresh");
-        refreshBtn.addActionListener(e -> {
-            ticketsPanel.removeAll();
-            loadTicketPanels(ticketsPanel);
-            ticketsPanel.revalidate();
-            ticketsPanel.repaint();
-        });
-
-        JPanel top = new JPanel(new FlowLayout(FlowLayout.RIGHT));
-        top.add(refreshBtn);
-        viewDialog.add(top, BorderLayout.NORTH);
-
-        viewDialog.setVisible(true);
-    }
-
-    private void loadTicketPanels(JPanel ticketsPanel) {
-        synchronized (bookingLock) {
-            for (Ticket t : tickets) {
-                ticketsPanel.add(Box.createVerticalStrut(10));
-                JLabel top = new JLabel("------------------------------------------------------------");
-                top.setAlignmentX(Component.CENTER_ALIGNMENT);
-                ticketsPanel.add(top);
-                ticketsPanel.add(Box.createVerticalStrut(5));
-                TicketPanel tp = new TicketPanel(t);
-                tp.setPreferredSize(new Dimension(350, 130));
-                tp.setMaximumSize(new Dimension(350, 130));
-                tp.setAlignmentX(Component.CENTER_ALIGNMENT);
-                ticketsPanel.add(tp);
-                ticketsPanel.add(Box.createVerticalStrut(5));
-                JLabel bottom = new JLabel("------------------------------------------------------------");
-                bottom.setAlignmentX(Component.CENTER_ALIGNMENT);
-                ticketsPanel.add(bottom);
-                ticketsPanel.add(Box.createVerticalStrut(15));
-            }
-        }
-    }
-
-    // ---------- Helpers ----------
-    private String generateTicketId() {
-        synchronized (bookingLock) {
-            return String.format("T%03d", ticketCounter++);
-        }
-    }
-
-    public static List<Ticket> ticketsStatic() {
-        return instance.tickets;
-    }
-
-    public static void main(String[] args) {
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception ignored) {
-        }
-        new RailwaySystem1();
-    }
+import javax.management.JMException;
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+public class RailwaySystem1 {
+
+    // Station list
+    private static final String[] STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
+    // Route kilometres of each station from Bangalore, for distance-based fares
+    private static final int[] STATION_KM = {0, 350, 1630, 2340, 3840, 5290};
+
+    // Coach configuration
+    private static final String COACH_1 = "1AC";
+    private static final String COACH_2 = "2AC";
+    private static final String COACH_3 = "3AC";
+    private static final String COACH_GEN = "GEN";
+
+    private static RailwaySystem1 instance;
+
+    private static final Map<String, Integer> COACH_SEAT_COUNT = new LinkedHashMap<>();
+    // Fare for the whole route; FareTable scales it by distance and occupancy
+    private static final Map<String, Integer> COACH_PRICE = new LinkedHashMap<>();
+
+    static {
+        COACH_SEAT_COUNT.put(COACH_1, 10);
+        COACH_SEAT_COUNT.put(COACH_2, 20);
+        COACH_SEAT_COUNT.put(COACH_3, 30);
+        COACH_SEAT_COUNT.put(COACH_GEN, 40);
+
+        COACH_PRICE.put(COACH_1, 4000);
+        COACH_PRICE.put(COACH_2, 2500);
+        COACH_PRICE.put(COACH_3, 1000);
+        COACH_PRICE.put(COACH_GEN, 500);
+    }
+
+    // Trains on sale (all share the coach layout above)
+    private static final List<Train> TRAINS = List.of(
+            new Train("12601", "Coast Express", STATIONS, STATION_KM, COACH_SEAT_COUNT, COACH_PRICE),
+            new Train("12602", "Coast Express (Return)", reversed(STATIONS), reversed(STATION_KM), COACH_SEAT_COUNT,
+                    COACH_PRICE, EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY, DayOfWeek.FRIDAY)));
+
+    /** The trains on sale, for headless tools such as {@link TatkalSimulator}. */
+    static List<Train> trains() {
+        return TRAINS;
+    }
+
+    // Booking core: one engine per train and travel date, each journaled under railway.dataDir
+    private static final int SNAPSHOT_EVERY = 100_000;
+    private final Departures departures;
+
+    // Departure picked on the main menu; every window works on it
+    private volatile Train selectedTrain = TRAINS.get(0);
+    private volatile LocalDate selectedDate = LocalDate.now();
+
+    // Main frame
+    private JFrame mainFrame;
+    // Engine of the selected departure while the main menu footer shows its free seats (EDT only)
+    private BookingEngine footerEngine;
+    private SeatEventBus.Subscription footerSubscription;
+
+    public RailwaySystem1() {
+        instance = this;
+        Path dir = Paths.get(System.getProperty("railway.dataDir", "railway-data"));
+        departures = new Departures(TRAINS, dir, SNAPSHOT_EVERY, e -> SwingUtilities.invokeLater(() ->
+                JOptionPane.showMessageDialog(mainFrame, e.getMessage() + "\nBookings made now will NOT be saved.",
+                        "Storage Error", JOptionPane.ERROR_MESSAGE)));
+        registerMetrics();
+        BookingServer server = startHttpServer();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (server != null)
+                server.stop();
+            departures.close();
+        }));
+        SwingUtilities.invokeLater(this::createAndShowGUI);
+    }
+
+    // Booking metrics for JConsole/VisualVM, as railway:type=Metrics; the app runs fine without them
+    private static void registerMetrics() {
+        try {
+            Metrics.process().registerJmx();
+        } catch (JMException e) {
+            System.err.println("Booking metrics not published over JMX: " + e.getMessage());
+        }
+    }
+
+    // Optional JSON front-end on localhost (-Drailway.httpPort=8080), booking the same departures
+    private BookingServer startHttpServer() {
+        String port = System.getProperty("railway.httpPort");
+        if (port == null)
+            return null;
+        try {
+            BookingServer server = new BookingServer(departures, "127.0.0.1", Integer.parseInt(port));
+            server.start();
+            return server;
+        } catch (IOException | IllegalArgumentException e) {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mainFrame,
+                    "Could not start the booking service on port " + port + ": " + e.getMessage(),
+                    "Booking Service", JOptionPane.ERROR_MESSAGE));
+            return null;
+        }
+    }
+
+    // Engine of the selected departure, or null (after telling the user) if it is no longer on sale
+    private BookingEngine engine() {
+        try {
+            return departures.engine(selectedTrain.number, selectedDate);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(mainFrame, e.getMessage(), "Departure Not Available",
+                    JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    private void createAndShowGUI() {
+        mainFrame = new JFrame("Railway Booking - Main Menu");
+        mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        mainFrame.setSize(560, 340);
+        mainFrame.setLocationRelativeTo(null);
+        mainFrame.setLayout(new BorderLayout(10, 10));
+
+        JLabel title = new JLabel("Railway Ticket Booking System", SwingConstants.CENTER);
+        title.setFont(new Font("SansSerif", Font.BOLD, 20));
+        title.setBorder(new EmptyBorder(10, 10, 0, 10));
+
+        JPanel departurePanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 8, 4));
+        departurePanel.add(new JLabel("Train:"));
+        JComboBox<Train> trainCombo = new JComboBox<>(TRAINS.toArray(new Train[0]));
+        departurePanel.add(trainCombo);
+        departurePanel.add(new JLabel("Date:"));
+        JComboBox<LocalDate> dateCombo = new JComboBox<>();
+        departurePanel.add(dateCombo);
+        Runnable fillDates = () -> {
+            dateCombo.removeAllItems();
+            for (LocalDate d : departures.travelDates(selectedTrain.number))
+                dateCombo.addItem(d);
+        };
+        trainCombo.addActionListener(e -> {
+            selectedTrain = (Train) trainCombo.getSelectedItem();
+            fillDates.run();
+        });
+        JLabel footer = new JLabel(" ", SwingConstants.CENTER);
+        dateCombo.addActionListener(e -> {
+            if (dateCombo.getSelectedItem() != null) {
+                selectedDate = (LocalDate) dateCombo.getSelectedItem();
+                watchSelectedDeparture(footer);
+            }
+        });
+        fillDates.run();
+
+        JPanel north = new JPanel(new BorderLayout());
+        north.add(title, BorderLayout.NORTH);
+        north.add(departurePanel, BorderLayout.SOUTH);
+        mainFrame.add(north, BorderLayout.NORTH);
+
+        JPanel center = new JPanel();
+        center.setLayout(new GridLayout(2, 2, 12, 12));
+        center.setBorder(new EmptyBorder(10, 10, 10, 10));
+
+        JButton bookBtn = new JButton("Book Tickets");
+        JButton cancelBtn = new JButton("Cancel Ticket");
+        JButton viewBtn = new JButton("View Tickets (Printable)");
+        JButton resetBtn = new JButton("Reset All (DEV)");
+
+        bookBtn.setFont(new Font("SansSerif", Font.PLAIN, 16));
+        cancelBtn.setFont(new Font("SansSerif", Font.PLAIN, 16));
+        viewBtn.setFont(new Font("SansSerif", Font.PLAIN, 16));
+        resetBtn.setFont(new Font("SansSerif", Font.PLAIN, 12));
+
+        center.add(bookBtn);
+        center.add(cancelBtn);
+        center.add(viewBtn);
+        center.add(resetBtn);
+
+        mainFrame.add(center, BorderLayout.CENTER);
+
+        footer.setBorder(new EmptyBorder(0, 0, 10, 0));
+        mainFrame.add(footer, BorderLayout.SOUTH);
+
+        bookBtn.addActionListener(e -> SwingUtilities.invokeLater(this::openBookingWindow));
+        cancelBtn.addActionListener(e -> SwingUtilities.invokeLater(this::openCancelWindow));
+        viewBtn.addActionListener(e -> SwingUtilities.invokeLater(this::openViewTicketsWindow));
+        resetBtn.addActionListener(e -> {
+            BookingEngine engine = engine();
+            if (engine == null)
+                return;
+            int confirm = JOptionPane.showConfirmDialog(mainFrame, "Reset clears ALL bookings on " + selectedTrain
+                    + " for " + selectedDate + ". Continue?", "Confirm Reset", JOptionPane.YES_NO_OPTION);
+            if (confirm == JOptionPane.YES_OPTION) {
+                engine.reset();
+                JOptionPane.showMessageDialog(mainFrame, "All bookings cleared.", "Reset Done",
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
+
+        mainFrame.setVisible(true);
+    }
+
+    // Points the footer at the selected departure and keeps it current as its seats change
+    private void watchSelectedDeparture(JLabel footer) {
+        if (footerSubscription != null)
+            footerSubscription.close();
+        try {
+            footerEngine = departures.engine(selectedTrain.number, selectedDate);
+            footerSubscription = footerEngine.seatEvents().subscribe(SwingUtilities::invokeLater,
+                    changes -> footer.setText(footerText()));
+        } catch (IllegalArgumentException e) {
+            footerEngine = null;
+            footerSubscription = null;
+        }
+        footer.setText(footerText());
+    }
+
+    // Free seats over the whole route per coach, e.g. "1AC 7/10", read from the engine's counters
+    private String footerText() {
+        if (footerEngine == null)
+            return "Departure not on sale | Age<=15 half fare, 60+ 40% off";
+        String[] route = footerEngine.stations();
+        BookingEngine.Availability a = footerEngine.availability(route[0], route[route.length - 1]);
+        StringJoiner coaches = new StringJoiner(", ", "Free seats: ", " | Age<=15 half fare, 60+ 40% off");
+        for (String coach : a.coaches())
+            coaches.add(coach + " " + a.free(coach) + "/" + a.seats(coach));
+        return coaches.toString();
+    }
+
+    // ---------- Booking Window ----------
+    private void openBookingWindow() {
+        BookingEngine engine = engine();
+        if (engine == null)
+            return;
+        Train train = selectedTrain;
+        JDialog bookDialog = new JDialog(mainFrame, "Book Tickets - " + train + ", " + selectedDate, true);
+        bookDialog.setSize(900, 600);
+        bookDialog.setLocationRelativeTo(mainFrame);
+        bookDialog.setLayout(new BorderLayout(10, 10));
+
+        // Top panel
+        JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 12, 12));
+        topPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
+        topPanel.add(new JLabel("Coach:"));
+        JComboBox<String> coachCombo = new JComboBox<>(engine.coaches().toArray(new String[0]));
+        topPanel.add(coachCombo);
+
+        topPanel.add(new JLabel("From:"));
+        JComboBox<String> fromCombo = new JComboBox<>(train.stations);
+        topPanel.add(fromCombo);
+
+        topPanel.add(new JLabel("To:"));
+        JComboBox<String> toCombo = new JComboBox<>(train.stations);
+        toCombo.setSelectedIndex(1);
+        topPanel.add(toCombo);
+
+        JLabel availLabel = new JLabel("Available seats: 0");
+        topPanel.add(availLabel);
+        bookDialog.add(topPanel, BorderLayout.NORTH);
+
+        // Center panel
+        JPanel centerPanel = new JPanel(new BorderLayout(8, 8));
+        centerPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+
+        JPanel seatsContainer = new JPanel();
+        seatsContainer.setLayout(new BorderLayout());
+        JScrollPane seatsScroll = new JScrollPane(seatsContainer, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
+                JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        centerPanel.add(seatsScroll, BorderLayout.CENTER);
+
+        JPanel rightPanel = new JPanel();
+        rightPanel.setLayout(new BoxLayout(rightPanel, BoxLayout.Y_AXIS));
+        rightPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+        rightPanel.setPreferredSize(new Dimension(300, 300));
+
+        JLabel instruction = new JLabel(
+                "<html><b>Instructions:</b><br>1) Choose coach.<br>2) Select one or more seats, or let 'Auto-pick' choose seats side by side.<br>3) Click 'Proceed' to enter passenger details for each seat.<br>4) Each seat becomes a separate ticket.</html>");
+        instruction.setBorder(new EmptyBorder(0, 0, 10, 0));
+        rightPanel.add(instruction);
+
+        JButton proceedBtn = new JButton("Proceed (Enter passenger data & Book)");
+        proceedBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
+        rightPanel.add(Box.createRigidArea(new Dimension(0, 10)));
+        JButton autoPickBtn = new JButton("Auto-pick Seats Together");
+        autoPickBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
+        rightPanel.add(autoPickBtn);
+        rightPanel.add(Box.createRigidArea(new Dimension(0, 8)));
+        rightPanel.add(proceedBtn);
+        rightPanel.add(Box.createRigidArea(new Dimension(0, 8)));
+
+        JButton groupBtn = new JButton("Import Group (CSV: name,age)");
+        groupBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
+        rightPanel.add(groupBtn);
+        rightPanel.add(Box.createRigidArea(new Dimension(0, 8)));
+
+        JButton waitlistBtn = new JButton("Coach Full? Join Waitlist");
+        waitlistBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
+        rightPanel.add(waitlistBtn);
+        rightPanel.add(Box.createRigidArea(new Dimension(0, 12)));
+
+        JLabel priceNote = new JLabel(" ");
+        priceNote.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        rightPanel.add(priceNote);
+        centerPanel.add(rightPanel, BorderLayout.EAST);
+        bookDialog.add(centerPanel, BorderLayout.CENTER);
+
+        // Bottom panel
+        JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton closeBtn = new JButton("Close");
+        bottom.add(closeBtn);
+        bookDialog.add(bottom, BorderLayout.SOUTH);
+
+        // Labels only; the seat grid is rebuilt when the coach or journey changes
+        Runnable refreshAvailLabel = () -> {
+            String coach = (String) coachCombo.getSelectedItem();
+            String from = (String) fromCombo.getSelectedItem();
+            String to = (String) toCombo.getSelectedItem();
+            boolean validJourney = coach != null && from != null && !from.equals(to);
+            availLabel.setText("Available seats: " + (validJourney ? engine.availableSeats(coach, from, to) : "-"));
+            if (!validJourney) {
+                priceNote.setText(" ");
+                return;
+            }
+            // Every coach's adult fare for this journey; surge moves them as coaches fill up
+            BookingEngine.Availability a = engine.availability(from, to);
+            StringJoiner fares = new StringJoiner(" | ", "<html>Fares " + from + " - " + to + ":<br>", "</html>");
+            for (String c : a.coaches())
+                fares.add(c + "=" + FareEngine.rupees(a.farePaise(c)));
+            priceNote.setText(fares.toString());
+        };
+        // Build seat checkboxes
+        final Map<String, JCheckBox> currentSeatCheckboxes = new LinkedHashMap<>();
+        Runnable buildSeatsUI = () -> {
+            seatsContainer.removeAll();
+            currentSeatCheckboxes.clear();
+            String coach = (String) coachCombo.getSelectedItem();
+            String from = (String) fromCombo.getSelectedItem();
+            String to = (String) toCombo.getSelectedItem();
+            if (coach == null)
+                return;
+            boolean validJourney = from != null && !from.equals(to);
+            int seatCount = engine.seatCount(coach);
+            JPanel grid = new JPanel(new GridLayout(Math.max(3, (seatCount + 4) / 5), 5, 8, 8));
+            grid.setBorder(new EmptyBorder(8, 8, 8, 8));
+            for (int i = 1; i <= seatCount; i++) {
+                String seatId = BookingEngine.seatId(coach, i);
+                JCheckBox cb = new JCheckBox(seatId);
+                showSeatState(cb, seatId, validJourney, validJourney && engine.isAvailable(seatId, from, to));
+                currentSeatCheckboxes.put(seatId, cb);
+                grid.add(cb);
+            }
+            seatsContainer.add(grid, BorderLayout.CENTER);
+            seatsContainer.revalidate();
+            seatsContainer.repaint();
+            refreshAvailLabel.run();
+        };
+
+        // Seats booked or freed elsewhere (other windows, the HTTP service, waitlist promotions)
+        // arrive in batches; only the checkboxes of changed seats are touched
+        SeatEventBus.Subscription seatUpdates = engine.seatEvents().subscribe(SwingUtilities::invokeLater, changes -> {
+            String coach = (String) coachCombo.getSelectedItem();
+            if (coach == null || !changes.touches(coach))
+                return;
+            String from = (String) fromCombo.getSelectedItem();
+            String to = (String) toCombo.getSelectedItem();
+            boolean validJourney = from != null && !from.equals(to);
+            for (String seatId : changes.seatIds(coach)) {
+                JCheckBox cb = currentSeatCheckboxes.get(seatId);
+                if (cb != null)
+                    showSeatState(cb, seatId, validJourney, validJourney && engine.isAvailable(seatId, from, to));
+            }
+            refreshAvailLabel.run();
+        });
+
+        buildSeatsUI.run();
+        coachCombo.addActionListener(e -> buildSeatsUI.run());
+        fromCombo.addActionListener(e -> buildSeatsUI.run());
+        toCombo.addActionListener(e -> buildSeatsUI.run());
+
+        autoPickBtn.addActionListener(e -> {
+            String coach = (String) coachCombo.getSelectedItem();
+            String from = (String) fromCombo.getSelectedItem();
+            String to = (String) toCombo.getSelectedItem();
+            if (from == null || to == null || from.equals(to)) {
+                JOptionPane.showMessageDialog(bookDialog, "Please select different 'From' and 'To' stations.",
+                        "Invalid Stations", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            String countText = JOptionPane.showInputDialog(bookDialog, "How many seats?", "2");
+            if (countText == null)
+                return;
+            int count;
+            try {
+                count = Integer.parseInt(countText.trim());
+            } catch (NumberFormatException ex) {
+                count = 0;
+            }
+            if (count < 1) {
+                JOptionPane.showMessageDialog(bookDialog, "Enter a number of seats (1 or more).",
+                        "Invalid Count", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            List<String> picked = engine.suggestSeats(coach, from, to, count);
+            if (picked.isEmpty()) {
+                JOptionPane.showMessageDialog(bookDialog, "Not enough free seats in " + coach + " for " + count
+                        + " passenger(s).", "Not Enough Seats", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            for (JCheckBox cb : currentSeatCheckboxes.values())
+                cb.setSelected(false);
+            for (String seatId : picked) {
+                JCheckBox cb = currentSeatCheckboxes.get(seatId);
+                if (cb != null)
+                    cb.setSelected(true);
+            }
+        });
+
+        proceedBtn.addActionListener(e -> {
+            String coach = (String) coachCombo.getSelectedItem();
+            String from = (String) fromCombo.getSelectedItem();
+            String to = (String) toCombo.getSelectedItem();
+            if (from == null || to == null || from.equals(to)) {
+                JOptionPane.showMessageDialog(bookDialog, "Please select different 'From' and 'To' stations.",
+                        "Invalid Stations", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            List<String> selectedSeats = currentSeatCheckboxes.entrySet().stream()
+                    .filter(entry -> entry.getValue().isSelected() && entry.getValue().isEnabled())
+                    .map(Map.Entry::getKey).collect(Collectors.toList());
+            if (selectedSeats.isEmpty()) {
+                JOptionPane.showMessageDialog(bookDialog, "No seats selected. Please select seat(s) to book.",
+                        "No Selection", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            long totalPaise = 0;
+            int bookedCount = 0;
+            List<String> lostSeats = new ArrayList<>();
+            for (String seatId : selectedSeats) {
+                BookingEngine.SeatHold hold = engine.hold(seatId, from, to);
+                if (hold == null) {
+                    lostSeats.add(seatId);
+                    continue;
+                }
+                PassengerDialog pd = new PassengerDialog(bookDialog, seatId);
+                pd.setVisible(true);
+                if (!pd.isConfirmed()) {
+                    engine.release(hold);
+                    continue;
+                }
+                String pname = pd.getPassengerName();
+                int age = pd.getPassengerAge();
+                Ticket t;
+                try {
+                    t = engine.tryClaim(hold, pname, age).orElse(null);
+                } catch (UncheckedIOException ex) {
+                    JOptionPane.showMessageDialog(bookDialog, "Could not save booking for " + seatId + ": "
+                            + ex.getMessage(), "Storage Error", JOptionPane.ERROR_MESSAGE);
+                    break;
+                }
+                if (t == null) {
+                    lostSeats.add(seatId);
+                    continue;
+                }
+                JCheckBox cb = currentSeatCheckboxes.get(seatId);
+                if (cb != null) {
+                    cb.setEnabled(false);
+                    cb.setSelected(false);
+                    cb.setText(seatId + " (Booked)");
+                }
+                totalPaise += t.pricePaise();
+                bookedCount++;
+            }
+            buildSeatsUI.run();
+            if (!lostSeats.isEmpty()) {
+                JOptionPane.showMessageDialog(bookDialog, "Already booked by someone else: " + lostSeats,
+                        "Seats Taken", JOptionPane.WARNING_MESSAGE);
+            }
+            if (bookedCount > 0) {
+                JOptionPane.showMessageDialog(bookDialog, bookedCount + " ticket(s) booked. Total: Rs. "
+                        + FareEngine.rupees(totalPaise), "Booking Successful", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(bookDialog,
+                        "No tickets were booked (maybe you cancelled some passenger dialogs).",
+                        "Booking Cancelled", JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
+
+        groupBtn.addActionListener(e -> {
+            String coach = (String) coachCombo.getSelectedItem();
+            String from = (String) fromCombo.getSelectedItem();
+            String to = (String) toCombo.getSelectedItem();
+            if (from == null || to == null || from.equals(to)) {
+                JOptionPane.showMessageDialog(bookDialog, "Please select different 'From' and 'To' stations.",
+                        "Invalid Stations", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            JFileChooser chooser = new JFileChooser();
+            chooser.setFileFilter(new FileNameExtensionFilter("Passenger manifest (*.csv)", "csv"));
+            if (chooser.showOpenDialog(bookDialog) != JFileChooser.APPROVE_OPTION)
+                return;
+            List<BookingEngine.Passenger> manifest;
+            try (Reader in = Files.newBufferedReader(chooser.getSelectedFile().toPath())) {
+                manifest = BookingEngine.parseManifest(in);
+            } catch (IOException | IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(bookDialog, "Could not read manifest: " + ex.getMessage(),
+                        "Invalid Manifest", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (manifest.isEmpty()) {
+                JOptionPane.showMessageDialog(bookDialog, "The manifest has no passengers.", "Empty Manifest",
+                        JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            List<Ticket> booked;
+            try {
+                booked = engine.bookGroup(coach, from, to, manifest, BookingEngine.SeatPreference.TOGETHER);
+            } catch (UncheckedIOException ex) {
+                JOptionPane.showMessageDialog(bookDialog, "Could not save group booking: " + ex.getMessage(),
+                        "Storage Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            buildSeatsUI.run();
+            if (booked.isEmpty()) {
+                JOptionPane.showMessageDialog(bookDialog, "Not enough free seats in " + coach + " for "
+                        + manifest.size() + " passenger(s). Nothing was booked.", "Group Not Booked",
+                        JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            long totalPaise = booked.stream().mapToLong(Ticket::pricePaise).sum();
+            JOptionPane.showMessageDialog(bookDialog, booked.size() + " ticket(s) booked, seats "
+                    + booked.get(0).seat + " .. " + booked.get(booked.size() - 1).seat + ". Total: Rs. "
+                    + FareEngine.rupees(totalPaise), "Group Booked", JOptionPane.INFORMATION_MESSAGE);
+        });
+
+        waitlistBtn.addActionListener(e -> {
+            String coach = (String) coachCombo.getSelectedItem();
+            String from = (String) fromCombo.getSelectedItem();
+            String to = (String) toCombo.getSelectedItem();
+            if (from == null || to == null || from.equals(to)) {
+                JOptionPane.showMessageDialog(bookDialog, "Please select different 'From' and 'To' stations.",
+                        "Invalid Stations", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            PassengerDialog pd = new PassengerDialog(bookDialog, coach + " waitlist");
+            pd.setVisible(true);
+            if (!pd.isConfirmed())
+                return;
+            Ticket t;
+            try {
+                t = engine.joinWaitlist(coach, pd.getPassengerName(), pd.getPassengerAge(), from, to);
+            } catch (UncheckedIOException ex) {
+                JOptionPane.showMessageDialog(bookDialog, "Could not save waitlist entry: " + ex.getMessage(),
+                        "Storage Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            buildSeatsUI.run();
+            String status = engine.waitlistStatus(t.ticketId);
+            if (status == null) {
+                JOptionPane.showMessageDialog(bookDialog, "A seat was free after all: ticket " + t.ticketId
+                        + " booked on " + t.seat + ".", "Booking Successful", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(bookDialog, "Ticket " + t.ticketId + " is " + status + " in " + coach
+                        + ". It is booked automatically when a seat comes free.", "Waitlisted",
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
+
+        closeBtn.addActionListener(e -> bookDialog.dispose());
+        bookDialog.setVisible(true);
+        seatUpdates.close();
+    }
+
+    // A seat checkbox shows "(Booked)" and cannot be picked while taken for the chosen journey
+    private static void showSeatState(JCheckBox cb, String seatId, boolean validJourney, boolean available) {
+        cb.setEnabled(available);
+        if (!available)
+            cb.setSelected(false);
+        cb.setText(validJourney && !available ? seatId + " (Booked)" : seatId);
+    }
+
+    // ---------- Passenger Dialog ----------
+    private static class PassengerDialog extends JDialog {
+        private boolean confirmed = false;
+        private final JTextField nameField;
+        private final JTextField ageField;
+
+        PassengerDialog(Window parent, String seatId) {
+            super(parent, "Passenger for " + seatId, ModalityType.APPLICATION_MODAL);
+            setSize(360, 220);
+            setLocationRelativeTo(parent);
+            setLayout(null);
+
+            JLabel info = new JLabel("Enter passenger details for " + seatId);
+            info.setBounds(16, 10, 320, 24);
+            add(info);
+
+            JLabel nameLbl = new JLabel("Name:");
+            nameLbl.setBounds(16, 48, 80, 24);
+            add(nameLbl);
+            nameField = new JTextField();
+            nameField.setBounds(100, 48, 220, 24);
+            add(nameField);
+
+            JLabel ageLbl = new JLabel("Age:");
+            ageLbl.setBounds(16, 88, 80, 24);
+            add(ageLbl);
+            ageField = new JTextField();
+            ageField.setBounds(100, 88, 80, 24);
+            add(ageField);
+
+            JButton ok = new JButton("OK");
+            ok.setBounds(60, 130, 100, 30);
+            add(ok);
+            JButton cancel = new JButton("Cancel");
+            cancel.setBounds(190, 130, 100, 30);
+            add(cancel);
+
+            ok.addActionListener(e -> {
+                String name = nameField.getText().trim();
+                String ageText = ageField.getText().trim();
+                if (name.isEmpty() || ageText.isEmpty()) {
+                    JOptionPane.showMessageDialog(this, "Please fill both name and age.", "Input Required",
+                            JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
+                int age;
+                try {
+                    age = Integer.parseInt(ageText);
+                    if (age < 0 || age > 120) {
+                        JOptionPane.showMessageDialog(this, "Enter a valid age (0-120).", "Invalid Age",
+                                JOptionPane.WARNING_MESSAGE);
+                        return;
+                    }
+                } catch (NumberFormatException ex) {
+                    JOptionPane.showMessageDialog(this, "Age must be a number.", "Invalid Input",
+                            JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
+                confirmed = true;
+                setVisible(false);
+            });
+
+            cancel.addActionListener(e -> {
+                confirmed = false;
+                setVisible(false);
+            });
+        }
+
+        boolean isConfirmed() {
+            return confirmed;
+        }
+
+        String getPassengerName() {
+            return nameField.getText().trim();
+        }
+
+        int getPassengerAge() {
+            try {
+                return Integer.parseInt(ageField.getText().trim());
+            } catch (Exception e) {
+                return 0;
+            }
+        }
+    }
+
+    // ---------- Cancel Ticket ----------
+    private void openCancelWindow() {
+        BookingEngine engine = engine();
+        if (engine == null)
+            return;
+        JDialog cancelDialog = new JDialog(mainFrame, "Cancel Ticket - " + selectedTrain + ", " + selectedDate, true);
+        cancelDialog.setSize(480, 220);
+        cancelDialog.setLocationRelativeTo(mainFrame);
+        cancelDialog.setLayout(new BorderLayout(8, 8));
+        cancelDialog.setResizable(false);
+
+        JPanel main = new JPanel();
+        main.setLayout(new BoxLayout(main, BoxLayout.Y_AXIS));
+        main.setBorder(new EmptyBorder(12, 12, 12, 12));
+
+        JLabel lbl = new JLabel("Enter seat ID or PNR to cancel (e.g., 1AC-S3, GEN-S12 or 01J8ZK4Q0A7M):");
+        lbl.setAlignmentX(Component.LEFT_ALIGNMENT);
+        main.add(lbl);
+
+        JTextField seatField = new JTextField();
+        seatField.setMaximumSize(new Dimension(Integer.MAX_VALUE, 28));
+        seatField.setAlignmentX(Component.LEFT_ALIGNMENT);
+        main.add(Box.createRigidArea(new Dimension(0, 8)));
+        main.add(seatField);
+        main.add(Box.createRigidArea(new Dimension(0, 12)));
+
+        JButton cancelBtn = new JButton("Cancel Ticket");
+        cancelBtn.setAlignmentX(Component.CENTER_ALIGNMENT);
+        main.add(cancelBtn);
+        main.add(Box.createRigidArea(new Dimension(0, 8)));
+
+        JLabel note = new JLabel("<html><i>Note:</i> Seat IDs are coach-prefixed. Example: 2AC-S5, GEN-S12. Use exact ID.</html>");
+        note.setAlignmentX(Component.LEFT_ALIGNMENT);
+        main.add(note);
+
+        cancelDialog.add(main, BorderLayout.CENTER);
+
+        cancelBtn.addActionListener(e -> {
+            String seatInput = seatField.getText().trim().toUpperCase();
+            if (seatInput.isEmpty()) {
+                JOptionPane.showMessageDialog(cancelDialog, "Please enter a seat ID.", "Input Required",
+                        JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            String waitStatus = engine.waitlistStatus(seatInput);
+            if (waitStatus != null) {
+                int conf = JOptionPane.showConfirmDialog(cancelDialog, "Ticket " + seatInput + " is " + waitStatus
+                        + ". Remove it from the waitlist?", "Confirm Cancel", JOptionPane.YES_NO_OPTION);
+                if (conf != JOptionPane.YES_OPTION)
+                    return;
+                try {
+                    engine.leaveWaitlist(seatInput);
+                } catch (UncheckedIOException ex) {
+                    JOptionPane.showMessageDialog(cancelDialog, "Cancelled, but could not save it: "
+                            + ex.getMessage(), "Storage Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                JOptionPane.showMessageDialog(cancelDialog, "Removed from the waitlist.", "Cancelled",
+                        JOptionPane.INFORMATION_MESSAGE);
+                seatField.setText("");
+                return;
+            }
+            Ticket byId = engine.ticketById(seatInput);
+            if (byId != null)
+                seatInput = byId.seat;
+            if (!engine.isKnownSeat(seatInput)) {
+                JOptionPane.showMessageDialog(cancelDialog, "Seat ID not recognized: " + seatInput, "Invalid Seat",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            List<Ticket> onSeat = byId != null ? Collections.singletonList(byId) : engine.ticketsForSeat(seatInput);
+            if (onSeat.isEmpty()) {
+                JOptionPane.showMessageDialog(cancelDialog, "No booking found for " + seatInput, "Not Found",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            Ticket t = onSeat.get(0);
+            if (onSeat.size() > 1) {
+                // One seat can be sold for several non-overlapping legs; ask which one
+                Map<String, Ticket> choices = new LinkedHashMap<>();
+                for (Ticket each : onSeat)
+                    choices.put(each.ticketId + " - " + each.name + " (" + each.from + " -> " + each.to + ")", each);
+                Object picked = JOptionPane.showInputDialog(cancelDialog, "Seat " + seatInput
+                        + " has several bookings. Which one?", "Choose Ticket", JOptionPane.QUESTION_MESSAGE, null,
+                        choices.keySet().toArray(), null);
+                if (picked == null)
+                    return;
+                t = choices.get(picked);
+            }
+            int conf = JOptionPane.showConfirmDialog(cancelDialog,
+                    "Cancel ticket " + t.ticketId + " for " + t.name + " (Seat " + seatInput + ")?", "Confirm Cancel",
+                    JOptionPane.YES_NO_OPTION);
+            if (conf != JOptionPane.YES_OPTION)
+                return;
+
+            try {
+                if (!engine.cancel(t)) {
+                    JOptionPane.showMessageDialog(cancelDialog, "No booking found for " + seatInput, "Not Found",
+                            JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+            } catch (UncheckedIOException ex) {
+                JOptionPane.showMessageDialog(cancelDialog, "Cancelled, but could not save it: " + ex.getMessage(),
+                        "Storage Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            String freed = engine.isAvailable(seatInput, t.from, t.to)
+                    ? "Seat " + seatInput + " is now available from " + t.from + " to " + t.to + "."
+                    : "Seat " + seatInput + " went to a waitlisted passenger.";
+            JOptionPane.showMessageDialog(cancelDialog, "Ticket cancelled. " + freed, "Cancelled",
+                    JOptionPane.INFORMATION_MESSAGE);
+            seatField.setText("");
+        });
+
+        cancelDialog.setVisible(true);
+    }
+
+    // ---------- TicketPanel (with Ticket) ----------
+    // One instance is shared as the renderer for every row of the ticket list
+    private static class TicketPanel extends JPanel implements ListCellRenderer<Ticket> {
+        static final int CARD_WIDTH = TicketCard.WIDTH;
+        static final int CARD_HEIGHT = TicketCard.HEIGHT;
+        static final int ROW_HEIGHT = 195;
+        private static final String SEPARATOR = "------------------------------------------------------------";
+
+        private Ticket ticket;
+
+        TicketPanel() {
+            setOpaque(true);
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<? extends Ticket> list, Ticket value, int index,
+                boolean isSelected, boolean cellHasFocus) {
+            this.ticket = value;
+            setBackground(list.getBackground());
+            return this;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            if (ticket == null) return;
+
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setFont(TicketCard.TEXT_FONT);
+            g2.setColor(Color.BLACK);
+            FontMetrics fm = g2.getFontMetrics();
+            int sepX = (getWidth() - fm.stringWidth(SEPARATOR)) / 2;
+            g2.drawString(SEPARATOR, sepX, 10 + fm.getAscent());
+            g2.drawString(SEPARATOR, sepX, ROW_HEIGHT - 15 - fm.getDescent());
+            g2.translate((getWidth() - CARD_WIDTH) / 2, 10 + fm.getHeight() + 5);
+            TicketCard.paint(g2, ticket);
+            g2.dispose();
+        }
+    }
+
+    // ---------- View Tickets ----------
+    private void openViewTicketsWindow() {
+        BookingEngine engine = engine();
+        if (engine == null)
+            return;
+        JDialog viewDialog = new JDialog(mainFrame, "View Tickets - " + selectedTrain + ", " + selectedDate, true);
+        viewDialog.setSize(700, 600);
+        viewDialog.setLocationRelativeTo(mainFrame);
+        viewDialog.setLayout(new BorderLayout(8, 8));
+
+        // Only the rows in view are painted, all through one shared renderer
+        TicketListModel model = new TicketListModel();
+        JList<Ticket> ticketList = new JList<>(model);
+        ticketList.setCellRenderer(new TicketPanel());
+        ticketList.setFixedCellHeight(TicketPanel.ROW_HEIGHT);
+        ticketList.setFixedCellWidth(TicketPanel.CARD_WIDTH + 20);
+        ticketList.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        JScrollPane scroll = new JScrollPane(ticketList);
+        scroll.getVerticalScrollBar().setUnitIncrement(TicketPanel.ROW_HEIGHT / 4);
+        viewDialog.add(scroll, BorderLayout.CENTER);
+
+        JLabel countLabel = new JLabel("Loading...");
+        JButton refreshBtn = new JButton("Refresh");
+        Runnable refresh = () -> {
+            refreshBtn.setEnabled(false);
+            // Snapshot off the EDT, then merge into the model on it
+            new SwingWorker<List<Ticket>, Void>() {
+                @Override
+                protected List<Ticket> doInBackground() {
+                    return engine.tickets();
+                }
+
+                @Override
+                protected void done() {
+                    try {
+                        model.update(get());
+                        countLabel.setText(model.getSize() + " ticket(s)");
+                    } catch (Exception ex) {
+                        countLabel.setText("Could not load tickets: " + ex.getMessage());
+                    }
+                    refreshBtn.setEnabled(true);
+                }
+            }.execute();
+        };
+        refreshBtn.addActionListener(e -> refresh.run());
+
+        JButton exportBtn = new JButton("Export...");
+        exportBtn.addActionListener(e -> exportTickets(viewDialog, engine, exportBtn));
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        top.add(countLabel);
+        top.add(refreshBtn);
+        top.add(exportBtn);
+        viewDialog.add(top, BorderLayout.NORTH);
+
+        refresh.run();
+        viewDialog.setVisible(true);
+    }
+
+    // Writes every ticket of the departure to CSV, PDF or a folder of PNG pages, off the EDT
+    private void exportTickets(JDialog owner, BookingEngine engine, JButton exportBtn) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setAcceptAllFileFilterUsed(false);
+        FileNameExtensionFilter csv = new FileNameExtensionFilter("Passenger manifest (*.csv)", "csv");
+        FileNameExtensionFilter pdf = new FileNameExtensionFilter("Printable tickets (*.pdf)", "pdf");
+        FileNameExtensionFilter png = new FileNameExtensionFilter("Ticket pages (folder of *.png)", "png");
+        chooser.addChoosableFileFilter(csv);
+        chooser.addChoosableFileFilter(pdf);
+        chooser.addChoosableFileFilter(png);
+        chooser.setFileFilter(csv);
+        chooser.setSelectedFile(new java.io.File("tickets-" + selectedTrain.number + "-" + selectedDate));
+        if (chooser.showSaveDialog(owner) != JFileChooser.APPROVE_OPTION)
+            return;
+        TicketExporter.Format format = chooser.getFileFilter() == pdf ? TicketExporter.Format.PDF
+                : chooser.getFileFilter() == png ? TicketExporter.Format.PNG : TicketExporter.Format.CSV;
+        Path chosen = chooser.getSelectedFile().toPath();
+        String extension = "." + format.name().toLowerCase();
+        Path target = format == TicketExporter.Format.PNG || chosen.toString().toLowerCase().endsWith(extension)
+                ? chosen : chosen.resolveSibling(chosen.getFileName() + extension);
+
+        exportBtn.setEnabled(false);
+        new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() throws IOException {
+                return new TicketExporter().export(engine, format, target);
+            }
+
+            @Override
+            protected void done() {
+                exportBtn.setEnabled(true);
+                try {
+                    JOptionPane.showMessageDialog(owner, "Exported " + get() + " ticket(s) to " + target,
+                            "Export Complete", JOptionPane.INFORMATION_MESSAGE);
+                } catch (ExecutionException ex) {
+                    JOptionPane.showMessageDialog(owner, "Could not export tickets: " + ex.getCause().getMessage(),
+                            "Export Failed", JOptionPane.ERROR_MESSAGE);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Rows of the ticket list. {@link #update} merges a fresh snapshot in place, firing one event per
+     * run of added or removed rows, so a refresh only touches what changed.
+     */
+    private static class TicketListModel extends AbstractListModel<Ticket> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Ticket> rows = new ArrayList<>();
+
+        @Override
+        public int getSize() {
+            return rows.size();
+        }
+
+        @Override
+        public Ticket getElementAt(int index) {
+            return rows.get(index);
+        }
+
+        // Both lists are in booking order, so a single merge pass lines them up
+        void update(List<Ticket> snapshot) {
+            Set<String> fresh = new HashSet<>();
+            for (Ticket t : snapshot)
+                fresh.add(rowKey(t));
+            int i = 0;
+            int addedFrom = -1;
+            for (Ticket t : snapshot) {
+                int removeFrom = i;
+                while (i < rows.size() && !fresh.contains(rowKey(rows.get(i))))
+                    i++;
+                if (i > removeFrom) {
+                    addedFrom = flushAdded(addedFrom, removeFrom);
+                    rows.subList(removeFrom, i).clear();
+                    fireIntervalRemoved(this, removeFrom, i - 1);
+                    i = removeFrom;
+                }
+                if (i < rows.size() && rowKey(rows.get(i)).equals(rowKey(t))) {
+                    addedFrom = flushAdded(addedFrom, i);
+                    i++;
+                    continue;
+                }
+                rows.add(i, t);
+                if (addedFrom < 0)
+                    addedFrom = i;
+                i++;
+            }
+            flushAdded(addedFrom, i);
+            if (i < rows.size()) {
+                int end = rows.size() - 1;
+                rows.subList(i, rows.size()).clear();
+                fireIntervalRemoved(this, i, end);
+            }
+        }
+
+        private int flushAdded(int from, int to) {
+            if (from >= 0)
+                fireIntervalAdded(this, from, to - 1);
+            return -1;
+        }
+
+        // Ticket IDs are never reused, not even after a reset (see TicketIds)
+        private static String rowKey(Ticket t) {
+            return t.ticketId;
+        }
+    }
+
+    // ---------- Helpers ----------
+    public static List<Ticket> ticketsStatic() {
+        RailwaySystem1 app = instance;
+        return app.departures.engine(app.selectedTrain.number, app.selectedDate).tickets();
+    }
+
+    private static String[] reversed(String[] stations) {
+        String[] out = new String[stations.length];
+        for (int i = 0; i < stations.length; i++)
+            out[i] = stations[stations.length - 1 - i];
+        return out;
+    }
+
+    private static int[] reversed(int[] km) {
+        int[] out = new int[km.length];
+        for (int i = 0; i < km.length; i++)
+            out[i] = km[km.length - 1 - i];
+        return out;
+    }
+
+    // Batch export without a window, read from the journal: export <train> <yyyy-mm-dd> <csv|png|pdf> <target>
+    private static void exportHeadless(String[] args) {
+        Train train = args.length == 5 ? TRAINS.stream().filter(t -> t.number.equals(args[1])).findFirst().orElse(null)
+                : null;
+        if (train == null || !args[3].matches("(?i)csv|png|pdf")) {
+            System.err.println("Usage: RailwaySystem1 export <train> <yyyy-mm-dd> <csv|png|pdf> <target>");
+            System.exit(2);
+        }
+        System.setProperty("java.awt.headless", "true");
+        try {
+            Path dir = Paths.get(System.getProperty("railway.dataDir", "railway-data"))
+                    .resolve(train.number).resolve(LocalDate.parse(args[2]).toString());
+            // Read the journal as recovery does, into an engine of our own: opening the departure would
+            // start a journal of its own over the one a running app is writing
+            BookingEngine engine = train.newEngine();
+            engine.restore(BookingJournal.recover(dir).tickets);
+            TicketExporter.Format format = TicketExporter.Format.valueOf(args[3].toUpperCase());
+            long start = System.nanoTime();
+            int exported = new TicketExporter().export(engine, format, Paths.get(args[4]));
+            System.out.println("Exported " + exported + " ticket(s) to " + args[4] + " in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (DateTimeParseException e) {
+            System.err.println("Usage: RailwaySystem1 export <train> <yyyy-mm-dd> <csv|png|pdf> <target>");
+            System.exit(2);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Sales report straight from the journal, leaving the departure to the app: report <train> <yyyy-mm-dd>
+    private static void reportHeadless(String[] args) {
+        Train train = args.length == 3 ? TRAINS.stream().filter(t -> t.number.equals(args[1])).findFirst().orElse(null)
+                : null;
+        if (train == null) {
+            System.err.println("Usage: RailwaySystem1 report <train> <yyyy-mm-dd>");
+            System.exit(2);
+        }
+        try {
+            Path dir = Paths.get(System.getProperty("railway.dataDir", "railway-data"))
+                    .resolve(train.number).resolve(LocalDate.parse(args[2]).toString());
+            SalesTotals.Report r = SalesTotals.fromJournal(train, dir);
+            System.out.println(train + " on " + args[2] + ": " + r.tickets() + " ticket(s) (" + r.children()
+                    + " child, " + r.adults() + " adult), Rs. " + FareEngine.rupees(r.revenuePaise()));
+            for (String coach : r.coaches()) {
+                System.out.printf(Locale.ROOT, "  %-5s %6d ticket(s)  Rs. %12s%n", coach, r.tickets(coach),
+                        FareEngine.rupees(r.revenuePaise(coach)));
+            }
+            for (String[] route : r.routes()) {
+                System.out.printf(Locale.ROOT, "  %-10s -> %-10s %6d ticket(s)  Rs. %12s%n", route[0], route[1],
+                        r.tickets(route[0], route[1]), FareEngine.rupees(r.revenuePaise(route[0], route[1])));
+            }
+            long[] tickets = r.ticketsByHour();
+            long[] revenue = r.revenuePaiseByHour();
+            for (int h = 0; h < tickets.length; h++) {
+                if (tickets[h] > 0)
+                    System.out.printf(Locale.ROOT, "  %02d:00  %6d ticket(s)  Rs. %12s%n", h, tickets[h], FareEngine.rupees(revenue[h]));
+            }
+        } catch (DateTimeParseException e) {
+            System.err.println("Usage: RailwaySystem1 report <train> <yyyy-mm-dd>");
+            System.exit(2);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Report failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("export")) {
+            exportHeadless(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("report")) {
+            reportHeadless(args);
+            return;
+        }
+        try {
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+        } catch (Exception ignored) {
+        }
+        new RailwaySystem1();
+    }
 }
\ No newline at end of file
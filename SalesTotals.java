@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.*;
+
+/**
+ * Running revenue and ticket totals for one departure, kept up to date as tickets are stored and
+ * removed, so reports never walk the tickets.
+ *
+ * Totals are kept per station pair: for each coach the tickets, revenue and child tickets (age 15
+ * and under, the {@link FareEngine.Concession#CHILD} rule), and for each hour of the day tickets were
+ * booked in (in the JVM's time zone) the tickets and revenue. {@link TicketStore} updates a pair's
+ * row while holding the lock it already takes to link the ticket into that pair's list, so booking
+ * pays a few additions and no extra lock. {@link Report}s copy one row per pair, at a cost set by the
+ * train's stations and coaches, however many tickets are sold.
+ *
+ * Totals follow the live tickets, so recovery rebuilds them as it restores tickets; {@link #fromJournal}
+ * rebuilds them from a departure's journal without opening the departure at all.
+ */
+final class SalesTotals {
+
+    private static final ZoneRules ZONE = ZoneId.systemDefault().getRules();
+    private static final int HOURS = 24;
+    private static final long HOUR_MILLIS = 3_600_000L;
+
+    // Per coach: tickets, revenue, children; then per hour: tickets, revenue
+    private static final int COACH_FIELDS = 3;
+    private static final int HOUR_FIELDS = 2;
+
+    private final String[] stations;
+    private final String[] coaches;
+    private final int rowLength;
+    // One row per station pair (from * stations + to), made on its first ticket and guarded by the
+    // caller's lock for that pair; a long route sells on few of its pairs
+    private final long[][] rows;
+
+    SalesTotals(String[] stations, String[] coaches) {
+        this.stations = stations.clone();
+        this.coaches = coaches.clone();
+        this.rowLength = coaches.length * COACH_FIELDS + HOURS * HOUR_FIELDS;
+        this.rows = new long[stations.length * stations.length][];
+    }
+
+    /**
+     * Rebuilds the totals of the departure journaled in {@code dir} from its snapshot and journal,
+     * read as recovery reads them. A running app may be writing the journal meanwhile; the totals
+     * then stop at the last complete record.
+     */
+    static Report fromJournal(Train train, Path dir) throws IOException {
+        String[] coaches = train.coachSeatCount.keySet().toArray(new String[0]);
+        SalesTotals totals = new SalesTotals(train.stations, coaches);
+        List<String> stationList = Arrays.asList(train.stations);
+        List<String> coachList = Arrays.asList(coaches);
+        for (Ticket t : BookingJournal.recover(dir).tickets) {
+            int from = stationList.indexOf(t.from);
+            int to = stationList.indexOf(t.to);
+            int coach = coachList.indexOf(t.coach);
+            if (from < 0 || to < 0 || coach < 0)
+                continue;
+            totals.add(from * train.stations.length + to, coach, t.pricePaise(), t.age, hourOf(t.bookedOn.getTime()), 1);
+        }
+        Report r = new Report(totals);
+        for (int route = 0; route < totals.rows.length; route++)
+            r.copyRow(totals, route);
+        return r;
+    }
+
+    /**
+     * Counts a ticket in ({@code sign} 1) or out (-1); {@code hour} is {@link #hourOf} its booking
+     * time. Caller holds the lock for {@code route}.
+     */
+    void add(int route, int coach, long pricePaise, int age, int hour, int sign) {
+        long[] row = rows[route];
+        if (row == null)
+            rows[route] = row = new long[rowLength];
+        int at = coach * COACH_FIELDS;
+        row[at] += sign;
+        row[at + 1] += sign * pricePaise;
+        if (FareEngine.Concession.forAge(age) == FareEngine.Concession.CHILD)
+            row[at + 2] += sign;
+        at = coaches.length * COACH_FIELDS + hour * HOUR_FIELDS;
+        row[at] += sign;
+        row[at + 1] += sign * pricePaise;
+    }
+
+    static int hourOf(long epochMillis) {
+        long local = epochMillis + ZONE.getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+        return (int) (Math.floorMod(local, HOURS * HOUR_MILLIS) / HOUR_MILLIS);
+    }
+
+    /**
+     * A copy of the totals; every figure is a sum over the station pairs sold on. Each pair's row is
+     * copied in one go, so a report never shows half a ticket.
+     */
+    static final class Report {
+        private final String[] stations;
+        private final String[] coaches;
+        private final long[][] rows;
+
+        Report(SalesTotals totals) {
+            this.stations = totals.stations;
+            this.coaches = totals.coaches;
+            this.rows = new long[totals.rows.length][];
+        }
+
+        /** Caller holds the lock for {@code route}. */
+        void copyRow(SalesTotals totals, int route) {
+            long[] row = totals.rows[route];
+            if (row != null)
+                rows[route] = row.clone();
+        }
+
+        long tickets() {
+            return sumCoaches(0, coaches.length, 0);
+        }
+
+        long revenuePaise() {
+            return sumCoaches(0, coaches.length, 1);
+        }
+
+        long children() {
+            return sumCoaches(0, coaches.length, 2);
+        }
+
+        long adults() {
+            return tickets() - children();
+        }
+
+        long tickets(String coach) {
+            return sumCoach(coach, 0);
+        }
+
+        long revenuePaise(String coach) {
+            return sumCoach(coach, 1);
+        }
+
+        long children(String coach) {
+            return sumCoach(coach, 2);
+        }
+
+        long tickets(String from, String to) {
+            return sumRoute(route(from, to), 0);
+        }
+
+        long revenuePaise(String from, String to) {
+            return sumRoute(route(from, to), 1);
+        }
+
+        /** Revenue from tickets booked in each hour of the day, 0 to 23. */
+        long[] revenuePaiseByHour() {
+            return byHour(1);
+        }
+
+        long[] ticketsByHour() {
+            return byHour(0);
+        }
+
+        List<String> coaches() {
+            return Collections.unmodifiableList(Arrays.asList(coaches));
+        }
+
+        /** Station pairs with tickets sold, from each station in route order. */
+        List<String[]> routes() {
+            List<String[]> out = new ArrayList<>();
+            for (int from = 0; from < stations.length; from++) {
+                for (int to = 0; to < stations.length; to++) {
+                    if (sumRoute(from * stations.length + to, 0) > 0)
+                        out.add(new String[] {stations[from], stations[to]});
+                }
+            }
+            return out;
+        }
+
+        private long sumCoach(String coach, int field) {
+            int c = Arrays.asList(coaches).indexOf(coach);
+            return c < 0 ? 0 : sumCoaches(c, c + 1, field);
+        }
+
+        // A field of coaches first (inclusive) to last (exclusive), over every route
+        private long sumCoaches(int first, int last, int field) {
+            long sum = 0;
+            for (long[] row : rows) {
+                for (int c = first; row != null && c < last; c++)
+                    sum += row[c * COACH_FIELDS + field];
+            }
+            return sum;
+        }
+
+        private long sumRoute(int route, int field) {
+            if (route < 0 || rows[route] == null)
+                return 0;
+            long sum = 0;
+            for (int c = 0; c < coaches.length; c++)
+                sum += rows[route][c * COACH_FIELDS + field];
+            return sum;
+        }
+
+        private long[] byHour(int field) {
+            long[] out = new long[HOURS];
+            int first = coaches.length * COACH_FIELDS;
+            for (long[] row : rows) {
+                for (int h = 0; row != null && h < HOURS; h++)
+                    out[h] += row[first + h * HOUR_FIELDS + field];
+            }
+            return out;
+        }
+
+        private int route(String from, String to) {
+            List<String> s = Arrays.asList(stations);
+            int f = s.indexOf(from);
+            int t = s.indexOf(to);
+            return f < 0 || t < 0 ? -1 : f * stations.length + t;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Publishes which seats of one departure changed state, in batches.
+ *
+ * A seat change only sets the seat's bit in a per-coach dirty bitmap (one CAS, no allocation) and,
+ * if no flush is pending, schedules one {@link #BATCH_MILLIS} later. The flush drains the bitmaps
+ * into one {@link SeatChanges} and hands it to every subscriber on the subscriber's executor. However
+ * many seats change, each subscriber gets at most one batch per interval, and a subscriber whose
+ * executor falls behind (a busy EDT) gets later batches merged into the one still queued rather than
+ * a growing backlog.
+ *
+ * Batches say which seats changed, not their new state; subscribers read that from the engine when
+ * the batch arrives, so they always see the latest state. Until the first subscriber the bitmaps are
+ * not even allocated and publishing is a single volatile read.
+ */
+class SeatEventBus {
+
+    static final long BATCH_MILLIS = 50;
+
+    // One timer for every departure's flushes; its thread starts with the first flush
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "seat-events");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final SeatInventory seats;
+    private final List<Subscription> subscribers = new CopyOnWriteArrayList<>();
+    // Changed seats per coach since the last flush, bit = seat index; null until first subscriber
+    private volatile AtomicLongArray[] dirty;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    SeatEventBus(SeatInventory seats) {
+        this.seats = seats;
+    }
+
+    /**
+     * Delivers batches of changed seats to {@code listener} on {@code deliverOn}, e.g.
+     * {@code SwingUtilities::invokeLater}. Close the subscription to stop.
+     */
+    Subscription subscribe(Executor deliverOn, Consumer<SeatChanges> listener) {
+        synchronized (this) {
+            if (dirty == null) {
+                AtomicLongArray[] d = new AtomicLongArray[seats.coachCount()];
+                for (int c = 0; c < d.length; c++)
+                    d[c] = new AtomicLongArray((seats.seatCount(c) + 63) >>> 6);
+                dirty = d;
+            }
+        }
+        Subscription s = new Subscription(deliverOn, listener);
+        subscribers.add(s);
+        return s;
+    }
+
+    /** Records that a seat's state changed. Called on the booking thread. */
+    void seatChanged(int key) {
+        AtomicLongArray[] d = dirty;
+        if (d == null)
+            return;
+        int idx = SeatInventory.indexOf(key);
+        AtomicLongArray words = d[SeatInventory.coachOf(key)];
+        int w = idx >>> 6;
+        long bit = 1L << idx;
+        long cur = words.get(w);
+        // Already marked since the last flush: nothing to do, which is the common case under load
+        while ((cur & bit) == 0 && !words.compareAndSet(w, cur, cur | bit))
+            cur = words.get(w);
+        if (!flushScheduled.get() && flushScheduled.compareAndSet(false, true))
+            FLUSHER.schedule(this::flush, BATCH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        // Clear first, so a change racing with the drain schedules the next flush instead of being lost
+        flushScheduled.set(false);
+        AtomicLongArray[] d = dirty;
+        Map<String, BitSet> changed = new LinkedHashMap<>();
+        for (int c = 0; c < d.length; c++) {
+            long[] drained = null;
+            for (int w = 0; w < d[c].length(); w++) {
+                if (d[c].get(w) == 0)
+                    continue;
+                if (drained == null)
+                    drained = new long[d[c].length()];
+                drained[w] = d[c].getAndSet(w, 0);
+            }
+            if (drained != null)
+                changed.put(seats.coachName(c), BitSet.valueOf(drained));
+        }
+        if (changed.isEmpty())
+            return;
+        SeatChanges batch = new SeatChanges(changed);
+        for (Subscription s : subscribers)
+            s.offer(batch);
+    }
+
+    // ---------- Types ----------
+
+    /** Seats that changed state since the previous batch, grouped by coach. */
+    static final class SeatChanges {
+        // Coach -> zero-based seat indexes
+        private final Map<String, BitSet> seats;
+
+        private SeatChanges(Map<String, BitSet> seats) {
+            this.seats = seats;
+        }
+
+        Set<String> coaches() {
+            return Collections.unmodifiableSet(seats.keySet());
+        }
+
+        boolean touches(String coach) {
+            return seats.containsKey(coach);
+        }
+
+        /** IDs ("COACH-Sn") of the coach's changed seats, in seat order. */
+        List<String> seatIds(String coach) {
+            BitSet changed = seats.get(coach);
+            if (changed == null)
+                return Collections.emptyList();
+            List<String> ids = new ArrayList<>(changed.cardinality());
+            for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1))
+                ids.add(BookingEngine.seatId(coach, i + 1));
+            return ids;
+        }
+
+        /** Number of changed seats across all coaches. */
+        int size() {
+            int n = 0;
+            for (BitSet b : seats.values())
+                n += b.cardinality();
+            return n;
+        }
+
+        private SeatChanges merge(SeatChanges later) {
+            Map<String, BitSet> union = new LinkedHashMap<>();
+            for (Map.Entry<String, BitSet> e : seats.entrySet())
+                union.put(e.getKey(), (BitSet) e.getValue().clone());
+            for (Map.Entry<String, BitSet> e : later.seats.entrySet())
+                union.computeIfAbsent(e.getKey(), k -> new BitSet()).or(e.getValue());
+            return new SeatChanges(union);
+        }
+    }
+
+    final class Subscription implements AutoCloseable {
+        private final Executor executor;
+        private final Consumer<SeatChanges> listener;
+        // Batch handed to the executor but not yet delivered; later batches merge into it
+        private SeatChanges pending;
+
+        private Subscription(Executor executor, Consumer<SeatChanges> listener) {
+            this.executor = executor;
+            this.listener = listener;
+        }
+
+        private void offer(SeatChanges batch) {
+            boolean schedule;
+            synchronized (this) {
+                schedule = pending == null;
+                pending = schedule ? batch : pending.merge(batch);
+            }
+            if (schedule)
+                executor.execute(this::deliver);
+        }
+
+        private void deliver() {
+            SeatChanges batch;
+            synchronized (this) {
+                batch = pending;
+                pending = null;
+            }
+            if (batch != null && subscribers.contains(this))
+                listener.accept(batch);
+        }
+
+        @Override
+        public void close() {
+            subscribers.remove(this);
+        }
+    }
+}
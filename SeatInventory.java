@@ -0,0 +1,434 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Compact, leg-aware seat map.
+ *
+ * The route is split into segments between consecutive stations. Each seat owns one bit per
+ * segment (set = taken on that leg), and seats are packed side by side into the words of a
+ * per-coach AtomicLongArray. Booking a from/to pair is a single CAS that checks and sets the
+ * segment range, so one seat can be sold for Bangalore-Chennai and again for Mumbai-Delhi.
+ *
+ * Every coach also keeps a free-seat counter per (from, to) segment range, updated on each
+ * claim and release, so availability for a journey is one array read per coach. Whoever needs to
+ * know when seats change registers with {@link #onChange(IntConsumer)}.
+ *
+ * Allocation queries ("N seats together") go through a {@link FreeRunIndex} per coach and journey.
+ * Those are built the first time a journey is asked for and then kept current on every claim and
+ * release, so untouched journeys cost nothing.
+ *
+ * A coach's words, counters and indexes are only allocated when one of its seats is first claimed
+ * (or an index is asked for); until then it reads as entirely free. Most departures on sale have
+ * bookings in few of their coaches, so most coaches never cost more than a null slot.
+ *
+ * Holds are rare and short-lived, so their expiry times live in a small side map instead of
+ * widening every seat. Expired holds are freed before any query or claim reads the seats, so a
+ * lapsed hold never shows as taken; until the earliest deadline passes that costs one read.
+ *
+ * Seats are addressed by an int key (coach ordinal in the high half, zero-based seat index in
+ * the low half). {@link #parse(String)} and {@link #seatId(int)} convert to and from the
+ * "COACH-Sn" IDs shown to users.
+ */
+class SeatInventory {
+
+    private final String[] coachNames;
+    private final int[] seatCounts;
+    private final int segments;
+    private final int seatsPerWord;
+    private final long seatMask;
+    // Per-coach state, null until the coach is first written to
+    private final AtomicReferenceArray<Coach> coaches;
+    // (seat key, segment range) -> hold expiry, epoch millis
+    private final Map<Long, Long> holds = new ConcurrentHashMap<>();
+    // No earlier than the earliest deadline in holds; Long.MAX_VALUE while there are none
+    private final AtomicLong nextExpiry = new AtomicLong(Long.MAX_VALUE);
+    private final Object reapLock = new Object();
+    // Told the seat key whenever a seat's taken segments change
+    private volatile IntConsumer changeListener = c -> {
+    };
+
+    SeatInventory(Map<String, Integer> coachSeatCount, int stationCount) {
+        if (stationCount < 2 || stationCount > 64)
+            throw new IllegalArgumentException("Route needs 2..64 stations, got " + stationCount);
+        segments = stationCount - 1;
+        seatsPerWord = 64 / segments;
+        seatMask = segments == 64 ? -1L : (1L << segments) - 1;
+        int n = coachSeatCount.size();
+        coachNames = new String[n];
+        seatCounts = new int[n];
+        coaches = new AtomicReferenceArray<>(n);
+        int c = 0;
+        for (Map.Entry<String, Integer> e : coachSeatCount.entrySet()) {
+            coachNames[c] = e.getKey();
+            seatCounts[c] = e.getValue();
+            c++;
+        }
+    }
+
+    // ---------- Claims ----------
+
+    /** Holds a seat for segments [fromSeg, toSeg) until {@code deadline}. */
+    boolean hold(int key, int fromSeg, int toSeg, long deadline) {
+        if (!setRange(key, fromSeg, toSeg))
+            return false;
+        holds.put(holdKey(key, fromSeg, toSeg), deadline);
+        nextExpiry.accumulateAndGet(deadline, Math::min);
+        return true;
+    }
+
+    /** Drops a hold and frees its segments, if the hold is still ours. */
+    void release(int key, int fromSeg, int toSeg, long deadline) {
+        if (holds.remove(holdKey(key, fromSeg, toSeg), deadline))
+            clearRange(key, fromSeg, toSeg);
+    }
+
+    /** Turns our hold into a booking. False if the hold expired and was reclaimed. */
+    boolean confirm(int key, int fromSeg, int toSeg, long deadline) {
+        return holds.remove(holdKey(key, fromSeg, toSeg), deadline);
+    }
+
+    /** Books segments [fromSeg, toSeg) of a seat directly. */
+    boolean claim(int key, int fromSeg, int toSeg) {
+        return setRange(key, fromSeg, toSeg);
+    }
+
+    /** Frees previously booked segments of a seat. */
+    void free(int key, int fromSeg, int toSeg) {
+        clearRange(key, fromSeg, toSeg);
+    }
+
+    /**
+     * In one CAS, frees {@code clearSegments} of a seat and takes {@code setSegments}, so nobody else
+     * can grab the freed segments in between. False (and nothing changed) if any segment to take is
+     * still taken once the clear is applied.
+     */
+    boolean swap(int key, long clearSegments, long setSegments) {
+        Coach coach = coach(coachOf(key));
+        AtomicLongArray words = coach.taken;
+        int w = wordOf(key);
+        int shift = shiftOf(key);
+        long clear = clearSegments << shift;
+        long set = setSegments << shift;
+        while (true) {
+            long cur = words.get(w);
+            long next = cur & ~clear;
+            if ((next & set) != 0)
+                return false;
+            next |= set;
+            if (words.compareAndSet(w, cur, next)) {
+                adjustCounters(coach, key, (cur >>> shift) & seatMask, (next >>> shift) & seatMask);
+                return true;
+            }
+        }
+    }
+
+    void clear() {
+        holds.clear();
+        for (int c = 0; c < coaches.length(); c++) {
+            if (coaches.getAndSet(c, null) == null)
+                continue;
+            for (int idx = 0; idx < seatCounts[c]; idx++)
+                changeListener.accept(key(c, idx));
+        }
+    }
+
+    /**
+     * Sets who is told, with the seat key, each time a claim, release, swap or clear changes a seat.
+     * Called on the booking thread right after the change, so it must be quick.
+     */
+    void onChange(IntConsumer listener) {
+        changeListener = listener;
+    }
+
+    // ---------- Queries ----------
+
+    boolean isAvailable(int key, int fromSeg, int toSeg) {
+        reapExpiredHolds();
+        Coach coach = coaches.get(coachOf(key));
+        return coach == null || isAvailable(coach, key, fromSeg, toSeg);
+    }
+
+    private boolean isAvailable(Coach coach, int key, int fromSeg, int toSeg) {
+        long seat = seatBits(coach.taken.get(wordOf(key)), key);
+        return (seat & rangeMask(fromSeg, toSeg)) == 0;
+    }
+
+    /** The seat's taken segments as a bitmask, bit i = segment i; live holds count as taken. */
+    long takenSegments(int key) {
+        reapExpiredHolds();
+        Coach coach = coaches.get(coachOf(key));
+        return coach == null ? 0 : seatBits(coach.taken.get(wordOf(key)), key);
+    }
+
+    /** Seats of a coach free on every segment in [fromSeg, toSeg); live holds count as taken. */
+    int available(int coach, int fromSeg, int toSeg) {
+        reapExpiredHolds();
+        Coach state = coaches.get(coach);
+        return state == null ? seatCounts[coach] : state.freeByRange.get(rangeIndex(fromSeg, toSeg));
+    }
+
+    /**
+     * Seats of a coach to offer for {@code n} passengers on segments [fromSeg, toSeg): side by side if
+     * {@code together} and possible, else the first free ones. Null if not enough are free. The seats
+     * are not claimed.
+     */
+    int[] findSeats(int coach, int fromSeg, int toSeg, int n, boolean together) {
+        reapExpiredHolds();
+        int[] picked = runIndex(coach, fromSeg, toSeg).find(n, together);
+        if (picked != null) {
+            for (int i = 0; i < picked.length; i++)
+                picked[i] = key(coach, picked[i]);
+        }
+        return picked;
+    }
+
+    private FreeRunIndex runIndex(int coach, int fromSeg, int toSeg) {
+        Coach state = coach(coach);
+        AtomicReferenceArray<FreeRunIndex> indexes = state.runIndexes;
+        int r = rangeIndex(fromSeg, toSeg);
+        FreeRunIndex index = indexes.get(r);
+        if (index != null)
+            return index;
+        FreeRunIndex fresh = new FreeRunIndex(seatCounts[coach]);
+        synchronized (fresh) {
+            // Publish first so concurrent changes start reaching it, then load the current seats
+            if (!indexes.compareAndSet(r, null, fresh))
+                return indexes.get(r);
+            for (int idx = 0; idx < seatCounts[coach]; idx++)
+                fresh.set(idx, isAvailable(state, key(coach, idx), fromSeg, toSeg));
+        }
+        return fresh;
+    }
+
+    int segments() {
+        return segments;
+    }
+
+    int coachCount() {
+        return coachNames.length;
+    }
+
+    int coachOrdinal(String coach) {
+        for (int c = 0; c < coachNames.length; c++) {
+            if (coachNames[c].equals(coach))
+                return c;
+        }
+        return -1;
+    }
+
+    String coachName(int coach) {
+        return coachNames[coach];
+    }
+
+    int seatCount(int coach) {
+        return seatCounts[coach];
+    }
+
+    // ---------- Seat keys ----------
+
+    static int key(int coach, int index) {
+        return (coach << 16) | index;
+    }
+
+    static int coachOf(int key) {
+        return key >>> 16;
+    }
+
+    static int indexOf(int key) {
+        return key & 0xFFFF;
+    }
+
+    /** Key for "COACH-Sn", or -1 if the coach is unknown or n is out of range. */
+    int parse(String seatId) {
+        if (seatId == null)
+            return -1;
+        int dash = seatId.lastIndexOf("-S");
+        if (dash <= 0 || dash + 2 >= seatId.length())
+            return -1;
+        for (int c = 0; c < coachNames.length; c++) {
+            String name = coachNames[c];
+            if (name.length() == dash && seatId.startsWith(name)) {
+                int n;
+                try {
+                    n = Integer.parseInt(seatId, dash + 2, seatId.length(), 10);
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+                return n >= 1 && n <= seatCounts[c] ? key(c, n - 1) : -1;
+            }
+        }
+        return -1;
+    }
+
+    String seatId(int key) {
+        return coachNames[coachOf(key)] + "-S" + (indexOf(key) + 1);
+    }
+
+    // ---------- Coaches ----------
+
+    // The coach's state, created on first use
+    private Coach coach(int coach) {
+        Coach state = coaches.get(coach);
+        if (state != null)
+            return state;
+        Coach fresh = new Coach(seatCounts[coach]);
+        return coaches.compareAndSet(coach, null, fresh) ? fresh : coaches.get(coach);
+    }
+
+    private final class Coach {
+        final AtomicLongArray taken;
+        // Free seats, indexed by rangeIndex(fromSeg, toSeg)
+        final AtomicIntegerArray freeByRange;
+        // Free-run indexes, indexed like freeByRange; null until first asked for
+        final AtomicReferenceArray<FreeRunIndex> runIndexes;
+
+        Coach(int seatCount) {
+            int ranges = (segments + 1) * (segments + 1);
+            taken = new AtomicLongArray((seatCount + seatsPerWord - 1) / seatsPerWord);
+            freeByRange = new AtomicIntegerArray(ranges);
+            runIndexes = new AtomicReferenceArray<>(ranges);
+            for (int from = 0; from < segments; from++) {
+                for (int to = from + 1; to <= segments; to++)
+                    freeByRange.set(rangeIndex(from, to), seatCount);
+            }
+        }
+    }
+
+    // ---------- Bit twiddling ----------
+
+    private int wordOf(int key) {
+        return indexOf(key) / seatsPerWord;
+    }
+
+    private int shiftOf(int key) {
+        return (indexOf(key) % seatsPerWord) * segments;
+    }
+
+    private long seatBits(long word, int key) {
+        return (word >>> shiftOf(key)) & seatMask;
+    }
+
+    private static long rangeMask(int fromSeg, int toSeg) {
+        int len = toSeg - fromSeg;
+        return (len == 64 ? -1L : (1L << len) - 1) << fromSeg;
+    }
+
+    private int rangeIndex(int fromSeg, int toSeg) {
+        return fromSeg * (segments + 1) + toSeg;
+    }
+
+    private static long holdKey(int key, int fromSeg, int toSeg) {
+        return ((long) key << 16) | (fromSeg << 8) | toSeg;
+    }
+
+    private boolean setRange(int key, int fromSeg, int toSeg) {
+        reapExpiredHolds();
+        Coach coach = coach(coachOf(key));
+        AtomicLongArray words = coach.taken;
+        int w = wordOf(key);
+        int shift = shiftOf(key);
+        long mask = rangeMask(fromSeg, toSeg) << shift;
+        boolean reaped = false;
+        while (true) {
+            long cur = words.get(w);
+            if ((cur & mask) != 0) {
+                // Conflict: retry once after dropping any expired holds on this seat
+                if (reaped || !reapExpiredHolds(key))
+                    return false;
+                reaped = true;
+                continue;
+            }
+            if (words.compareAndSet(w, cur, cur | mask)) {
+                adjustCounters(coach, key, (cur >>> shift) & seatMask, ((cur | mask) >>> shift) & seatMask);
+                return true;
+            }
+        }
+    }
+
+    private void clearRange(int key, int fromSeg, int toSeg) {
+        Coach coach = coaches.get(coachOf(key));
+        if (coach == null)
+            return; // never claimed (or cleared since), so nothing to free
+        AtomicLongArray words = coach.taken;
+        int w = wordOf(key);
+        int shift = shiftOf(key);
+        long mask = rangeMask(fromSeg, toSeg) << shift;
+        while (true) {
+            long cur = words.get(w);
+            if (words.compareAndSet(w, cur, cur & ~mask)) {
+                adjustCounters(coach, key, (cur >>> shift) & seatMask, ((cur & ~mask) >>> shift) & seatMask);
+                return;
+            }
+        }
+    }
+
+    // Frees every hold past its deadline. While none can have passed this is a single read
+    private void reapExpiredHolds() {
+        long next = nextExpiry.get();
+        if (next == Long.MAX_VALUE || next > System.currentTimeMillis())
+            return;
+        synchronized (reapLock) {
+            long now = System.currentTimeMillis();
+            if (nextExpiry.get() > now)
+                return;
+            // Reset before the scan: a hold added meanwhile either lowers it again or is seen by the scan
+            nextExpiry.set(Long.MAX_VALUE);
+            for (Map.Entry<Long, Long> h : holds.entrySet()) {
+                long hk = h.getKey();
+                long deadline = h.getValue();
+                if (deadline > now)
+                    nextExpiry.accumulateAndGet(deadline, Math::min);
+                else if (holds.remove(hk, deadline))
+                    clearRange((int) (hk >>> 16), (int) (hk >>> 8) & 0xFF, (int) hk & 0xFF);
+            }
+        }
+    }
+
+    private boolean reapExpiredHolds(int key) {
+        long now = System.currentTimeMillis();
+        boolean any = false;
+        for (Map.Entry<Long, Long> h : holds.entrySet()) {
+            long hk = h.getKey();
+            if ((int) (hk >>> 16) != key || h.getValue() > now)
+                continue;
+            if (holds.remove(hk, h.getValue())) {
+                clearRange(key, (int) (hk >>> 8) & 0xFF, (int) hk & 0xFF);
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    // A seat counts as free for a range while none of that range's segment bits are set
+    private void adjustCounters(Coach coach, int key, long before, long after) {
+        AtomicIntegerArray counters = coach.freeByRange;
+        AtomicReferenceArray<FreeRunIndex> indexes = coach.runIndexes;
+        boolean changed = false;
+        for (int from = 0; from < segments; from++) {
+            for (int to = from + 1; to <= segments; to++) {
+                long range = rangeMask(from, to);
+                boolean wasFree = (before & range) == 0;
+                boolean isFree = (after & range) == 0;
+                if (wasFree == isFree)
+                    continue;
+                int r = rangeIndex(from, to);
+                counters.addAndGet(r, isFree ? 1 : -1);
+                changed = true;
+                FreeRunIndex index = indexes.get(r);
+                if (index != null) {
+                    // Re-read under the index lock so racing updates settle on the latest seat state
+                    synchronized (index) {
+                        index.set(indexOf(key), isAvailable(coach, key, from, to));
+                    }
+                }
+            }
+        }
+        if (changed)
+            changeListener.accept(key);
+    }
+}
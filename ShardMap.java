@@ -0,0 +1,103 @@
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Which booking node owns each departure (train and travel date), for a cluster of
+ * {@link BookingNode}s.
+ *
+ * Ownership is by rendezvous hashing: every node scores every departure with a hash of the two, and
+ * the highest score owns it. Every node computes the same owner from the same member list without
+ * talking to the others, departures spread evenly, and when a node joins or leaves only the
+ * departures it takes or gives up change owner, about 1/n of them. Maps are immutable; a membership
+ * change makes a new one.
+ */
+final class ShardMap {
+
+    static final class Member {
+        final int nodeId;
+        final String url;
+
+        Member(int nodeId, String url) {
+            if (nodeId < 0 || nodeId > TicketIds.MAX_NODE)
+                throw new IllegalArgumentException("Node ID must be 0.." + TicketIds.MAX_NODE + ", got " + nodeId);
+            this.nodeId = nodeId;
+            this.url = url;
+        }
+
+        @Override
+        public String toString() {
+            return nodeId + "=" + url;
+        }
+    }
+
+    private final Member[] members;
+
+    ShardMap(Collection<Member> members) {
+        if (members.isEmpty())
+            throw new IllegalArgumentException("A cluster needs at least one node");
+        this.members = members.toArray(new Member[0]);
+        Arrays.sort(this.members, Comparator.comparingInt(m -> m.nodeId));
+        for (int i = 1; i < this.members.length; i++) {
+            if (this.members[i].nodeId == this.members[i - 1].nodeId)
+                throw new IllegalArgumentException("Node " + this.members[i].nodeId + " is listed twice");
+        }
+    }
+
+    List<Member> members() {
+        return Collections.unmodifiableList(Arrays.asList(members));
+    }
+
+    Member member(int nodeId) {
+        for (Member m : members) {
+            if (m.nodeId == nodeId)
+                return m;
+        }
+        return null;
+    }
+
+    /** This map with {@code m} added, or replacing the member with its node ID. */
+    ShardMap with(Member m) {
+        List<Member> next = new ArrayList<>(members.length + 1);
+        for (Member old : members) {
+            if (old.nodeId != m.nodeId)
+                next.add(old);
+        }
+        next.add(m);
+        return new ShardMap(next);
+    }
+
+    ShardMap without(int nodeId) {
+        List<Member> next = new ArrayList<>(members.length);
+        for (Member m : members) {
+            if (m.nodeId != nodeId)
+                next.add(m);
+        }
+        return new ShardMap(next);
+    }
+
+    Member owner(String trainNumber, LocalDate date) {
+        long departure = trainNumber.hashCode() * 0x9E3779B97F4A7C15L + date.toEpochDay();
+        Member best = null;
+        long bestScore = 0;
+        for (Member m : members) {
+            long score = mix(departure ^ (m.nodeId + 1) * 0xC2B2AE3D27D4EB4FL);
+            if (best == null || Long.compareUnsigned(score, bestScore) > 0) {
+                best = m;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // Stafford's variant 13 of the MurmurHash3 finalizer, so similar inputs get unrelated scores
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(members);
+    }
+}
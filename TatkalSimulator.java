@@ -0,0 +1,428 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays the tatkal rush, when booking for a train opens and thousands of agents go for the same
+ * coach in the first second, against one departure's booking core, without a server in between:
+ *
+ * <pre>
+ * java TatkalSimulator [-seed n] [-agents n] [-threads n] [-curve burst|ramp|flat] [-window millis]
+ *                      [-train number] [-coach name] [-hot percent] [-scale n] [-warmup n] [-out results.json]
+ * </pre>
+ *
+ * The seed fixes the whole workload: each agent's arrival time, party of one to four synthetic
+ * passengers, journey between two of the train's stations and coach ({@code -hot} percent of them,
+ * default 80, the {@code -coach} everyone wants, the rest spread by coach size). Arrivals over the
+ * {@code -window} (default 1000 ms) follow the curve: {@code burst} (default) front-loads them,
+ * thinning out exponentially; {@code ramp} rises steadily to the end; {@code flat} is even. An agent
+ * who finds its coach sold out tries once more in whichever coach has room. {@code -scale}
+ * multiplies every coach's seats; by default it is the train as the app sells it.
+ *
+ * Agents arrive on schedule whether or not earlier ones have been served: {@code -threads} workers
+ * (default 32) each take the next agent due, wait for its arrival time and book. Response times are
+ * measured from the scheduled arrival, so time spent queued behind a busy core counts; service
+ * times are the booking call alone. Each run also reports throughput, how many agents got seats,
+ * and per coach the time of the last ticket booked and of the first agent turned away.
+ *
+ * Two runs with the same seed and options see the same workload, and the printed workload checksum
+ * says so. With {@code -threads 1} agents are served strictly in arrival order, so the outcome (who
+ * got which seats) is exactly reproducible too, and its checksum tells whether an engine change
+ * altered allocation. With more threads, racing agents win in a different order each run. The
+ * {@code -warmup} runs (default 1) book the same workload on fresh engines first, so the JIT has
+ * compiled the booking path; {@code -out} writes the measured run as JSON.
+ */
+public class TatkalSimulator {
+
+    enum Curve {
+        BURST, RAMP, FLAT
+    }
+
+    enum Outcome {
+        BOOKED, FALLBACK, SOLD_OUT, FAILED
+    }
+
+    private static final String[] FIRST_NAMES = {"Aarav", "Priya", "Rahul", "Ananya", "Vikram", "Kavya", "Arjun",
+            "Meera", "Rohan", "Divya", "Karthik", "Sneha", "Aditya", "Lakshmi", "Nikhil", "Pooja"};
+    private static final String[] LAST_NAMES = {"Sharma", "Iyer", "Reddy", "Nair", "Patel", "Gupta", "Rao",
+            "Menon", "Das", "Singh", "Kulkarni", "Bose", "Pillai", "Joshi", "Verma", "Shetty"};
+
+    public static void main(String[] args) throws Exception {
+        long seed = 42;
+        int agents = 2000;
+        int threads = 32;
+        Curve curve = Curve.BURST;
+        int windowMillis = 1000;
+        String trainNumber = null;
+        String coach = null;
+        int hotPercent = 80;
+        int scale = 1;
+        int warmups = 1;
+        Path out = null;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 == args.length) {
+                System.err.println("Missing value for " + option);
+                System.exit(2);
+            }
+            String value = args[++i];
+            if (option.equals("-seed"))
+                seed = Long.parseLong(value);
+            else if (option.equals("-agents"))
+                agents = Integer.parseInt(value);
+            else if (option.equals("-threads"))
+                threads = Integer.parseInt(value);
+            else if (option.equals("-curve"))
+                curve = Curve.valueOf(value.toUpperCase(Locale.ROOT));
+            else if (option.equals("-window"))
+                windowMillis = Integer.parseInt(value);
+            else if (option.equals("-train"))
+                trainNumber = value;
+            else if (option.equals("-coach"))
+                coach = value;
+            else if (option.equals("-hot"))
+                hotPercent = Integer.parseInt(value);
+            else if (option.equals("-scale"))
+                scale = Integer.parseInt(value);
+            else if (option.equals("-warmup"))
+                warmups = Integer.parseInt(value);
+            else if (option.equals("-out"))
+                out = Paths.get(value);
+            else {
+                System.err.println("Unknown option " + option);
+                System.exit(2);
+            }
+        }
+        Train train = null;
+        for (Train t : RailwaySystem1.trains()) {
+            if (trainNumber == null || t.number.equals(trainNumber)) {
+                train = t;
+                break;
+            }
+        }
+        if (train == null)
+            throw new IllegalArgumentException("No train " + trainNumber);
+        train = scaled(train, scale);
+        if (coach == null)
+            coach = train.coachSeatCount.keySet().iterator().next();
+        if (!train.coachSeatCount.containsKey(coach))
+            throw new IllegalArgumentException("Train " + train.number + " has no coach " + coach);
+
+        TatkalSimulator sim = new TatkalSimulator(train, seed, agents, curve, windowMillis * 1_000_000L, coach,
+                hotPercent);
+        System.out.printf(Locale.ROOT, "%s, %d seats; %d agents (%d passengers) over %d ms, %s, %d%% want %s, seed %d%n",
+                train, train.coachSeatCount.values().stream().mapToInt(Integer::intValue).sum(), agents,
+                sim.passengers(), windowMillis, curve.name().toLowerCase(Locale.ROOT), hotPercent, coach, seed);
+        System.out.println("Workload checksum " + sim.workloadChecksum());
+        for (int i = 0; i < warmups; i++)
+            sim.run(train.newEngine(), threads);
+        Report r = sim.run(train.newEngine(), threads);
+        System.out.print(r);
+        if (threads > 1)
+            System.out.println("(With -threads 1 the outcome checksum is the same on every run)");
+        if (out != null) {
+            Files.writeString(out, r.toJson(threads));
+            System.out.println("Wrote " + out);
+        }
+    }
+
+    private static Train scaled(Train t, int scale) {
+        if (scale == 1)
+            return t;
+        Map<String, Integer> seats = new LinkedHashMap<>();
+        t.coachSeatCount.forEach((c, n) -> seats.put(c, n * scale));
+        return new Train(t.number, t.name, t.stations, t.stationKm, seats, t.coachPrice);
+    }
+
+    /** One booking request: a party after seats in one coach, at a set time after booking opens. */
+    static final class Agent {
+        final long arrivalNanos;
+        final String coach;
+        final String from;
+        final String to;
+        final List<BookingEngine.Passenger> party;
+
+        Agent(long arrivalNanos, String coach, String from, String to, List<BookingEngine.Passenger> party) {
+            this.arrivalNanos = arrivalNanos;
+            this.coach = coach;
+            this.from = from;
+            this.to = to;
+            this.party = party;
+        }
+    }
+
+    final long seed;
+    final Curve curve;
+    final long windowNanos;
+    final String hotCoach;
+    private final List<String> coaches;
+    private final Agent[] agents;
+
+    /** Generates the workload; the same arguments always give the same agents. */
+    TatkalSimulator(Train train, long seed, int agentCount, Curve curve, long windowNanos, String hotCoach,
+            int hotPercent) {
+        this.seed = seed;
+        this.curve = curve;
+        this.windowNanos = windowNanos;
+        this.hotCoach = hotCoach;
+        this.coaches = new ArrayList<>(train.coachSeatCount.keySet());
+        // Random's algorithm is part of its specification, so a seed means the same numbers on every JDK
+        Random rnd = new Random(seed);
+        long[] arrivals = new long[agentCount];
+        for (int i = 0; i < agentCount; i++)
+            arrivals[i] = arrival(curve, windowNanos, rnd.nextDouble());
+        Arrays.sort(arrivals);
+        int totalSeats = train.coachSeatCount.values().stream().mapToInt(Integer::intValue).sum();
+        String[] stations = train.stations;
+        this.agents = new Agent[agentCount];
+        for (int i = 0; i < agentCount; i++) {
+            String coach;
+            if (rnd.nextInt(100) < hotPercent) {
+                coach = hotCoach;
+            } else {
+                int seat = rnd.nextInt(totalSeats);
+                Iterator<Map.Entry<String, Integer>> it = train.coachSeatCount.entrySet().iterator();
+                Map.Entry<String, Integer> c = it.next();
+                while (seat >= c.getValue()) {
+                    seat -= c.getValue();
+                    c = it.next();
+                }
+                coach = c.getKey();
+            }
+            int from = rnd.nextInt(stations.length - 1);
+            int to = from + 1 + rnd.nextInt(stations.length - 1 - from);
+            int roll = rnd.nextInt(100);
+            int size = roll < 55 ? 1 : roll < 80 ? 2 : roll < 92 ? 3 : 4;
+            List<BookingEngine.Passenger> party = new ArrayList<>(size);
+            for (int p = 0; p < size; p++) {
+                String name = FIRST_NAMES[rnd.nextInt(FIRST_NAMES.length)] + " "
+                        + LAST_NAMES[rnd.nextInt(LAST_NAMES.length)];
+                int age = rnd.nextInt(10) == 0 ? 5 + rnd.nextInt(13) : 18 + rnd.nextInt(62);
+                party.add(new BookingEngine.Passenger(name, age));
+            }
+            agents[i] = new Agent(arrivals[i], coach, stations[from], stations[to], party);
+        }
+    }
+
+    // Inverse of the curve's distribution function over [0, window)
+    private static long arrival(Curve curve, long window, double u) {
+        switch (curve) {
+            case FLAT:
+                return (long) (u * window);
+            case RAMP:
+                return (long) (Math.sqrt(u) * window);
+            default:
+                // Exponential with a mean of an eighth of the window, cut off at its end
+                double mean = window / 8.0;
+                return (long) (-mean * Math.log(1 - u * (1 - Math.exp(-window / mean))));
+        }
+    }
+
+    int passengers() {
+        int n = 0;
+        for (Agent a : agents)
+            n += a.party.size();
+        return n;
+    }
+
+    /** Identifies the workload: equal for equal seeds and options, whatever the engine. */
+    String workloadChecksum() {
+        long h = seed;
+        for (Agent a : agents) {
+            h = mix(h, a.arrivalNanos);
+            h = mix(h, (a.coach + a.from + a.to).hashCode());
+            for (BookingEngine.Passenger p : a.party)
+                h = mix(h, p.name.hashCode() * 131L + p.age);
+        }
+        return String.format(Locale.ROOT, "%016x", h);
+    }
+
+    private static long mix(long h, long v) {
+        h = (h ^ v) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /** Books every agent on {@code engine} with {@code threads} workers, agents arriving on schedule. */
+    Report run(BookingEngine engine, int threads) throws InterruptedException {
+        int n = agents.length;
+        Outcome[] outcomes = new Outcome[n];
+        String[] seats = new String[n];
+        long[] doneAt = new long[n];
+        LatencyHistogram response = new LatencyHistogram();
+        LatencyHistogram service = new LatencyHistogram();
+        AtomicInteger next = new AtomicInteger();
+        // Gives the workers time to start before the first arrival
+        long opening = System.nanoTime() + 50_000_000L;
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int w = 0; w < threads; w++) {
+            Thread t = new Thread(() -> {
+                for (int i; (i = next.getAndIncrement()) < n; ) {
+                    Agent a = agents[i];
+                    long due = opening + a.arrivalNanos;
+                    for (long wait; (wait = due - System.nanoTime()) > 0; )
+                        LockSupport.parkNanos(wait);
+                    long start = System.nanoTime();
+                    List<Ticket> booked = Collections.emptyList();
+                    Outcome outcome;
+                    try {
+                        booked = engine.bookGroup(a.coach, a.from, a.to, a.party, BookingEngine.SeatPreference.TOGETHER);
+                        outcome = Outcome.BOOKED;
+                        if (booked.isEmpty()) {
+                            booked = engine.bookGroup(null, a.from, a.to, a.party, BookingEngine.SeatPreference.TOGETHER);
+                            outcome = booked.isEmpty() ? Outcome.SOLD_OUT : Outcome.FALLBACK;
+                        }
+                    } catch (RuntimeException e) {
+                        outcome = Outcome.FAILED;
+                    }
+                    long done = System.nanoTime();
+                    response.record(done - due);
+                    service.record(done - start);
+                    outcomes[i] = outcome;
+                    doneAt[i] = done - opening;
+                    StringBuilder s = new StringBuilder();
+                    for (Ticket tk : booked)
+                        s.append(tk.coach).append('-').append(tk.seat).append(' ');
+                    seats[i] = s.toString();
+                }
+            }, "tatkal-agent-" + w);
+            workers.add(t);
+            t.start();
+        }
+        for (Thread t : workers)
+            t.join();
+        return new Report(engine, outcomes, seats, doneAt, response.snapshot(), service.snapshot());
+    }
+
+    /** What one run did, in the order agents arrived. */
+    final class Report {
+        final int agents;
+        final int tickets;
+        final long elapsedNanos;
+        final Map<Outcome, Integer> outcomes = new EnumMap<>(Outcome.class);
+        final LatencyHistogram.Snapshot response;
+        final LatencyHistogram.Snapshot service;
+        final String outcomeChecksum;
+        // Per coach, nanoseconds after opening; -1 if it never happened
+        final Map<String, Long> lastBooked = new LinkedHashMap<>();
+        final Map<String, Long> firstTurnedAway = new LinkedHashMap<>();
+        final Map<String, Double> occupancy = new LinkedHashMap<>();
+
+        Report(BookingEngine engine, Outcome[] byAgent, String[] seats, long[] doneAt,
+                LatencyHistogram.Snapshot response, LatencyHistogram.Snapshot service) {
+            this.agents = byAgent.length;
+            this.tickets = engine.ticketCount();
+            this.response = response;
+            this.service = service;
+            for (Outcome o : Outcome.values())
+                outcomes.put(o, 0);
+            for (String c : coaches) {
+                lastBooked.put(c, -1L);
+                firstTurnedAway.put(c, -1L);
+                occupancy.put(c, engine.occupancy(c));
+            }
+            long h = seed;
+            long end = 0;
+            for (int i = 0; i < byAgent.length; i++) {
+                outcomes.merge(byAgent[i], 1, Integer::sum);
+                h = mix(h, byAgent[i].ordinal());
+                h = mix(h, seats[i].hashCode());
+                end = Math.max(end, doneAt[i]);
+                String wanted = TatkalSimulator.this.agents[i].coach;
+                if (byAgent[i] == Outcome.BOOKED)
+                    lastBooked.merge(wanted, doneAt[i], Math::max);
+                else if (byAgent[i] != Outcome.FAILED)
+                    firstTurnedAway.merge(wanted, doneAt[i], (was, now) -> was < 0 ? now : Math.min(was, now));
+                if (byAgent[i] == Outcome.FALLBACK) {
+                    String got = seats[i].substring(0, seats[i].indexOf('-'));
+                    lastBooked.merge(got, doneAt[i], Math::max);
+                }
+            }
+            this.elapsedNanos = end;
+            this.outcomeChecksum = String.format(Locale.ROOT, "%016x", h);
+        }
+
+        double successRatio() {
+            return (outcomes.get(Outcome.BOOKED) + outcomes.get(Outcome.FALLBACK)) / (double) Math.max(1, agents);
+        }
+
+        double agentsPerSecond() {
+            return agents / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(String.format(Locale.ROOT,
+                    "%d agents in %.1f ms: %.0f agents/s, %d tickets; %d booked, %d in another coach, %d sold out, %d failed (%.1f%% got seats)%n",
+                    agents, elapsedNanos / 1e6, agentsPerSecond(), tickets, outcomes.get(Outcome.BOOKED),
+                    outcomes.get(Outcome.FALLBACK), outcomes.get(Outcome.SOLD_OUT), outcomes.get(Outcome.FAILED),
+                    successRatio() * 100));
+            s.append(latencies("Response", response)).append(latencies("Service ", service));
+            for (String c : coaches) {
+                s.append(String.format(Locale.ROOT, "  %-5s %5.1f%% full, last ticket at %s, first turned away at %s%n",
+                        c, occupancy.get(c) * 100, millis(lastBooked.get(c)), millis(firstTurnedAway.get(c))));
+            }
+            return s.append("Outcome checksum ").append(outcomeChecksum).append('\n').toString();
+        }
+
+        private String latencies(String label, LatencyHistogram.Snapshot h) {
+            return String.format(Locale.ROOT, "%s  p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f ms%n", label,
+                    h.quantile(0.5) / 1e6, h.quantile(0.9) / 1e6, h.quantile(0.99) / 1e6, h.quantile(0.999) / 1e6,
+                    h.maxNanos / 1e6);
+        }
+
+        private String millis(long nanos) {
+            return nanos < 0 ? "-" : String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+        }
+
+        String toJson(int threads) {
+            StringBuilder out = new StringBuilder(1024);
+            out.append("{\n  \"timestamp\": ");
+            Json.quote(out, Instant.now().toString()).append(",\n  \"java\": ");
+            Json.quote(out, System.getProperty("java.version"));
+            out.append(",\n  \"cpus\": ").append(Runtime.getRuntime().availableProcessors());
+            out.append(",\n  \"seed\": ").append(seed).append(",\n  \"curve\": ");
+            Json.quote(out, curve.name().toLowerCase(Locale.ROOT));
+            out.append(",\n  \"windowMillis\": ").append(windowNanos / 1_000_000);
+            out.append(",\n  \"threads\": ").append(threads).append(",\n  \"hotCoach\": ");
+            Json.quote(out, hotCoach).append(",\n  \"workloadChecksum\": ");
+            Json.quote(out, workloadChecksum()).append(",\n  \"outcomeChecksum\": ");
+            Json.quote(out, outcomeChecksum);
+            out.append(",\n  \"agents\": ").append(agents).append(",\n  \"passengers\": ").append(passengers());
+            out.append(",\n  \"tickets\": ").append(tickets);
+            for (Outcome o : Outcome.values()) {
+                out.append(",\n  ");
+                Json.quote(out, o.name().toLowerCase(Locale.ROOT)).append(": ").append(outcomes.get(o));
+            }
+            out.append(String.format(Locale.ROOT, ",\n  \"successRatio\": %.4f", successRatio()));
+            out.append(String.format(Locale.ROOT, ",\n  \"elapsedMillis\": %.3f", elapsedNanos / 1e6));
+            out.append(String.format(Locale.ROOT, ",\n  \"agentsPerSecond\": %.1f", agentsPerSecond()));
+            histogramJson(out.append(",\n  \"responseMillis\": "), response);
+            histogramJson(out.append(",\n  \"serviceMillis\": "), service);
+            out.append(",\n  \"coaches\": [");
+            for (int i = 0; i < coaches.size(); i++) {
+                String c = coaches.get(i);
+                out.append(i == 0 ? "\n    {" : ",\n    {").append("\"coach\": ");
+                Json.quote(out, c).append(String.format(Locale.ROOT, ", \"occupancy\": %.4f", occupancy.get(c)));
+                out.append(", \"lastTicketMillis\": ").append(jsonMillis(lastBooked.get(c)));
+                out.append(", \"firstTurnedAwayMillis\": ").append(jsonMillis(firstTurnedAway.get(c))).append('}');
+            }
+            return out.append("\n  ]\n}\n").toString();
+        }
+
+        private String jsonMillis(long nanos) {
+            return nanos < 0 ? "null" : String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+        }
+
+        private void histogramJson(StringBuilder out, LatencyHistogram.Snapshot h) {
+            out.append(String.format(Locale.ROOT,
+                    "{\"p50\": %.3f, \"p90\": %.3f, \"p99\": %.3f, \"p999\": %.3f, \"max\": %.3f}",
+                    h.quantile(0.5) / 1e6, h.quantile(0.9) / 1e6, h.quantile(0.99) / 1e6, h.quantile(0.999) / 1e6,
+                    h.maxNanos / 1e6));
+        }
+    }
+}
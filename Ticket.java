@@ -0,0 +1,18 @@
+import java.util.Date;
+
+// ---------- Ticket class ----------
+class Ticket extends BaseTicket {
+
+    Ticket(String ticketId, String name, int age,
+        String seat, String coach,
+        String from, String to,
+        double price, Date bookedOn) {
+
+        super(ticketId, name, age, seat, coach, from, to, price, bookedOn);
+    }
+
+    @Override
+    String getTicketType() {
+        return "Regular Ticket";
+    }
+}
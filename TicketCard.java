@@ -0,0 +1,88 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Draws one ticket as a yellow card, for the ticket list on screen and for exported pages.
+ *
+ * Everything a card needs besides its text (the font, the gradient and the optional train image) is
+ * made once and painted into one background image, so a card costs one image copy plus ten lines of
+ * text. Painting is safe from any thread, as long as each thread uses its own Graphics.
+ */
+final class TicketCard {
+
+    static final int WIDTH = 350;
+    static final int HEIGHT = 130;
+    static final Font TEXT_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    static final DateTimeFormatter BOOKED_ON = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    private static final String BACKGROUND_FILE = "train_bg.png";
+    private static BufferedImage background;
+
+    private TicketCard() {
+    }
+
+    /** Paints the card for {@code t} with its top left corner at the origin. */
+    static void paint(Graphics2D g2, Ticket t) {
+        g2.drawImage(background(), 0, 0, null);
+
+        // Ticket details, left aligned with padding
+        g2.setFont(TEXT_FONT);
+        g2.setColor(Color.BLACK);
+        int paddingX = 20;
+        int y = 15;
+        for (String line : lines(t)) {
+            g2.drawString(line, paddingX, y);
+            y += 12;
+        }
+    }
+
+    /** The text lines of a card, top to bottom. */
+    static String[] lines(Ticket t) {
+        return new String[] {
+                "Ticket ID : " + t.ticketId,
+                "Type      : " + t.getTicketType(),
+                "Name      : " + t.name,
+                "Age       : " + t.age,
+                "Coach     : " + t.coach,
+                "Seat      : " + t.seat,
+                "From      : " + t.from,
+                "To        : " + t.to,
+                "Price     : Rs. " + FareEngine.rupees(t.pricePaise()),
+                "Booked On : " + BOOKED_ON.format(t.bookedOn.toInstant())};
+    }
+
+    // Gradient block, with the train image over it if there is one; transparent around the corners
+    private static synchronized BufferedImage background() {
+        if (background == null) {
+            BufferedImage img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2 = img.createGraphics();
+            g2.setPaint(new GradientPaint(0, 0, new Color(255, 245, 180), 0, HEIGHT, new Color(255, 255, 210)));
+            g2.fillRoundRect(5, 5, WIDTH - 10, HEIGHT - 10, 20, 20);
+            Image train = trainImage();
+            if (train != null) {
+                g2.clip(new Rectangle(5, 5, WIDTH - 10, HEIGHT - 10));
+                g2.drawImage(train, 5, 5, WIDTH - 10, HEIGHT - 10, null);
+            }
+            g2.dispose();
+            background = img;
+        }
+        return background;
+    }
+
+    private static Image trainImage() {
+        File file = new File(BACKGROUND_FILE);
+        if (!file.isFile())
+            return null;
+        try {
+            return ImageIO.read(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,513 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Exports a departure's tickets without a screen: as a CSV manifest, as PNG pages of ticket cards,
+ * or as a PDF of the same pages.
+ *
+ * Tickets stream from the engine in manifest order (see {@link BookingEngine#forEachTicket}) and are
+ * never all in memory. For pages, the calling thread cuts the stream into pages of
+ * {@link #CARDS_PER_PAGE} cards and hands each to a pool of render threads, then writes finished
+ * pages in order. At most two pages per render thread are in flight, so memory stays flat however
+ * many tickets there are. Each render thread keeps its page image, deflater and buffers for the
+ * whole export, and every card is drawn by {@link TicketCard} from one shared background.
+ *
+ * PNG pages go through a small encoder of their own rather than ImageIO. A page has a few dozen
+ * colours, so it is stored as an indexed image with the fastest compression, which takes about a
+ * quarter of the time of ImageIO's true-colour writer. The PDF draws each card as a box and ten
+ * lines of Courier text, so it needs no PDF library and costs little more than the CSV.
+ */
+class TicketExporter {
+
+    enum Format { CSV, PNG, PDF }
+
+    static final int CARDS_ACROSS = 2;
+    static final int CARDS_DOWN = 6;
+    static final int CARDS_PER_PAGE = CARDS_ACROSS * CARDS_DOWN;
+
+    private static final DateTimeFormatter CSV_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    private final int threads;
+
+    /** An exporter rendering pages on every core. */
+    TicketExporter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    TicketExporter(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Need at least 1 render thread, got " + threads);
+        this.threads = threads;
+    }
+
+    /**
+     * Exports every live ticket of a departure and returns how many were written. CSV and PDF write
+     * the file {@code target}; PNG writes page-00001.png, page-00002.png, ... into the directory
+     * {@code target}, creating it if needed.
+     */
+    int export(BookingEngine engine, Format format, Path target) throws IOException {
+        switch (format) {
+            case CSV -> {
+                try (Writer out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+                    return writeCsv(engine, out);
+                }
+            }
+            case PNG -> {
+                Files.createDirectories(target);
+                return writePages(engine, PngPage::new,
+                        (page, bytes) -> Files.write(target.resolve(String.format("page-%05d.png", page)), bytes));
+            }
+            case PDF -> {
+                try (PdfWriter pdf = new PdfWriter(Files.newOutputStream(target))) {
+                    return writePages(engine, PdfPage::new, (page, bytes) -> pdf.addPage(bytes));
+                }
+            }
+            default -> throw new AssertionError(format);
+        }
+    }
+
+    /** Writes the manifest as CSV with a header row; returns the number of tickets. */
+    int writeCsv(BookingEngine engine, Writer out) throws IOException {
+        out.write("pnr,type,name,age,coach,seat,from,to,price,booked_on\n");
+        StringBuilder row = new StringBuilder(160);
+        int[] count = {0};
+        try {
+            engine.forEachTicket(t -> {
+                row.setLength(0);
+                row.append(t.ticketId).append(',');
+                csvField(row, t.getTicketType()).append(',');
+                csvField(row, t.name).append(',').append(t.age).append(',');
+                row.append(t.coach).append(',').append(t.seat).append(',');
+                csvField(row, t.from).append(',');
+                csvField(row, t.to).append(',');
+                row.append(FareEngine.rupees(t.pricePaise())).append(',');
+                CSV_TIME.formatTo(t.bookedOn.toInstant(), row);
+                row.append('\n');
+                try {
+                    out.append(row);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count[0];
+    }
+
+    // Quotes a field holding a comma, quote or line break, doubling any quotes
+    private static StringBuilder csvField(StringBuilder row, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote)
+            return row.append(value);
+        row.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"')
+                row.append('"');
+            row.append(c);
+        }
+        return row.append('"');
+    }
+
+    // ---------- Pages ----------
+
+    /** Turns up to {@link #CARDS_PER_PAGE} tickets into one encoded page. One instance per render thread. */
+    private interface PageRenderer {
+        byte[] render(Ticket[] cards, int count) throws IOException;
+    }
+
+    /** Receives encoded pages in order, numbered from 1. */
+    private interface PageSink {
+        void write(int page, byte[] bytes) throws IOException;
+    }
+
+    private int writePages(BookingEngine engine, Supplier<PageRenderer> renderers, PageSink sink) throws IOException {
+        try (Pipeline pipeline = new Pipeline(renderers, sink)) {
+            engine.forEachTicket(pipeline);
+            return pipeline.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Collects streamed tickets into pages, renders them on the pool and writes them in order. */
+    private final class Pipeline implements Consumer<Ticket>, Closeable {
+        private final ThreadLocal<PageRenderer> renderer;
+        private final PageSink sink;
+        private final ExecutorService pool;
+        private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        private Ticket[] page = new Ticket[CARDS_PER_PAGE];
+        private int onPage;
+        private int tickets;
+        private int pagesWritten;
+
+        Pipeline(Supplier<PageRenderer> renderers, PageSink sink) {
+            this.renderer = ThreadLocal.withInitial(renderers);
+            this.sink = sink;
+            AtomicInteger threadNo = new AtomicInteger();
+            pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "ticket-export-" + threadNo.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        @Override
+        public void accept(Ticket t) {
+            page[onPage++] = t;
+            tickets++;
+            if (onPage == CARDS_PER_PAGE)
+                submitPage();
+        }
+
+        /** Renders and writes what is left; returns the number of tickets exported. */
+        int finish() {
+            if (onPage > 0)
+                submitPage();
+            while (!inFlight.isEmpty())
+                writeNext();
+            return tickets;
+        }
+
+        private void submitPage() {
+            Ticket[] cards = page;
+            int count = onPage;
+            page = new Ticket[CARDS_PER_PAGE];
+            onPage = 0;
+            inFlight.add(pool.submit(() -> renderer.get().render(cards, count)));
+            // Keep every render thread busy with one page queued behind it, and no more
+            if (inFlight.size() >= 2 * threads)
+                writeNext();
+        }
+
+        private void writeNext() {
+            try {
+                sink.write(++pagesWritten, inFlight.remove().get());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Export interrupted"));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw new UncheckedIOException((IOException) cause);
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw (RuntimeException) cause;
+            }
+        }
+
+        @Override
+        public void close() {
+            pool.shutdownNow();
+        }
+    }
+
+    /** A growable byte buffer whose contents can be read without copying. */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    // ---------- PNG ----------
+
+    /** Paints pages into one reused image and encodes them as 8-bit PNG, indexed when it can be. */
+    private static final class PngPage implements PageRenderer {
+        static final int GAP = 15;
+        static final int WIDTH = CARDS_ACROSS * TicketCard.WIDTH + (CARDS_ACROSS + 1) * GAP;
+        static final int HEIGHT = CARDS_DOWN * TicketCard.HEIGHT + (CARDS_DOWN + 1) * GAP;
+        private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        private static final int MAX_COLOURS = 256;
+
+        private final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        private final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        // Palette: colour -> index by open addressing (-1 = empty), and index -> colour
+        private final int[] colourKeys = new int[1024];
+        private final byte[] colourIndex = new byte[1024];
+        private final int[] palette = new int[MAX_COLOURS];
+        // Image rows for the compressor, each led by its filter byte (0 = none)
+        private final byte[] indexedRows = new byte[HEIGHT * (WIDTH + 1)];
+        private final byte[] rgbRow = new byte[WIDTH * 3 + 1];
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final Buffer compressed = new Buffer(1 << 16);
+        private final Buffer out = new Buffer(1 << 16);
+        private final CRC32 crc = new CRC32();
+
+        @Override
+        public byte[] render(Ticket[] cards, int count) throws IOException {
+            Graphics2D g2 = image.createGraphics();
+            g2.setColor(Color.WHITE);
+            g2.fillRect(0, 0, WIDTH, HEIGHT);
+            for (int i = 0; i < count; i++) {
+                int x = GAP + (i % CARDS_ACROSS) * (TicketCard.WIDTH + GAP);
+                int y = GAP + (i / CARDS_ACROSS) * (TicketCard.HEIGHT + GAP);
+                g2.translate(x, y);
+                TicketCard.paint(g2, cards[i]);
+                g2.translate(-x, -y);
+            }
+            g2.dispose();
+            return encode();
+        }
+
+        private byte[] encode() throws IOException {
+            int colours = index();
+            compressed.reset();
+            deflater.reset();
+            try (DeflaterOutputStream z = new DeflaterOutputStream(compressed, deflater, 1 << 16)) {
+                if (colours > 0) {
+                    z.write(indexedRows);
+                } else {
+                    for (int y = 0; y < HEIGHT; y++) {
+                        for (int x = 0, p = y * WIDTH, o = 1; x < WIDTH; x++, p++) {
+                            rgbRow[o++] = (byte) (pixels[p] >> 16);
+                            rgbRow[o++] = (byte) (pixels[p] >> 8);
+                            rgbRow[o++] = (byte) pixels[p];
+                        }
+                        z.write(rgbRow);
+                    }
+                }
+            }
+
+            out.reset();
+            out.write(SIGNATURE);
+            byte[] header = new byte[13];
+            putInt(header, 0, WIDTH);
+            putInt(header, 4, HEIGHT);
+            header[8] = 8;                          // bits per sample or palette index
+            header[9] = (byte) (colours > 0 ? 3 : 2); // indexed or RGB
+            chunk("IHDR", header, header.length);
+            if (colours > 0) {
+                byte[] plte = new byte[colours * 3];
+                for (int i = 0; i < colours; i++) {
+                    plte[i * 3] = (byte) (palette[i] >> 16);
+                    plte[i * 3 + 1] = (byte) (palette[i] >> 8);
+                    plte[i * 3 + 2] = (byte) palette[i];
+                }
+                chunk("PLTE", plte, plte.length);
+            }
+            chunk("IDAT", compressed.array(), compressed.size());
+            chunk("IEND", header, 0);
+            return out.toByteArray();
+        }
+
+        // Fills indexedRows and the palette; returns the colour count, or 0 if there are too many
+        private int index() {
+            Arrays.fill(colourKeys, -1);
+            int colours = 0;
+            int last = -1;
+            byte lastIndex = 0;
+            for (int y = 0, o = 0; y < HEIGHT; y++) {
+                indexedRows[o++] = 0;
+                for (int x = 0, p = y * WIDTH; x < WIDTH; x++, p++) {
+                    int rgb = pixels[p] & 0xFFFFFF;
+                    // Runs of one colour are the norm, so most pixels skip the lookup
+                    if (rgb != last) {
+                        int h = (rgb * 0x9E3779B9) >>> 22;
+                        while (colourKeys[h] != -1 && colourKeys[h] != rgb)
+                            h = (h + 1) & (colourKeys.length - 1);
+                        if (colourKeys[h] == -1) {
+                            if (colours == MAX_COLOURS)
+                                return 0;
+                            colourKeys[h] = rgb;
+                            colourIndex[h] = (byte) colours;
+                            palette[colours++] = rgb;
+                        }
+                        last = rgb;
+                        lastIndex = colourIndex[h];
+                    }
+                    indexedRows[o++] = lastIndex;
+                }
+            }
+            return colours;
+        }
+
+        private void chunk(String type, byte[] data, int length) {
+            byte[] word = new byte[4];
+            putInt(word, 0, length);
+            out.write(word, 0, 4);
+            byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+            out.write(name, 0, 4);
+            out.write(data, 0, length);
+            crc.reset();
+            crc.update(name);
+            crc.update(data, 0, length);
+            putInt(word, 0, (int) crc.getValue());
+            out.write(word, 0, 4);
+        }
+
+        private static void putInt(byte[] b, int at, int v) {
+            b[at] = (byte) (v >>> 24);
+            b[at + 1] = (byte) (v >>> 16);
+            b[at + 2] = (byte) (v >>> 8);
+            b[at + 3] = (byte) v;
+        }
+    }
+
+    // ---------- PDF ----------
+
+    /** Writes one page's content stream: a box per card with its lines in Courier, compressed. */
+    private static final class PdfPage implements PageRenderer {
+        // A4 in points
+        static final int PAGE_WIDTH = 595;
+        static final int PAGE_HEIGHT = 842;
+        private static final int CARD_WIDTH = 270;
+        private static final int CARD_HEIGHT = 125;
+        private static final int GAP_X = (PAGE_WIDTH - CARDS_ACROSS * CARD_WIDTH) / (CARDS_ACROSS + 1);
+        private static final int GAP_Y = (PAGE_HEIGHT - CARDS_DOWN * CARD_HEIGHT) / (CARDS_DOWN + 1);
+
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final Buffer compressed = new Buffer(1 << 14);
+        private final StringBuilder text = new StringBuilder(1 << 13);
+
+        @Override
+        public byte[] render(Ticket[] cards, int count) throws IOException {
+            text.setLength(0);
+            for (int i = 0; i < count; i++) {
+                int x = GAP_X + (i % CARDS_ACROSS) * (CARD_WIDTH + GAP_X);
+                int top = PAGE_HEIGHT - GAP_Y - (i / CARDS_ACROSS) * (CARD_HEIGHT + GAP_Y);
+                // Card yellow, edged a shade darker
+                text.append("1 0.98 0.76 rg 0.85 0.75 0.35 RG 0.5 w ")
+                        .append(x).append(' ').append(top - CARD_HEIGHT).append(' ')
+                        .append(CARD_WIDTH).append(' ').append(CARD_HEIGHT).append(" re B\n");
+                text.append("0 g BT /F1 8.5 Tf 11 TL ").append(x + 14).append(' ').append(top - 16).append(" Td\n");
+                String[] lines = TicketCard.lines(cards[i]);
+                for (int l = 0; l < lines.length; l++) {
+                    if (l > 0)
+                        text.append("T* ");
+                    pdfString(lines[l]).append(" Tj\n");
+                }
+                text.append("ET\n");
+            }
+            compressed.reset();
+            deflater.reset();
+            try (DeflaterOutputStream z = new DeflaterOutputStream(compressed, deflater, 1 << 14)) {
+                byte[] bytes = new byte[text.length()];
+                for (int i = 0; i < bytes.length; i++)
+                    bytes[i] = (byte) text.charAt(i);
+                z.write(bytes);
+            }
+            return compressed.toByteArray();
+        }
+
+        // A literal string in the font's single-byte encoding; characters it lacks print as '?'
+        private StringBuilder pdfString(String s) {
+            text.append('(');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '(' || c == ')' || c == '\\')
+                    text.append('\\');
+                text.append(c < 0x20 || c > 0xFF ? '?' : c);
+            }
+            return text.append(')');
+        }
+    }
+
+    /**
+     * Writes a PDF one page at a time. Objects go out as they come and only their offsets are kept
+     * (8 bytes each), so the page tree and cross-reference table are written at the end.
+     */
+    private static final class PdfWriter implements Closeable {
+        private static final int CATALOG = 1;
+        private static final int PAGES = 2;
+        private static final int FONT = 3;
+        private static final int FIRST_PAGE = 4;
+
+        private final OutputStream out;
+        private long position;
+        // Byte offset of each object, by object number
+        private long[] offsets = new long[256];
+        private int pages;
+
+        PdfWriter(OutputStream out) throws IOException {
+            this.out = new BufferedOutputStream(out, 1 << 16);
+            // The comment with bytes over 127 tells transfer tools the file is binary
+            write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+            object(CATALOG, "<< /Type /Catalog /Pages " + PAGES + " 0 R >>");
+            object(FONT, "<< /Type /Font /Subtype /Type1 /BaseFont /Courier /Encoding /WinAnsiEncoding >>");
+        }
+
+        /** Adds a page drawn by a Flate-compressed content stream. */
+        void addPage(byte[] content) throws IOException {
+            int page = FIRST_PAGE + 2 * pages++;
+            object(page, "<< /Type /Page /Parent " + PAGES + " 0 R /MediaBox [0 0 " + PdfPage.PAGE_WIDTH + " "
+                    + PdfPage.PAGE_HEIGHT + "] /Resources << /Font << /F1 " + FONT + " 0 R >> >> /Contents "
+                    + (page + 1) + " 0 R >>");
+            begin(page + 1);
+            write("<< /Length " + content.length + " /Filter /FlateDecode >>\nstream\n");
+            out.write(content);
+            position += content.length;
+            write("\nendstream\nendobj\n");
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                begin(PAGES);
+                write("<< /Type /Pages /Count " + pages + " /Kids [");
+                for (int p = 0; p < pages; p++)
+                    write((p % 16 == 0 ? "\n" : " ") + (FIRST_PAGE + 2 * p) + " 0 R");
+                write(" ] >>\nendobj\n");
+
+                int objects = FIRST_PAGE + 2 * pages;
+                long xref = position;
+                write("xref\n0 " + objects + "\n0000000000 65535 f \n");
+                for (int n = 1; n < objects; n++)
+                    write(String.format("%010d 00000 n \n", offsets[n]));
+                write("trailer\n<< /Size " + objects + " /Root " + CATALOG + " 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+            } finally {
+                out.close();
+            }
+        }
+
+        private void object(int number, String body) throws IOException {
+            begin(number);
+            write(body + "\nendobj\n");
+        }
+
+        private void begin(int number) throws IOException {
+            if (number >= offsets.length)
+                offsets = Arrays.copyOf(offsets, Math.max(number + 1, offsets.length * 2));
+            offsets[number] = position;
+            write(number + " 0 obj\n");
+        }
+
+        private void write(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+            out.write(bytes);
+            position += bytes.length;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Ticket numbers that are unique across every departure and booking node, and the 12-character PNR
+ * text they are shown as.
+ *
+ * A number packs, from the top: seconds since 2025-01-01 (32 bits), the node ID (8 bits) and a
+ * sequence within that second (20 bits). Numbers come from one AtomicLong holding the last
+ * (second, sequence) pair issued, advanced with a fetch-and-add, so issuing never locks or retries.
+ * When the clock has moved on the counter jumps forward to it. If a node issues more than 2^20
+ * numbers in a second, the sequence carries into the next second, so numbers stay unique and keep
+ * rising even while ahead of the clock. A generator starts at the second after the one it was
+ * created in, so a restart continues above every number the previous run issued, even a restart
+ * within the same second, as long as the clock has not been set back. Recovered tickets also move
+ * the counter past their numbers, see {@link #advancePast}.
+ *
+ * A PNR is the number in Crockford base 32: digits and capitals without I, L, O or U. It is read
+ * back ignoring case, with I and L taken as 1 and O as 0. IDs from before PNRs ("T001") still
+ * parse to their old, small numbers, which new numbers can never reach.
+ */
+class TicketIds {
+
+    static final int NODE_BITS = 8;
+    static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    private static final int SEQUENCE_BITS = 20;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    // 2025-01-01T00:00:00Z
+    private static final long EPOCH_SECONDS = 1_735_689_600L;
+    // Numbers below this are from the old "Tnnn" scheme; any second after the epoch is above it
+    private static final long FIRST_PNR = 1L << (NODE_BITS + SEQUENCE_BITS);
+
+    private static final int PNR_LENGTH = 12;
+    private static final char[] DIGITS = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < DIGITS.length; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+            VALUES[Character.toLowerCase(DIGITS[i])] = (byte) i;
+        }
+        VALUES['I'] = VALUES['i'] = VALUES['L'] = VALUES['l'] = 1;
+        VALUES['O'] = VALUES['o'] = 0;
+    }
+
+    private static volatile TicketIds local;
+
+    private final int node;
+    private final LongSupplier clockSeconds;
+    // Last (seconds << SEQUENCE_BITS | sequence) handed out
+    private final AtomicLong last;
+
+    TicketIds(int node) {
+        this(node, () -> System.currentTimeMillis() / 1000);
+    }
+
+    TicketIds(int node, LongSupplier clockSeconds) {
+        if (node < 0 || node > MAX_NODE)
+            throw new IllegalArgumentException("Node ID must be 0.." + MAX_NODE + ", got " + node);
+        this.node = node;
+        this.clockSeconds = clockSeconds;
+        this.last = new AtomicLong(now() + SEQUENCE_MASK);
+    }
+
+    /** This process's generator, for node {@code -Drailway.nodeId} (default 0). */
+    static TicketIds local() {
+        TicketIds ids = local;
+        if (ids == null) {
+            synchronized (TicketIds.class) {
+                if (local == null)
+                    local = new TicketIds(Integer.getInteger("railway.nodeId", 0));
+                ids = local;
+            }
+        }
+        return ids;
+    }
+
+    int node() {
+        return node;
+    }
+
+    /** A new ticket number, greater than every one this generator issued or was advanced past. */
+    long next() {
+        long tick = last.incrementAndGet();
+        long now = now();
+        if (tick < now) {
+            // Idle since an earlier second: move up to the clock. Losing this race is fine, the
+            // winner moved it at least as far; either way take a number from the new position.
+            if (last.compareAndSet(tick, now))
+                tick = now;
+            else
+                tick = last.incrementAndGet();
+        }
+        return compose(tick);
+    }
+
+    /** Makes every later number greater than {@code number}, e.g. one recovered from a journal. */
+    void advancePast(long number) {
+        if (number < FIRST_PNR)
+            return;
+        long tick = ((number >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS) | (number & SEQUENCE_MASK);
+        last.accumulateAndGet(tick, Math::max);
+    }
+
+    private long now() {
+        return Math.max(0, clockSeconds.getAsLong() - EPOCH_SECONDS) << SEQUENCE_BITS;
+    }
+
+    private long compose(long tick) {
+        return ((tick >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)) | ((long) node << SEQUENCE_BITS)
+                | (tick & SEQUENCE_MASK);
+    }
+
+    /** The node that issued a ticket number. */
+    static int nodeOf(long number) {
+        return number < FIRST_PNR ? 0 : (int) (number >>> SEQUENCE_BITS) & MAX_NODE;
+    }
+
+    // ---------- Text ----------
+
+    /** The PNR for a ticket number, or "Tnnn" for numbers from before PNRs. */
+    static String format(long number) {
+        if (number < FIRST_PNR) {
+            String digits = Long.toString(number);
+            return digits.length() >= 3 ? "T" + digits : "T" + "000".substring(digits.length()) + digits;
+        }
+        char[] out = new char[PNR_LENGTH];
+        for (int i = PNR_LENGTH - 1; i >= 0; i--) {
+            out[i] = DIGITS[(int) (number & 31)];
+            number >>>= 5;
+        }
+        return new String(out);
+    }
+
+    /** Ticket number of a PNR or old "Tnnn" ID, or -1 if the text is neither. */
+    static long parse(String ticketId) {
+        if (ticketId == null)
+            return -1;
+        if (ticketId.length() == PNR_LENGTH) {
+            long number = 0;
+            for (int i = 0; i < PNR_LENGTH; i++) {
+                char c = ticketId.charAt(i);
+                int v = c < 128 ? VALUES[c] : -1;
+                if (v < 0)
+                    return -1;
+                number = (number << 5) | v;
+            }
+            return number >= FIRST_PNR ? number : -1;
+        }
+        if (ticketId.length() < 2 || ticketId.charAt(0) != 'T')
+            return -1;
+        try {
+            long number = Long.parseLong(ticketId, 1, ticketId.length(), 10);
+            return number >= 0 && number < FIRST_PNR ? number : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
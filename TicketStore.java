@@ -0,0 +1,591 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Live tickets, stored as compact fixed-size records instead of Ticket objects.
+ *
+ * Each ticket is one slot in chunked primitive arrays: four longs (ticket number, booking time,
+ * price in paise + interned name ID, seat key + station ordinals + age + live flag) and six ints
+ * of list links. That is 56 bytes per ticket plus about 16 in the ID index; with the per-seat list
+ * heads and the name pool, 1M tickets retain about 88 bytes each, against about 290 for the same
+ * tickets as Ticket objects with their own Strings and Date in the list and seat map the app kept
+ * before (footprint.tickets and footprint.ticketObjects in the jmh module, on a 64-bit JVM with
+ * compressed references). {@link Ticket} objects are only built when a caller asks for one.
+ *
+ * Lookups never scan:
+ * <ul>
+ * <li>ticket ID: primitive hash index, O(1)</li>
+ * <li>seat: doubly linked list through the records, headed per seat</li>
+ * <li>from/to pair: doubly linked list headed per station pair</li>
+ * <li>passenger name prefix: sorted index over distinct names, each heading a list of its tickets</li>
+ * </ul>
+ * Adds and removes link or unlink each list in O(1), and keep the {@link SalesTotals} per station
+ * pair up to date along with its list. A record is written and linked while holding
+ * its seat's lock stripe, then its route's and name's locks, always in that order.
+ *
+ * Passenger names are interned for the life of the store; the pool grows with distinct names, not
+ * with tickets.
+ *
+ * There is one store per departure, so an empty store stays small: the chunk directories and the
+ * name table start tiny and double as tickets and names arrive.
+ */
+class TicketStore {
+
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 20;
+    private static final int NONE = -1;
+
+    // Longs per record
+    private static final int LONGS = 4;
+    private static final int NUMBER = 0;
+    private static final int BOOKED_ON = 1;
+    private static final int PRICE_NAME = 2;   // price paise << 32 | name ID
+    private static final int SEAT_TRIP = 3;    // seat key << 32 | from << 24 | to << 16 | age << 8 | live
+
+    // Ints per record
+    private static final int INTS = 6;
+    private static final int SEAT_PREV = 0;
+    private static final int SEAT_NEXT = 1;
+    private static final int ROUTE_PREV = 2;
+    private static final int ROUTE_NEXT = 3;
+    private static final int NAME_PREV = 4;
+    private static final int NAME_NEXT = 5;
+
+    private final SeatInventory seats;
+    private final String[] stations;
+
+    // Chunk directories; chunks are installed and directories regrown only under chunkLock
+    private final Object chunkLock = new Object();
+    private volatile long[][] longChunks = new long[1][];
+    private volatile int[][] intChunks = new int[1][];
+    private final AtomicInteger highWater = new AtomicInteger();
+    private final AtomicInteger live = new AtomicInteger();
+    private int[] freeSlots = new int[64];
+    private int freeCount;
+
+    private final LongIntMap byId = new LongIntMap();
+
+    // List heads: per seat (guarded by the seat stripe), per station pair, per distinct name
+    private final int[][] seatHead;
+    private final Object[] seatLocks = new Object[64];
+    private final int[] routeHead;
+    private final Object[] routeLocks;
+    private final Map<String, Name> names = new ConcurrentHashMap<>();
+    // Indexed by name ID; regrown under the names lock
+    private volatile Name[] namesById = new Name[16];
+    private final AtomicInteger nameCounter = new AtomicInteger();
+    private final ConcurrentSkipListMap<String, Name> byName = new ConcurrentSkipListMap<>();
+    // Kept per station pair under the pair's lock, with its list head
+    private final SalesTotals sales;
+
+    TicketStore(SeatInventory seats, String[] stations) {
+        this.seats = seats;
+        this.stations = stations;
+        seatHead = new int[seats.coachCount()][];
+        for (int c = 0; c < seatHead.length; c++) {
+            seatHead[c] = new int[seats.seatCount(c)];
+            Arrays.fill(seatHead[c], NONE);
+        }
+        for (int i = 0; i < seatLocks.length; i++)
+            seatLocks[i] = new Object();
+        routeHead = new int[stations.length * stations.length];
+        Arrays.fill(routeHead, NONE);
+        routeLocks = new Object[routeHead.length];
+        for (int i = 0; i < routeLocks.length; i++)
+            routeLocks[i] = new Object();
+        String[] coaches = new String[seats.coachCount()];
+        for (int c = 0; c < coaches.length; c++)
+            coaches[c] = seats.coachName(c);
+        sales = new SalesTotals(stations, coaches);
+    }
+
+    // ---------- Writes ----------
+
+    /** Stores a new ticket and returns a view of it. Throws IllegalStateException if its number is stored already. */
+    Ticket add(long number, String name, int age, int seatKey, int from, int to, long pricePaise, long bookedOn) {
+        int slot = insert(number, name, age, seatKey, from, to, pricePaise, bookedOn);
+        if (slot == NONE)
+            throw new IllegalStateException("Duplicate ticket ID " + TicketIds.format(number));
+        return view(slot);
+    }
+
+    /**
+     * Stores a ticket rebuilt from the journal. Null if its seat or stations are unknown or its ID is
+     * stored already.
+     */
+    Ticket add(Ticket t) {
+        int seatKey = seats.parse(t.seat);
+        int from = stationIndex(t.from);
+        int to = stationIndex(t.to);
+        long number = TicketIds.parse(t.ticketId);
+        if (seatKey < 0 || from < 0 || to < 0 || number < 0)
+            return null;
+        int slot = insert(number, t.name, t.age, seatKey, from, to, t.pricePaise(), t.bookedOn.getTime());
+        return slot == NONE ? null : view(slot);
+    }
+
+    // The new record's slot, or NONE with nothing stored if the number is taken
+    private int insert(long number, String name, int age, int seatKey, int from, int to, long pricePaise, long bookedOn) {
+        Name n = intern(name);
+        int slot = allocate();
+        long[] l = longChunk(slot);
+        int lo = (slot & (CHUNK - 1)) * LONGS;
+        int io = (slot & (CHUNK - 1)) * INTS;
+        int route = from * stations.length + to;
+        int hour = SalesTotals.hourOf(bookedOn);
+        synchronized (seatLock(seatKey)) {
+            l[lo + NUMBER] = number;
+            l[lo + BOOKED_ON] = bookedOn;
+            l[lo + PRICE_NAME] = (pricePaise << 32) | n.id;
+            // Masked, so an age the byte cannot hold never spills into the seat or stations
+            l[lo + SEAT_TRIP] = ((long) seatKey << 32) | ((long) from << 24) | ((long) to << 16)
+                    | ((long) (age & 0xFF) << 8) | 1;
+            int[] heads = seatHead[SeatInventory.coachOf(seatKey)];
+            int seatIdx = SeatInventory.indexOf(seatKey);
+            heads[seatIdx] = link(slot, heads[seatIdx], io, SEAT_PREV, SEAT_NEXT);
+            synchronized (routeLocks[route]) {
+                routeHead[route] = link(slot, routeHead[route], io, ROUTE_PREV, ROUTE_NEXT);
+                sales.add(route, SeatInventory.coachOf(seatKey), pricePaise, age, hour, 1);
+            }
+            synchronized (n) {
+                n.head = link(slot, n.head, io, NAME_PREV, NAME_NEXT);
+            }
+            if (!byId.putIfAbsent(number, slot)) {
+                // Not live before the slot is reused, or all() would list it under the other ticket's number
+                unlinkAll(slot);
+                l[lo + SEAT_TRIP] = 0L;
+                release(slot);
+                return NONE;
+            }
+        }
+        live.incrementAndGet();
+        return slot;
+    }
+
+    /** Removes a ticket from every index. False if it was not (or no longer) stored. */
+    boolean remove(Ticket t) {
+        long number = TicketIds.parse(t.ticketId);
+        int seatKey = seats.parse(t.seat);
+        if (number < 0 || seatKey < 0)
+            return false;
+        synchronized (seatLock(seatKey)) {
+            int slot = byId.get(number);
+            if (slot == NONE || seatKeyOf(slot) != seatKey)
+                return false;
+            byId.remove(number);
+            unlinkAll(slot);
+            longChunk(slot)[(slot & (CHUNK - 1)) * LONGS + SEAT_TRIP] = 0L;
+            release(slot);
+        }
+        live.decrementAndGet();
+        return true;
+    }
+
+    void clear() {
+        for (Ticket t : all())
+            remove(t);
+    }
+
+    // ---------- Lookups ----------
+
+    Ticket byId(String ticketId) {
+        long number = TicketIds.parse(ticketId);
+        int slot = number < 0 ? NONE : byId.get(number);
+        return slot == NONE ? null : viewIfStill(slot, number);
+    }
+
+    List<Ticket> bySeat(String seatId) {
+        int seatKey = seats.parse(seatId);
+        if (seatKey < 0)
+            return Collections.emptyList();
+        synchronized (seatLock(seatKey)) {
+            return collect(seatHead[SeatInventory.coachOf(seatKey)][SeatInventory.indexOf(seatKey)], SEAT_NEXT);
+        }
+    }
+
+    /** Tickets whose passenger name starts with {@code prefix}, ignoring case, sorted by name. */
+    List<Ticket> byNamePrefix(String prefix) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        List<Ticket> out = new ArrayList<>();
+        for (Name n : byName.subMap(from, true, from + Character.MAX_VALUE, true).values()) {
+            synchronized (n) {
+                out.addAll(collect(n.head, NAME_NEXT));
+            }
+        }
+        return out;
+    }
+
+    List<Ticket> byRoute(String from, String to) {
+        int a = stationIndex(from);
+        int b = stationIndex(to);
+        if (a < 0 || b < 0)
+            return Collections.emptyList();
+        int route = a * stations.length + b;
+        synchronized (routeLocks[route]) {
+            return collect(routeHead[route], ROUTE_NEXT);
+        }
+    }
+
+    /** Snapshot of all tickets in booking order. Tickets booked or cancelled meanwhile may be missed. */
+    List<Ticket> all() {
+        List<long[]> found = new ArrayList<>(live.get());
+        int top = highWater.get();
+        for (int slot = 0; slot < top; slot++) {
+            long[] l = longChunk(slot);
+            if (l == null)
+                break;
+            int lo = (slot & (CHUNK - 1)) * LONGS;
+            if ((l[lo + SEAT_TRIP] & 0xFF) != 0)
+                found.add(new long[] {l[lo + BOOKED_ON], l[lo + NUMBER], slot});
+        }
+        found.sort(Comparator.<long[]>comparingLong(f -> f[0]).thenComparingLong(f -> f[1]));
+        List<Ticket> out = new ArrayList<>(found.size());
+        for (long[] f : found) {
+            Ticket t = viewIfStill((int) f[2], f[1]);
+            if (t != null)
+                out.add(t);
+        }
+        return out;
+    }
+
+    /**
+     * Passes every live ticket to {@code action}, coach by coach and seat by seat, a seat's legs in
+     * route order. Only one seat's tickets are held at a time, so a whole manifest streams in constant
+     * memory. Tickets booked or cancelled meanwhile may be missed.
+     */
+    void forEachBySeat(Consumer<Ticket> action) {
+        for (int c = 0; c < seatHead.length; c++) {
+            int[] heads = seatHead[c];
+            for (int s = 0; s < heads.length; s++) {
+                List<Ticket> legs;
+                synchronized (seatLock(SeatInventory.key(c, s))) {
+                    if (heads[s] == NONE)
+                        continue;
+                    legs = collect(heads[s], SEAT_NEXT);
+                }
+                if (legs.size() > 1)
+                    legs.sort(Comparator.comparingInt(t -> stationIndex(t.from)));
+                legs.forEach(action);
+            }
+        }
+    }
+
+    /** Revenue and ticket totals of the stored tickets, copied without visiting any ticket. */
+    SalesTotals.Report sales() {
+        SalesTotals.Report r = new SalesTotals.Report(sales);
+        for (int route = 0; route < routeLocks.length; route++) {
+            synchronized (routeLocks[route]) {
+                r.copyRow(sales, route);
+            }
+        }
+        return r;
+    }
+
+    int size() {
+        return live.get();
+    }
+
+    // ---------- Records ----------
+
+    private Ticket view(int slot) {
+        long[] l = longChunk(slot);
+        int lo = (slot & (CHUNK - 1)) * LONGS;
+        long priceName = l[lo + PRICE_NAME];
+        long trip = l[lo + SEAT_TRIP];
+        int seatKey = (int) (trip >>> 32);
+        return new Ticket(TicketIds.format(l[lo + NUMBER]), namesById[(int) priceName].name, (int) (trip >>> 8) & 0xFF,
+                seats.seatId(seatKey), seats.coachName(SeatInventory.coachOf(seatKey)),
+                stations[(int) (trip >>> 24) & 0xFF], stations[(int) (trip >>> 16) & 0xFF],
+                (priceName >>> 32) / 100.0, new Date(l[lo + BOOKED_ON]));
+    }
+
+    // Reads the record under its seat lock, unless it was removed (and maybe reused) since we found it
+    private Ticket viewIfStill(int slot, long number) {
+        int seatKey = seatKeyOf(slot);
+        synchronized (seatLock(seatKey)) {
+            long[] l = longChunk(slot);
+            int lo = (slot & (CHUNK - 1)) * LONGS;
+            if (l[lo + NUMBER] != number || (l[lo + SEAT_TRIP] & 0xFF) == 0 || seatKeyOf(slot) != seatKey)
+                return null;
+            return view(slot);
+        }
+    }
+
+    private int seatKeyOf(int slot) {
+        return (int) (longChunk(slot)[(slot & (CHUNK - 1)) * LONGS + SEAT_TRIP] >>> 32);
+    }
+
+    private List<Ticket> collect(int head, int nextField) {
+        List<Ticket> out = new ArrayList<>();
+        for (int slot = head; slot != NONE; slot = intChunk(slot)[(slot & (CHUNK - 1)) * INTS + nextField])
+            out.add(view(slot));
+        return out;
+    }
+
+    // Pushes slot onto the front of a list; returns the new head
+    private int link(int slot, int head, int io, int prevField, int nextField) {
+        int[] i = intChunk(slot);
+        i[io + prevField] = NONE;
+        i[io + nextField] = head;
+        if (head != NONE)
+            intChunk(head)[(head & (CHUNK - 1)) * INTS + prevField] = slot;
+        return slot;
+    }
+
+    // Caller holds the seat lock
+    private void unlinkAll(int slot) {
+        long[] l = longChunk(slot);
+        int lo = (slot & (CHUNK - 1)) * LONGS;
+        long trip = l[lo + SEAT_TRIP];
+        int seatKey = (int) (trip >>> 32);
+        int[] heads = seatHead[SeatInventory.coachOf(seatKey)];
+        int seatIdx = SeatInventory.indexOf(seatKey);
+        heads[seatIdx] = unlink(slot, heads[seatIdx], SEAT_PREV, SEAT_NEXT);
+        int route = (int) ((trip >>> 24) & 0xFF) * stations.length + (int) ((trip >>> 16) & 0xFF);
+        int hour = SalesTotals.hourOf(l[lo + BOOKED_ON]);
+        synchronized (routeLocks[route]) {
+            routeHead[route] = unlink(slot, routeHead[route], ROUTE_PREV, ROUTE_NEXT);
+            sales.add(route, SeatInventory.coachOf(seatKey), l[lo + PRICE_NAME] >>> 32, (int) ((trip >>> 8) & 0xFF),
+                    hour, -1);
+        }
+        Name n = namesById[(int) l[lo + PRICE_NAME]];
+        synchronized (n) {
+            n.head = unlink(slot, n.head, NAME_PREV, NAME_NEXT);
+        }
+    }
+
+    // Removes slot from a list; returns the new head
+    private int unlink(int slot, int head, int prevField, int nextField) {
+        int[] i = intChunk(slot);
+        int io = (slot & (CHUNK - 1)) * INTS;
+        int prev = i[io + prevField];
+        int next = i[io + nextField];
+        if (prev != NONE)
+            intChunk(prev)[(prev & (CHUNK - 1)) * INTS + nextField] = next;
+        else
+            head = next;
+        if (next != NONE)
+            intChunk(next)[(next & (CHUNK - 1)) * INTS + prevField] = prev;
+        return head;
+    }
+
+    private int allocate() {
+        synchronized (this) {
+            if (freeCount > 0)
+                return freeSlots[--freeCount];
+        }
+        int slot = highWater.getAndIncrement();
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk >= MAX_CHUNKS)
+            throw new IllegalStateException("Ticket store full");
+        // Every thread landing in a new chunk makes sure both halves exist before using it
+        if (longChunk(slot) == null || intChunk(slot) == null)
+            installChunk(chunk);
+        return slot;
+    }
+
+    private void installChunk(int chunk) {
+        synchronized (chunkLock) {
+            long[][] longDir = longChunks;
+            int[][] intDir = intChunks;
+            if (chunk >= longDir.length) {
+                int size = Math.min(MAX_CHUNKS, Math.max(longDir.length * 2, chunk + 1));
+                longDir = Arrays.copyOf(longDir, size);
+                intDir = Arrays.copyOf(intDir, size);
+            }
+            if (longDir[chunk] == null)
+                longDir[chunk] = new long[CHUNK * LONGS];
+            if (intDir[chunk] == null)
+                intDir[chunk] = new int[CHUNK * INTS];
+            // Volatile writes publish the new chunks, even when the directories were not regrown
+            longChunks = longDir;
+            intChunks = intDir;
+        }
+    }
+
+    private synchronized void release(int slot) {
+        if (freeCount == freeSlots.length)
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    // Null if the slot's chunk is not installed yet
+    private long[] longChunk(int slot) {
+        long[][] dir = longChunks;
+        int chunk = slot >>> CHUNK_BITS;
+        return chunk < dir.length ? dir[chunk] : null;
+    }
+
+    private int[] intChunk(int slot) {
+        int[][] dir = intChunks;
+        int chunk = slot >>> CHUNK_BITS;
+        return chunk < dir.length ? dir[chunk] : null;
+    }
+
+    private Object seatLock(int seatKey) {
+        return seatLocks[(seatKey * 0x9E3779B9 >>> 26) & (seatLocks.length - 1)];
+    }
+
+    private int stationIndex(String station) {
+        for (int s = 0; s < stations.length; s++) {
+            if (stations[s].equals(station))
+                return s;
+        }
+        return -1;
+    }
+
+    private Name intern(String name) {
+        Name n = names.get(name);
+        if (n != null)
+            return n;
+        synchronized (names) {
+            n = names.get(name);
+            if (n == null) {
+                n = new Name(nameCounter.getAndIncrement(), name);
+                Name[] table = namesById;
+                if (n.id == table.length)
+                    table = Arrays.copyOf(table, table.length * 2);
+                table[n.id] = n;
+                namesById = table;
+                byName.put(name.toLowerCase(Locale.ROOT) + '\u0000' + n.id, n);
+                names.put(name, n);
+            }
+            return n;
+        }
+    }
+
+    // ---------- Types ----------
+
+    private static final class Name {
+        final int id;
+        final String name;
+        int head = NONE;
+
+        Name(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Open-addressing long -> int map, split into independently locked segments so concurrent
+     * bookings rarely meet. About 12 bytes per entry at the default load factor.
+     */
+    private static final class LongIntMap {
+        private static final long EMPTY = Long.MIN_VALUE;
+        private static final long DELETED = Long.MIN_VALUE + 1;
+
+        private final Segment[] segments = new Segment[64];
+
+        LongIntMap() {
+            for (int i = 0; i < segments.length; i++)
+                segments[i] = new Segment();
+        }
+
+        boolean putIfAbsent(long key, int value) {
+            return segment(key).putIfAbsent(key, value);
+        }
+
+        int get(long key) {
+            return segment(key).get(key);
+        }
+
+        void remove(long key) {
+            segment(key).remove(key);
+        }
+
+        private Segment segment(long key) {
+            return segments[(int) (mix(key) >>> 58)];
+        }
+
+        private static long mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 29);
+        }
+
+        private static final class Segment {
+            private long[] keys = newKeys(16);
+            private int[] values = new int[16];
+            private int used; // live keys + tombstones
+            private int size;
+
+            synchronized boolean putIfAbsent(long key, int value) {
+                if ((used + 1) * 4 >= keys.length * 3)
+                    rehash(size * 2 >= keys.length ? keys.length * 2 : keys.length);
+                int mask = keys.length - 1;
+                int tomb = -1;
+                for (int i = (int) mix(key) & mask;; i = (i + 1) & mask) {
+                    long k = keys[i];
+                    if (k == key)
+                        return false;
+                    if (k == DELETED && tomb < 0)
+                        tomb = i;
+                    if (k == EMPTY) {
+                        int at = tomb >= 0 ? tomb : i;
+                        if (tomb < 0)
+                            used++;
+                        keys[at] = key;
+                        values[at] = value;
+                        size++;
+                        return true;
+                    }
+                }
+            }
+
+            synchronized int get(long key) {
+                int mask = keys.length - 1;
+                for (int i = (int) mix(key) & mask;; i = (i + 1) & mask) {
+                    long k = keys[i];
+                    if (k == key)
+                        return values[i];
+                    if (k == EMPTY)
+                        return NONE;
+                }
+            }
+
+            synchronized void remove(long key) {
+                int mask = keys.length - 1;
+                for (int i = (int) mix(key) & mask;; i = (i + 1) & mask) {
+                    long k = keys[i];
+                    if (k == key) {
+                        keys[i] = DELETED;
+                        size--;
+                        return;
+                    }
+                    if (k == EMPTY)
+                        return;
+                }
+            }
+
+            private void rehash(int capacity) {
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                keys = newKeys(capacity);
+                values = new int[capacity];
+                used = 0;
+                int mask = capacity - 1;
+                for (int j = 0; j < oldKeys.length; j++) {
+                    long k = oldKeys[j];
+                    if (k == EMPTY || k == DELETED)
+                        continue;
+                    int i = (int) mix(k) & mask;
+                    while (keys[i] != EMPTY)
+                        i = (i + 1) & mask;
+                    keys[i] = k;
+                    values[i] = oldValues[j];
+                    used++;
+                }
+            }
+
+            private static long[] newKeys(int capacity) {
+                long[] k = new long[capacity];
+                Arrays.fill(k, EMPTY);
+                return k;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A train's fixed configuration: its number and name, route with distances, coaches with their
+ * whole-route fares, and the weekdays it runs. Bookings are made against one run of it, see
+ * {@link Departures}.
+ */
+class Train {
+
+    final String number;
+    final String name;
+    final String[] stations;
+    // Kilometres of each station from a common origin, for distance-based fares
+    final int[] stationKm;
+    final Map<String, Integer> coachSeatCount;
+    final Map<String, Integer> coachPrice;
+    private final Set<DayOfWeek> runsOn;
+
+    Train(String number, String name, String[] stations, int[] stationKm, Map<String, Integer> coachSeatCount,
+            Map<String, Integer> coachPrice, Set<DayOfWeek> runsOn) {
+        if (stationKm.length != stations.length)
+            throw new IllegalArgumentException("Need one distance per station");
+        this.number = number;
+        this.name = name;
+        this.stations = stations.clone();
+        this.stationKm = stationKm.clone();
+        this.coachSeatCount = Collections.unmodifiableMap(new LinkedHashMap<>(coachSeatCount));
+        this.coachPrice = Collections.unmodifiableMap(new LinkedHashMap<>(coachPrice));
+        this.runsOn = EnumSet.copyOf(runsOn);
+    }
+
+    /** Runs every day of the week. */
+    Train(String number, String name, String[] stations, int[] stationKm, Map<String, Integer> coachSeatCount,
+            Map<String, Integer> coachPrice) {
+        this(number, name, stations, stationKm, coachSeatCount, coachPrice, EnumSet.allOf(DayOfWeek.class));
+    }
+
+    /** Runs every day, with every station the same distance from the next. */
+    Train(String number, String name, String[] stations, Map<String, Integer> coachSeatCount,
+            Map<String, Integer> coachPrice) {
+        this(number, name, stations, FareTable.evenlySpaced(stations.length), coachSeatCount, coachPrice);
+    }
+
+    boolean runsOn(LocalDate date) {
+        return runsOn.contains(date.getDayOfWeek());
+    }
+
+    /** A fresh, empty booking engine for one run of this train. */
+    BookingEngine newEngine() {
+        return newEngine(TicketIds.local());
+    }
+
+    /** An engine whose ticket numbers come from {@code ids}, e.g. one booking node's. */
+    BookingEngine newEngine(TicketIds ids) {
+        return new BookingEngine(coachSeatCount, stations, new FareTable(coachSeatCount, coachPrice, stationKm), ids);
+    }
+
+    @Override
+    public String toString() {
+        return number + " " + name;
+    }
+}
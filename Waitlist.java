@@ -0,0 +1,258 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passengers waiting for a seat on one departure, queued per coach in joining order.
+ *
+ * The first {@link #RAC_PER_COACH} passengers of a coach's queue are shown as RAC (reservation
+ * against cancellation), the rest as WL. Both are promoted the same way: when segments of a seat
+ * come free, the earliest passengers whose whole journey fits into them get the seat.
+ *
+ * Within a coach, entries are also bucketed by journey (segment range), each bucket a TreeMap keyed
+ * by joining order. Finding who to promote into a freed seat is then one {@code firstEntry} per
+ * journey that fits, O(log n) each, however long the queue is. Callers lock a coach's queue with
+ * {@link #lock(int)} for anything that reads and then removes.
+ *
+ * A passenger's place in the coach's queue ({@link #status}) comes from a Fenwick tree over the
+ * coach's joining order holding 1 for everyone still waiting: a prefix sum, O(log n), read without
+ * the lock, so asking for a status never waits behind a burst of promotions.
+ */
+class Waitlist {
+
+    static final int RAC_PER_COACH = 4;
+
+    private final int segments;
+    private final CoachQueue[] queues;
+    // Waiting passengers per coach; read without the lock to skip empty coaches quickly
+    private final AtomicIntegerArray waiting;
+    private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+    private final AtomicLong nextSeq = new AtomicLong();
+
+    Waitlist(int coachCount, int segments) {
+        this.segments = segments;
+        this.queues = new CoachQueue[coachCount];
+        for (int c = 0; c < coachCount; c++)
+            queues[c] = new CoachQueue();
+        this.waiting = new AtomicIntegerArray(coachCount);
+    }
+
+    Object lock(int coach) {
+        return queues[coach];
+    }
+
+    boolean isEmpty(int coach) {
+        return waiting.get(coach) == 0;
+    }
+
+    /** Queues a passenger (a ticket without a seat) at the back. Caller holds the coach lock. */
+    void add(int coach, Ticket t, int fromSeg, int toSeg) {
+        Entry e = new Entry(nextSeq.getAndIncrement(), coach, t, fromSeg, toSeg);
+        queues[coach].join(e);
+        queues[coach].put(rangeIndex(fromSeg, toSeg), e);
+        byId.put(t.ticketId, e);
+        waiting.incrementAndGet(coach);
+    }
+
+    /** Takes a passenger off the queue. Caller holds the coach lock. */
+    boolean remove(Entry e) {
+        if (!byId.remove(e.ticket.ticketId, e))
+            return false;
+        CoachQueue q = queues[e.coach];
+        int r = rangeIndex(e.fromSeg, e.toSeg);
+        TreeMap<Long, Entry> bucket = q.buckets[r];
+        bucket.remove(e.seq);
+        if (bucket.isEmpty())
+            q.active.clear(r);
+        Slot s = e.slot;
+        s.ranks.add(s.index, -1);
+        waiting.decrementAndGet(e.coach);
+        return true;
+    }
+
+    Entry get(String ticketId) {
+        return byId.get(ticketId);
+    }
+
+    /**
+     * The passengers to promote into a seat whose free segments are {@code freeSegments}: repeatedly
+     * the earliest-queued passenger whose journey still fits. Nothing is removed, since the caller
+     * may lose the seat before it can claim it. Caller holds the coach lock.
+     */
+    List<Entry> pick(int coach, long freeSegments) {
+        CoachQueue q = queues[coach];
+        List<Entry> picked = new ArrayList<>(2);
+        BitSet candidates = (BitSet) q.active.clone();
+        long free = freeSegments;
+        while (free != 0) {
+            Entry best = null;
+            for (int r = candidates.nextSetBit(0); r >= 0; r = candidates.nextSetBit(r + 1)) {
+                Entry head = q.buckets[r].firstEntry().getValue();
+                if ((head.mask & ~free) != 0)
+                    candidates.clear(r); // free segments only shrink, so it will not fit later either
+                else if (best == null || head.seq < best.seq)
+                    best = head;
+            }
+            if (best == null)
+                break;
+            picked.add(best);
+            free &= ~best.mask;
+            // Everyone else in that bucket needs the same segments, which are now taken
+            candidates.clear(rangeIndex(best.fromSeg, best.toSeg));
+        }
+        return picked;
+    }
+
+    /** "RAC n" or "WL n" for a waiting passenger, or null if the ticket is not waiting. */
+    String status(String ticketId) {
+        Entry e = byId.get(ticketId);
+        if (e == null)
+            return null;
+        Slot s = e.slot;
+        // At least 1 should the passenger be promoted or leave while we count
+        int position = Math.max(1, s.ranks.waitingUpTo(s.index));
+        return position <= RAC_PER_COACH ? "RAC " + position : "WL " + (position - RAC_PER_COACH);
+    }
+
+    /** Every waiting passenger, in joining order. */
+    List<Ticket> all() {
+        List<Entry> entries = new ArrayList<>(byId.values());
+        entries.sort(Comparator.comparingLong(e -> e.seq));
+        List<Ticket> out = new ArrayList<>(entries.size());
+        for (Entry e : entries)
+            out.add(e.ticket);
+        return out;
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    void clear() {
+        for (Entry e : byId.values()) {
+            synchronized (lock(e.coach)) {
+                remove(e);
+            }
+        }
+    }
+
+    private int rangeIndex(int fromSeg, int toSeg) {
+        return fromSeg * (segments + 1) + toSeg;
+    }
+
+    static long segmentMask(int fromSeg, int toSeg) {
+        return ((1L << (toSeg - fromSeg)) - 1) << fromSeg;
+    }
+
+    // ---------- Types ----------
+
+    static final class Entry {
+        final long seq;
+        final int coach;
+        final Ticket ticket;
+        final int fromSeg;
+        final int toSeg;
+        final long mask;
+        // Place in the coach's joining order; replaced when the coach's ranks are rebuilt
+        volatile Slot slot;
+
+        Entry(long seq, int coach, Ticket ticket, int fromSeg, int toSeg) {
+            this.seq = seq;
+            this.coach = coach;
+            this.ticket = ticket;
+            this.fromSeg = fromSeg;
+            this.toSeg = toSeg;
+            this.mask = segmentMask(fromSeg, toSeg);
+        }
+    }
+
+    private static final int INITIAL_RANKS = 16;
+
+    /**
+     * A Fenwick tree with one slot per passenger who joined a coach's queue, 1 while they wait and 0
+     * once they leave. Written under the coach lock; read without it.
+     */
+    private static final class Ranks {
+        // 1-based, as Fenwick trees are
+        final AtomicIntegerArray tree;
+        // Slots handed out so far
+        int joined;
+
+        Ranks(int capacity) {
+            tree = new AtomicIntegerArray(capacity + 1);
+        }
+
+        int capacity() {
+            return tree.length() - 1;
+        }
+
+        /** Caller holds the coach lock, so there is a single writer. */
+        void add(int slot, int delta) {
+            for (int i = slot + 1; i < tree.length(); i += i & -i)
+                tree.set(i, tree.get(i) + delta);
+        }
+
+        /** Passengers still waiting who joined no later than {@code slot}. */
+        int waitingUpTo(int slot) {
+            int n = 0;
+            for (int i = slot + 1; i > 0; i -= i & -i)
+                n += tree.get(i);
+            return n;
+        }
+    }
+
+    // Ranks, not just an index, so a status read during a rebuild counts in one tree throughout
+    private static final class Slot {
+        final Ranks ranks;
+        final int index;
+
+        Slot(Ranks ranks, int index) {
+            this.ranks = ranks;
+            this.index = index;
+        }
+    }
+
+    private final class CoachQueue {
+        // Per journey, by joining order; created on first use
+        final TreeMap<Long, Entry>[] buckets;
+        // Journeys with at least one waiting passenger
+        final BitSet active = new BitSet();
+        // Who of this coach is still waiting, by joining order
+        Ranks ranks = new Ranks(INITIAL_RANKS);
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        CoachQueue() {
+            buckets = new TreeMap[(segments + 1) * (segments + 1)];
+        }
+
+        void put(int r, Entry e) {
+            if (buckets[r] == null)
+                buckets[r] = new TreeMap<>();
+            buckets[r].put(e.seq, e);
+            active.set(r);
+        }
+
+        /** Gives a new passenger the next slot in joining order, first making room if the slots have run out. */
+        void join(Entry e) {
+            if (ranks.joined == ranks.capacity())
+                rebuild();
+            e.slot = new Slot(ranks, ranks.joined++);
+            ranks.add(e.slot.index, 1);
+        }
+
+        // Numbers the waiting passengers afresh into a tree twice their count, dropping slots of those gone
+        private void rebuild() {
+            List<Entry> live = new ArrayList<>();
+            for (int r = active.nextSetBit(0); r >= 0; r = active.nextSetBit(r + 1))
+                live.addAll(buckets[r].values());
+            live.sort(Comparator.comparingLong(e -> e.seq));
+            Ranks fresh = new Ranks(Math.max(INITIAL_RANKS, 2 * live.size()));
+            for (Entry e : live) {
+                e.slot = new Slot(fresh, fresh.joined++);
+                fresh.add(e.slot.index, 1);
+            }
+            ranks = fresh;
+        }
+    }
+}
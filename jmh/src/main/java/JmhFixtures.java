@@ -0,0 +1,648 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import railway.jmh.Fixture;
+import railway.jmh.Footprint;
+
+/**
+ * The fixtures behind the JMH benchmarks in {@code railway.jmh}, by the names the benchmarks report
+ * them under. In the unnamed package so it can reach the app's classes.
+ *
+ * Booking fixtures start each batch on a fresh 100,000-seat departure (20 coaches of 5000 seats on
+ * the six-station demo route); lookups share one 30-station departure booked to about 60%.
+ */
+public final class JmhFixtures {
+
+    private static final String[] STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
+    private static final String FIRST = STATIONS[0];
+    private static final String LAST = STATIONS[STATIONS.length - 1];
+    private static final List<BookingEngine.Passenger> PARTY = party(50);
+
+    private JmhFixtures() {
+    }
+
+    public static Fixture of(String name) {
+        switch (name) {
+            // One seat per booking, as the booking window and the HTTP service do
+            case "book.single":
+                return booking(0, (e, i) -> e.tryClaim(seatOf(i, 5000), "Passenger", 30, FIRST, LAST)
+                        .isPresent() ? 1 : 0);
+            // Hold while the passenger dialog is open, then claim
+            case "book.held":
+                return booking(0, (e, i) -> e.tryClaim(e.hold(seatOf(i, 5000), FIRST, LAST), "Passenger", 30)
+                        .isPresent() ? 1 : 0);
+            // With an idempotency key: a new request each time, and a client retrying one already booked
+            case "book.idempotent":
+            case "book.idempotentRetry":
+                return idempotent(name.endsWith("Retry"));
+            // A 50-passenger party: one all-or-nothing group booking against 50 single bookings
+            case "book.group50":
+                return booking(0, (e, i) -> e.bookGroup(null, FIRST, LAST, PARTY, BookingEngine.SeatPreference.TOGETHER)
+                        .size());
+            case "book.oneByOne50":
+                return booking(0, (e, i) -> {
+                    long booked = 0;
+                    for (int p = 0; p < 50; p++) {
+                        if (e.tryClaim(seatOf(i * 50 + p, 5000), PARTY.get(p).name, 30, FIRST, LAST).isPresent())
+                            booked++;
+                    }
+                    return booked;
+                });
+            // Threads fighting over one 64-seat coach: random legs of random seats, a third cancelled again
+            case "book.contended":
+                return contended(64);
+            // Find the ticket on a seat, then cancel it, as the cancel window does
+            case "cancel.bySeat":
+                return booking(20_000, (e, i) -> e.cancel(e.ticketsForSeat(seatOf(i, 5000)).get(0)) ? 1 : 0);
+            // Random-order cancellation through the indexed ticket store, and through the ArrayList it replaced
+            case "cancel.random.20k":
+                return cancelRandom(20_000);
+            case "cancel.random.1m":
+                return cancelRandom(1_000_000);
+            case "cancel.arrayList.20k":
+                return cancelArrayList(20_000);
+            // A burst of cancellations on a full coach, each promoting the head of a same-size waitlist
+            case "waitlist.promoteBurst":
+                return promoteBurst(20_000);
+            case "ids.next":
+                TicketIds ids = new TicketIds(1);
+                return stateless(i -> ids.next());
+            case "availability.coach":
+            case "availability.allCoaches":
+            case "report.salesTotals":
+            case "report.scanTickets":
+            case "seat.isAvailable":
+            case "seat.inventoryLookup":
+            case "seat.legacyMap":
+                return lookup(name);
+            case "allocate.95pctFull":
+                return allocate95pctFull();
+            case "fare.quote":
+                return fareQuote();
+            case "journal.group50":
+                return journaled(5000, (e, i) -> e.bookGroup(null, FIRST, LAST, PARTY,
+                        BookingEngine.SeatPreference.TOGETHER).size());
+            case "journal.oneByOne50":
+                return journaled(5000, (e, i) -> {
+                    long booked = 0;
+                    for (int p = 0; p < 50; p++) {
+                        if (e.tryClaim(seatOf(i * 50 + p, 5000), PARTY.get(p).name, 30, FIRST, LAST).isPresent())
+                            booked++;
+                    }
+                    return booked;
+                });
+            // Durable bookings from many threads sharing group commits; the threads share one count of i
+            case "journal.book32":
+                return journaled(50_000, (e, i) -> e.tryClaim(seatOf(i, 50_000), "Passenger", 30, FIRST, LAST)
+                        .isPresent() ? 1 : 0);
+            case "journal.recover":
+                return recovery();
+            case "render.ticketPage":
+                return ticketPage();
+            case "export.csv":
+            case "export.pdf":
+            case "export.png":
+                return export(name.substring("export.".length()));
+            default:
+                throw new IllegalArgumentException("No fixture " + name);
+        }
+    }
+
+    /**
+     * Memory of the seat inventory and of the map it replaced, for a 1M-seat fleet; of 1M tickets in
+     * the ticket store and as the Ticket objects and seat map it replaced; and what one engine's
+     * idempotency cache holds on to after a flood of requests, each with a new key.
+     */
+    public static Footprint footprint(String name) {
+        switch (name) {
+            case "footprint.seatInventory":
+                return Footprint.of(20 * 50_000, () -> {
+                    SeatInventory inv = new SeatInventory(coaches(20, 50_000), STATIONS.length);
+                    // Coaches are allocated on their first booking
+                    for (int c = 0; c < 20; c++) {
+                        inv.claim(SeatInventory.key(c, 0), 0, 1);
+                        inv.free(SeatInventory.key(c, 0), 0, 1);
+                    }
+                    return inv;
+                });
+            case "footprint.legacySeatMap":
+                return Footprint.of(20 * 50_000, () -> legacySeatMap(20, 50_000));
+            case "footprint.tickets":
+                return ticketStore(20, 50_000);
+            case "footprint.ticketObjects":
+                return Footprint.of(20 * 50_000, () -> legacyTickets(20, 50_000));
+            // Retained heap should level off at the budget however many requests pass through
+            case "footprint.idempotency250k":
+                return idempotencyFlood(250_000);
+            case "footprint.idempotency2000k":
+                return idempotencyFlood(2_000_000);
+            default:
+                throw new IllegalArgumentException("No footprint " + name);
+        }
+    }
+
+    // ---------- Booking and cancelling ----------
+
+    private interface EngineOp {
+        long run(BookingEngine e, int i);
+    }
+
+    // A fresh 20 x 5000-seat departure per batch, its first seats booked off the clock
+    private static Fixture booking(int booked, EngineOp op) {
+        return new Fixture() {
+            private BookingEngine engine;
+
+            @Override
+            public void reset() {
+                engine = engine(20, 5000);
+                bookAll(engine, booked);
+            }
+
+            @Override
+            public long run(int i) {
+                return op.run(engine, i);
+            }
+        };
+    }
+
+    private static Fixture idempotent(boolean retry) {
+        return new Fixture() {
+            private BookingEngine engine;
+            private String[] keys;
+
+            @Override
+            public void reset() {
+                engine = engine(20, 5000);
+                keys = new String[4096];
+                for (int i = 0; i < keys.length; i++)
+                    keys[i] = UUID.randomUUID().toString();
+                if (retry) {
+                    for (int i = 0; i < keys.length; i++)
+                        engine.tryClaim(keys[i], seatOf(i, 5000), "Passenger", 30, FIRST, LAST).orElseThrow();
+                }
+            }
+
+            @Override
+            public long run(int i) {
+                int k = retry ? i & 4095 : i;
+                return engine.tryClaim(keys[k], seatOf(k, 5000), "Passenger", 30, FIRST, LAST).isPresent() ? 1 : 0;
+            }
+        };
+    }
+
+    // Shared by every thread of a benchmark, so each draws from its own random source
+    private static Fixture contended(int seats) {
+        BookingEngine e = new BookingEngine(Map.of("S1", seats), Map.of("S1", 500), STATIONS);
+        return stateless(i -> {
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            int from = r.nextInt(STATIONS.length - 1);
+            int to = from + 1 + r.nextInt(STATIONS.length - 1 - from);
+            Optional<Ticket> booked = e.tryClaim(BookingEngine.seatId("S1", 1 + r.nextInt(seats)), "Passenger", 30,
+                    STATIONS[from], STATIONS[to]);
+            if (booked.isPresent() && r.nextInt(3) == 0)
+                e.cancel(booked.get());
+            return booked.isPresent() ? 1 : 0;
+        });
+    }
+
+    private static Fixture cancelRandom(int tickets) {
+        return new Fixture() {
+            private BookingEngine engine;
+            private List<Ticket> order;
+
+            @Override
+            public void reset() {
+                engine = engine((tickets + 49_999) / 50_000, 50_000);
+                order = bookAll(engine, tickets);
+                Collections.shuffle(order, new Random(7));
+            }
+
+            @Override
+            public long run(int i) {
+                return engine.cancel(order.get(i)) ? 1 : 0;
+            }
+        };
+    }
+
+    private static Fixture cancelArrayList(int tickets) {
+        return new Fixture() {
+            private List<Ticket> list;
+            private List<Ticket> order;
+
+            @Override
+            public void reset() {
+                list = new ArrayList<>(bookAll(engine(1, tickets), tickets));
+                order = new ArrayList<>(list);
+                Collections.shuffle(order, new Random(7));
+            }
+
+            @Override
+            public long run(int i) {
+                return list.remove(order.get(i)) ? 1 : 0;
+            }
+        };
+    }
+
+    private static Fixture promoteBurst(int seats) {
+        return new Fixture() {
+            private BookingEngine engine;
+            private List<Ticket> booked;
+
+            @Override
+            public void reset() {
+                engine = new BookingEngine(Map.of("GEN", seats), Map.of("GEN", 500), STATIONS);
+                booked = bookAll(engine, seats);
+                for (int i = 0; i < seats; i++)
+                    engine.joinWaitlist("GEN", "Waiting " + i, 30, FIRST, LAST);
+            }
+
+            @Override
+            public long run(int i) {
+                return engine.cancel(booked.get(i)) ? 1 : 0;
+            }
+        };
+    }
+
+    // ---------- Lookups ----------
+
+    private interface Op {
+        long run(int i);
+    }
+
+    private static Fixture stateless(Op op) {
+        return new Fixture() {
+            @Override
+            public void reset() {
+            }
+
+            @Override
+            public long run(int i) {
+                return op.run(i);
+            }
+        };
+    }
+
+    // A 30-station route with 4 coaches of 1000 seats, booked on random journeys to about 60%
+    private static Fixture lookup(String name) {
+        String[] route = new String[30];
+        for (int i = 0; i < route.length; i++)
+            route[i] = "S" + i;
+        BookingEngine e = new BookingEngine(coaches(4, 1000), prices(4), route);
+        Random r = new Random(3);
+        for (int i = 0; i < 40_000; i++) {
+            int from = r.nextInt(route.length - 1);
+            int to = from + 1 + r.nextInt(Math.min(6, route.length - 1 - from));
+            e.tryClaim(BookingEngine.seatId("C" + (1 + r.nextInt(4)), 1 + r.nextInt(1000)), "Passenger", 30,
+                    route[from], route[to]);
+        }
+        int[][] journeys = new int[1024][];
+        for (int i = 0; i < journeys.length; i++) {
+            int from = r.nextInt(route.length - 1);
+            journeys[i] = new int[] {from, from + 1 + r.nextInt(route.length - 1 - from)};
+        }
+        String[] seatIds = new String[4096];
+        for (int i = 0; i < seatIds.length; i++)
+            seatIds[i] = BookingEngine.seatId("C" + (1 + (i & 3)), 1 + r.nextInt(1000));
+        switch (name) {
+            case "availability.coach":
+                return stateless(i -> {
+                    int[] j = journeys[i & 1023];
+                    return e.availableSeats("C" + (1 + (i & 3)), route[j[0]], route[j[1]]);
+                });
+            // Free seats and fares of every coach at once, as the booking window and /availability ask
+            case "availability.allCoaches":
+                return stateless(i -> {
+                    int[] j = journeys[i & 1023];
+                    return e.availability(route[j[0]], route[j[1]]).totalFree();
+                });
+            // Revenue of a departure with about 20,000 tickets: the running totals against summing every ticket
+            case "report.salesTotals":
+                return stateless(i -> e.sales().revenuePaise());
+            case "report.scanTickets":
+                return stateless(i -> {
+                    long paise = 0;
+                    for (Ticket t : e.tickets())
+                        paise += t.pricePaise();
+                    return paise;
+                });
+            // One seat by its "COACH-Sn" ID
+            case "seat.isAvailable":
+                return stateless(i -> e.isAvailable(seatIds[i & 4095], "S3", "S9") ? 1 : 0);
+            // What the legacy map answered, asked of the inventory: is this seat ID free for the whole run
+            case "seat.inventoryLookup":
+                SeatInventory inventory = new SeatInventory(coaches(4, 1000), route.length);
+                for (int i = 0; i < 4000; i += 2)
+                    inventory.claim(SeatInventory.key(i & 3, i >>> 2), 0, route.length - 1);
+                return stateless(i -> inventory.isAvailable(inventory.parse(seatIds[i & 4095]), 0, route.length - 1)
+                        ? 1 : 0);
+            default:
+                Map<String, Boolean> legacy = legacySeatMap(4, 1000);
+                return stateless(i -> legacy.get(seatIds[i & 4095]) ? 1 : 0);
+        }
+    }
+
+    // Seats together for a party of 1-4 in a 60,000-seat coach that is 95% full
+    private static Fixture allocate95pctFull() {
+        BookingEngine e = new BookingEngine(Map.of("GEN", 60_000), Map.of("GEN", 500), new String[] {"A", "B"});
+        Random r = new Random(1);
+        for (int i = 1; i <= 60_000; i++) {
+            if (r.nextInt(100) < 95)
+                e.tryClaim(BookingEngine.seatId("GEN", i), "Passenger", 30, "A", "B");
+        }
+        return stateless(i -> e.suggestSeats("GEN", "A", "B", 1 + (i & 3)).size());
+    }
+
+    // Fare lookups for random coaches, journeys, occupancy and ages
+    private static Fixture fareQuote() {
+        FareTable fares = new FareTable(coaches(4, 1000), prices(4), new int[] {0, 350, 1630, 2340, 3840, 5290});
+        FareEngine.Concession[] concessions = FareEngine.Concession.values();
+        return stateless(i -> {
+            int from = i % 5;
+            return fares.farePaise(i & 3, from, from + 1 + (i >>> 3) % (5 - from), (i * 31) % 1000,
+                    concessions[i % concessions.length]);
+        });
+    }
+
+    // ---------- Persistence ----------
+
+    // A fresh 20-coach departure with a journal in a new directory per batch
+    private static Fixture journaled(int seatsPerCoach, EngineOp op) {
+        return new Fixture() {
+            private Path dir;
+            private BookingJournal journal;
+            private BookingEngine engine;
+
+            @Override
+            public void reset() {
+                close();
+                try {
+                    dir = Files.createTempDirectory("railway-bench");
+                    engine = engine(20, seatsPerCoach);
+                    journal = new BookingJournal(dir, BookingJournal.recover(dir), Integer.MAX_VALUE, engine::tickets,
+                            engine::waitlisted);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                engine.attachJournal(journal);
+            }
+
+            @Override
+            public long run(int i) {
+                return op.run(engine, i);
+            }
+
+            @Override
+            public void close() {
+                try {
+                    if (journal != null)
+                        journal.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    journal = null;
+                    if (dir != null)
+                        BookingCluster.deleteTree(dir);
+                }
+            }
+        };
+    }
+
+    // Startup recovery of a journal with no snapshot; written once, recovered on every run
+    private static Fixture recovery() {
+        return new Fixture() {
+            private Path dir;
+
+            @Override
+            public void reset() {
+                if (dir == null)
+                    dir = writeJournal(1_000_000);
+            }
+
+            @Override
+            public long run(int i) {
+                try {
+                    return BookingJournal.recover(dir).tickets.size();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                if (dir != null)
+                    BookingCluster.deleteTree(dir);
+            }
+        };
+    }
+
+    // A journal of bookings with every fourth one cancelled again, written straight to the journal
+    private static Path writeJournal(int events) {
+        try {
+            Path dir = Files.createTempDirectory("railway-bench");
+            TicketIds ids = new TicketIds(2);
+            List<Ticket> recent = new ArrayList<>();
+            try (BookingJournal j = new BookingJournal(dir, BookingJournal.recover(dir), Integer.MAX_VALUE,
+                    Collections::emptyList, Collections::emptyList)) {
+                Date now = new Date();
+                CompletableFuture<Void> written = null;
+                for (int i = 0; i < events; i++) {
+                    // Let the writer catch up now and then, so the queue does not hold every event
+                    if (i % 10_000 == 0 && written != null)
+                        written.join();
+                    if (i % 4 == 3 && !recent.isEmpty()) {
+                        written = j.appendCancel(recent.remove(recent.size() - 1));
+                    } else {
+                        Ticket t = new Ticket(TicketIds.format(ids.next()), "Passenger " + (i % 1000), 30,
+                                BookingEngine.seatId("C" + (1 + i % 20), 1 + i % 50_000), "C" + (1 + i % 20),
+                                FIRST, LAST, 500, now);
+                        written = j.appendBook(t);
+                        recent.add(t);
+                        if (recent.size() > 1000)
+                            recent.subList(0, 500).clear();
+                    }
+                }
+            }
+            return dir;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---------- Rendering and export ----------
+
+    // A page of ticket cards painted offscreen, as the ticket list and the PNG export draw them
+    private static Fixture ticketPage() {
+        List<Ticket> cards = bookAll(engine(1, TicketExporter.CARDS_PER_PAGE), TicketExporter.CARDS_PER_PAGE);
+        BufferedImage page = new BufferedImage(TicketExporter.CARDS_ACROSS * TicketCard.WIDTH,
+                TicketExporter.CARDS_DOWN * TicketCard.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        return stateless(i -> {
+            Graphics2D g2 = page.createGraphics();
+            g2.setColor(Color.WHITE);
+            g2.fillRect(0, 0, page.getWidth(), page.getHeight());
+            for (int c = 0; c < cards.size(); c++) {
+                Graphics2D card = (Graphics2D) g2.create((c % TicketExporter.CARDS_ACROSS) * TicketCard.WIDTH,
+                        (c / TicketExporter.CARDS_ACROSS) * TicketCard.HEIGHT, TicketCard.WIDTH, TicketCard.HEIGHT);
+                TicketCard.paint(card, cards.get(c));
+                card.dispose();
+            }
+            g2.dispose();
+            return page.getRGB(i % page.getWidth(), 0);
+        });
+    }
+
+    // The whole manifest exported once per run, as RenderBenchmark sizes it: PNG pages are slow
+    // enough to need a smaller one
+    private static Fixture export(String format) {
+        int tickets = format.equals("png") ? 2400 : 100_000;
+        return new Fixture() {
+            private BookingEngine engine;
+            private Path target;
+
+            @Override
+            public void reset() {
+                if (engine != null)
+                    return;
+                engine = engine(20, 5000);
+                bookAll(engine, tickets);
+                try {
+                    target = Files.createTempDirectory("railway-bench").resolve("export." + format);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public long run(int i) {
+                try {
+                    if (format.equals("csv")) {
+                        new TicketExporter(1).writeCsv(engine, Writer.nullWriter());
+                    } else {
+                        TicketExporter.Format f = TicketExporter.Format.valueOf(format.toUpperCase(Locale.ROOT));
+                        new TicketExporter().export(engine, f, target);
+                        BookingCluster.deleteTree(target);
+                    }
+                    return tickets;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                if (target != null)
+                    BookingCluster.deleteTree(target.getParent());
+            }
+        };
+    }
+
+    // ---------- Footprints ----------
+
+    // Every seat of the fleet sold for the whole route. The inventory the store is keyed by is built
+    // before the measurement starts; names repeat, as passengers' names do, and are interned
+    private static Footprint ticketStore(int coachCount, int seatsPerCoach) {
+        SeatInventory seats = new SeatInventory(coaches(coachCount, seatsPerCoach), STATIONS.length);
+        int tickets = coachCount * seatsPerCoach;
+        return Footprint.of(tickets, () -> {
+            TicketStore store = new TicketStore(seats, STATIONS);
+            TicketIds ids = new TicketIds(1);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < tickets; i++) {
+                store.add(ids.next(), "Passenger " + (i % 10_000), 20 + i % 50,
+                        SeatInventory.key(i / seatsPerCoach, i % seatsPerCoach), 0, STATIONS.length - 1, 50_000, now);
+            }
+            return store;
+        });
+    }
+
+    // The same tickets as RailwaySystem1 kept them before TicketStore: Ticket objects, each with its
+    // own ID, name and seat Strings and Date, in a list and a seat-to-ticket HashMap
+    private static Object legacyTickets(int coachCount, int seatsPerCoach) {
+        List<Ticket> tickets = new ArrayList<>();
+        Map<String, Ticket> seatToTicket = new HashMap<>();
+        TicketIds ids = new TicketIds(1);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < coachCount * seatsPerCoach; i++) {
+            String coach = "C" + (1 + i / seatsPerCoach);
+            String seat = BookingEngine.seatId(coach, 1 + i % seatsPerCoach);
+            Ticket t = new Ticket(TicketIds.format(ids.next()), "Passenger " + (i % 10_000), 20 + i % 50, seat,
+                    coach.intern(), FIRST, LAST, 500, new Date(now));
+            tickets.add(t);
+            seatToTicket.put(seat, t);
+        }
+        return List.of(tickets, seatToTicket);
+    }
+
+    // A one-ticket booking's worth of outcome per request, each with a new key
+    private static Footprint idempotencyFlood(int requests) {
+        return Footprint.of(requests, () -> {
+            IdempotencyCache<byte[]> cache = new IdempotencyCache<>(BookingEngine.IDEMPOTENCY_BYTES,
+                    BookingEngine.IDEMPOTENCY_TTL, v -> 16 + v.length, v -> true);
+            for (int i = 0; i < requests; i++)
+                cache.once(UUID.randomUUID().toString(), () -> new byte[224]);
+            return cache;
+        });
+    }
+
+    // ---------- Helpers ----------
+
+    private static BookingEngine engine(int coachCount, int seatsPerCoach) {
+        return new BookingEngine(coaches(coachCount, seatsPerCoach), prices(coachCount), STATIONS);
+    }
+
+    private static Map<String, Integer> coaches(int count, int seatsPerCoach) {
+        Map<String, Integer> seats = new LinkedHashMap<>();
+        for (int c = 1; c <= count; c++)
+            seats.put("C" + c, seatsPerCoach);
+        return seats;
+    }
+
+    private static Map<String, Integer> prices(int count) {
+        Map<String, Integer> prices = new LinkedHashMap<>();
+        for (int c = 1; c <= count; c++)
+            prices.put("C" + c, 500 * c);
+        return prices;
+    }
+
+    // The i-th seat counting through coaches C1, C2, ... in order
+    private static String seatOf(int i, int seatsPerCoach) {
+        return BookingEngine.seatId("C" + (1 + i / seatsPerCoach), 1 + i % seatsPerCoach);
+    }
+
+    // Books the first n seats, coach by coach, for the whole route; returns the tickets in seat order
+    private static List<Ticket> bookAll(BookingEngine e, int n) {
+        List<String> coaches = new ArrayList<>(e.coaches());
+        int perCoach = e.seatCount(coaches.get(0));
+        List<Ticket> booked = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String seat = BookingEngine.seatId(coaches.get(i / perCoach), 1 + i % perCoach);
+            booked.add(e.tryClaim(seat, "Passenger " + i, 20 + i % 50, FIRST, LAST).orElseThrow());
+        }
+        return booked;
+    }
+
+    private static List<BookingEngine.Passenger> party(int size) {
+        List<BookingEngine.Passenger> party = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            party.add(new BookingEngine.Passenger("Tourist " + i, 20 + i));
+        return party;
+    }
+
+    // The seat map RailwaySystem1 kept before SeatInventory: one boxed entry per "COACH-Sn" key
+    private static Map<String, Boolean> legacySeatMap(int coachCount, int seatsPerCoach) {
+        Map<String, Boolean> seats = new HashMap<>();
+        for (int c = 1; c <= coachCount; c++) {
+            for (int s = 1; s <= seatsPerCoach; s++)
+                seats.put("C" + c + "-S" + s, (s & 1) == 0);
+        }
+        return seats;
+    }
+}
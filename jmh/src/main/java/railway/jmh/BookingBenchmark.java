@@ -0,0 +1,46 @@
+package railway.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Booking on a 100,000-seat departure: one seat at a time, through a hold, with an idempotency key
+ * (new, and retried after it booked) and a 50-passenger party in one group booking or in 50 single
+ * bookings. Each invocation runs a batch on a fresh departure, set up off the clock; the score is
+ * per operation, a party of 50 being one operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookingBenchmark {
+
+    static final int BATCH = 1000;
+
+    @Param({"book.single", "book.held", "book.idempotent", "book.idempotentRetry", "book.group50",
+            "book.oneByOne50"})
+    public String op;
+
+    private Fixture fixture;
+
+    @Setup(Level.Trial)
+    public void create() {
+        fixture = Fixture.named(op);
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        fixture.reset();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void batch(Blackhole bh) {
+        for (int i = 0; i < BATCH; i++)
+            bh.consume(fixture.run(i));
+    }
+}
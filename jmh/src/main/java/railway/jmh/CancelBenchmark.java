@@ -0,0 +1,45 @@
+package railway.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cancelling 20,000 tickets, each shot on tickets booked off the clock: by seat, as the cancel
+ * window does; in random order from a store of 20,000 and of 1,000,000 tickets, and from the
+ * ArrayList the ticket store replaced; and on a full coach with a waitlist as long as the coach, so
+ * every cancellation promotes a waiting passenger.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CancelBenchmark {
+
+    static final int BATCH = 20_000;
+
+    @Param({"cancel.bySeat", "cancel.random.20k", "cancel.random.1m", "cancel.arrayList.20k", "waitlist.promoteBurst"})
+    public String op;
+
+    private Fixture fixture;
+
+    @Setup(Level.Trial)
+    public void create() {
+        fixture = Fixture.named(op);
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        fixture.reset();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void batch(Blackhole bh) {
+        for (int i = 0; i < BATCH; i++)
+            bh.consume(fixture.run(i));
+    }
+}
@@ -0,0 +1,51 @@
+package railway.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Booking attempts per microsecond, summed over 1, 2, 4 and 8 threads fighting over one 64-seat
+ * coach: each books a random leg of a random seat and cancels about a third of what it gets. Seat
+ * claims are lock-free, so the total should grow with the threads up to the number of CPUs; past
+ * that the extra threads only share them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentionBenchmark {
+
+    private Fixture coach;
+
+    @Setup(Level.Trial)
+    public void create() {
+        coach = Fixture.named("book.contended");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long threads1() {
+        return coach.run(0);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public long threads2() {
+        return coach.run(0);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long threads4() {
+        return coach.run(0);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long threads8() {
+        return coach.run(0);
+    }
+}
@@ -0,0 +1,31 @@
+package railway.jmh;
+
+/**
+ * One benchmarked operation on the app's classes. They live in the unnamed package, which the
+ * benchmarks here and the code JMH generates for them cannot import, so the default-package
+ * {@code JmhFixtures} builds fixtures and {@link #named} finds them by name.
+ */
+public interface Fixture {
+
+    /** Puts the fixture back where a measured batch starts; called off the clock. */
+    void reset();
+
+    /** Operation {@code i} of a batch, counting from 0 after each {@link #reset}; returns something to consume. */
+    long run(int i);
+
+    /** Releases what the fixture holds outside the heap (journals, temporary files); called off the clock. */
+    default void close() {
+    }
+
+    static Fixture named(String name) {
+        return (Fixture) make("of", name);
+    }
+
+    static Object make(String factory, String name) {
+        try {
+            return Class.forName("JmhFixtures").getMethod(factory, String.class).invoke(null, name);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot make fixture " + name, e);
+        }
+    }
+}
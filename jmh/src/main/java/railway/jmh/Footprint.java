@@ -0,0 +1,32 @@
+package railway.jmh;
+
+import java.util.function.Supplier;
+
+/**
+ * A structure whose retained heap is measured: {@link #build} makes it, holding {@link #items} seats,
+ * tickets or requests. Found by name in {@code JmhFixtures}, as {@link Fixture}s are.
+ */
+public interface Footprint {
+
+    long items();
+
+    Object build();
+
+    static Footprint named(String name) {
+        return (Footprint) Fixture.make("footprint", name);
+    }
+
+    static Footprint of(long items, Supplier<Object> build) {
+        return new Footprint() {
+            @Override
+            public long items() {
+                return items;
+            }
+
+            @Override
+            public Object build() {
+                return build.get();
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package railway.jmh;
+
+import java.lang.ref.Reference;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Retained heap, reported as the secondary results bytesPerItem and retainedKiB: of the seat
+ * inventory and of the map it replaced, per seat of a 1M-seat fleet; of the ticket store and of the
+ * Ticket objects it replaced, per ticket of 1M; and of one engine's idempotency cache after 250,000
+ * and 2,000,000 requests, each with a new key, which should level off at its budget. The primary
+ * score is only how long building took.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(1)
+public class FootprintBenchmark {
+
+    @Param({"footprint.seatInventory", "footprint.legacySeatMap", "footprint.tickets", "footprint.ticketObjects",
+            "footprint.idempotency250k", "footprint.idempotency2000k"})
+    public String op;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Retained {
+        public double bytesPerItem;
+        public double retainedKiB;
+    }
+
+    @Benchmark
+    public void retained(Retained r) {
+        Footprint f = Footprint.named(op);
+        long before = usedHeap();
+        Object built = f.build();
+        long after = usedHeap();
+        Reference.reachabilityFence(built);
+        r.bytesPerItem = (after - before) / (double) f.items();
+        r.retainedKiB = (after - before) / 1024.0;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,109 @@
+package railway.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Bookings made durable through the journal, each fsynced before the call returns: a 50-passenger
+ * party in one group booking (one fsync) against 50 single bookings (50), per party; and 32 threads
+ * booking at once, sharing group commits. Every batch or iteration gets a fresh departure and
+ * journal. Also startup recovery of a 1,000,000-event journal with no snapshot, per event replayed.
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    static final int PARTIES = 20;
+    static final int RECOVERY_EVENTS = 1_000_000;
+
+    @State(Scope.Thread)
+    public static class Parties {
+        @Param({"journal.group50", "journal.oneByOne50"})
+        public String op;
+
+        Fixture fixture;
+
+        @Setup(Level.Trial)
+        public void create() {
+            fixture = Fixture.named(op);
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            fixture.reset();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            fixture.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final AtomicInteger next = new AtomicInteger();
+        Fixture fixture;
+
+        @Setup(Level.Trial)
+        public void create() {
+            fixture = Fixture.named("journal.book32");
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            fixture.reset();
+            next.set(0);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            fixture.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Recovery {
+        Fixture fixture;
+
+        @Setup(Level.Trial)
+        public void create() {
+            fixture = Fixture.named("journal.recover");
+            fixture.reset();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            fixture.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(PARTIES)
+    public void party(Parties s, Blackhole bh) {
+        for (int i = 0; i < PARTIES; i++)
+            bh.consume(s.fixture.run(i));
+    }
+
+    // Total durable bookings per millisecond across the threads
+    @Benchmark
+    @Threads(32)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long book32(Shared s) {
+        return s.fixture.run(s.next.getAndIncrement());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(RECOVERY_EVENTS)
+    public long recover(Recovery s) {
+        return s.fixture.run(0);
+    }
+}
@@ -0,0 +1,39 @@
+package railway.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Read-only queries on a 30-station, 4,000-seat departure about 60% booked: free seats of a coach,
+ * and of every coach, for a journey; the departure's revenue from running totals and by summing its
+ * tickets; and one seat by its "COACH-Sn" ID. seat.inventoryLookup and seat.legacyMap ask the same
+ * question, whether the seat is free for the whole run, of the seat inventory and of the HashMap it
+ * replaced; seat.isAvailable asks it for a journey between two named stations. Also seats together
+ * for a small party in a 60,000-seat coach 95% full, and fare quotes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"availability.coach", "availability.allCoaches", "report.salesTotals", "report.scanTickets",
+            "seat.isAvailable", "seat.inventoryLookup", "seat.legacyMap", "allocate.95pctFull", "fare.quote"})
+    public String op;
+
+    private Fixture fixture;
+    private int i;
+
+    @Setup(Level.Trial)
+    public void create() {
+        fixture = Fixture.named(op);
+    }
+
+    @Benchmark
+    public long lookup() {
+        return fixture.run(i++);
+    }
+}
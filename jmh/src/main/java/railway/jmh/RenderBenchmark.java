@@ -0,0 +1,92 @@
+package railway.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A page of ticket cards painted into an offscreen image, as the ticket list and the PNG export draw
+ * them; and whole-manifest exports to CSV, PDF and PNG, per ticket. An export starts its own render
+ * threads, so each is timed as a single shot of the whole manifest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    static final int MANIFEST = 100_000;
+    static final int PNG_MANIFEST = 2400;
+
+    @State(Scope.Thread)
+    public static class Page {
+        Fixture fixture;
+        int i;
+
+        @Setup(Level.Trial)
+        public void create() {
+            fixture = Fixture.named("render.ticketPage");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Export {
+        @Param({"export.csv", "export.pdf"})
+        public String op;
+
+        Fixture fixture;
+
+        @Setup(Level.Trial)
+        public void create() {
+            fixture = Fixture.named(op);
+            fixture.reset();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            fixture.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PngExport {
+        Fixture fixture;
+
+        @Setup(Level.Trial)
+        public void create() {
+            fixture = Fixture.named("export.png");
+            fixture.reset();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            fixture.close();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long ticketPage(Page p) {
+        return p.fixture.run(p.i++);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(MANIFEST)
+    public long export(Export e) {
+        return e.fixture.run(0);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    @OperationsPerInvocation(PNG_MANIFEST)
+    public long exportPng(PngExport e) {
+        return e.fixture.run(0);
+    }
+}
@@ -0,0 +1,40 @@
+package railway.jmh;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with JMH's usual command line, writing the results as JSON to
+ * jmh-results.json unless -rf or -rff says otherwise:
+ *
+ * <pre>
+ * mvn package -DskipTests
+ * java -jar jmh/target/benchmarks.jar [JMH options] [benchmark regexp ...]
+ * </pre>
+ *
+ * These are the project's only benchmarks: booking, cancelling, lookups, ticket numbers, the
+ * journal, rendering and export, and heap footprints. {@code -l} lists them, and
+ * {@code -wi 1 -i 1 -w 200ms -r 200ms} gives a quick, rough run. The JSON records the JVM and its
+ * arguments, so runs can be compared from release to release.
+ */
+public class RunBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        if (!cmd.getResultFormat().hasValue())
+            options.resultFormat(ResultFormatType.JSON);
+        if (!cmd.getResult().hasValue())
+            options.result("jmh-results.json");
+        Runner runner = new Runner(options.build());
+        if (cmd.shouldHelp())
+            cmd.showHelp();
+        else if (cmd.shouldList())
+            runner.list();
+        else
+            runner.run();
+    }
+}
@@ -0,0 +1,46 @@
+package railway.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Ticket numbers from one generator, drawn by one thread, by as many threads as there are CPUs and
+ * by 64 threads, however many CPUs there are, as a busy booking node's request threads would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TicketIdBenchmark {
+
+    private Fixture ids;
+
+    @Setup(Level.Trial)
+    public void create() {
+        ids = Fixture.named("ids.next");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long uncontended() {
+        return ids.run(0);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long contended() {
+        return ids.run(0);
+    }
+
+    // Total numbers drawn per microsecond across the 64 threads
+    @Benchmark
+    @Threads(64)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long contended64() {
+        return ids.run(0);
+    }
+}
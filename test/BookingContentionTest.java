@@ -0,0 +1,74 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.Test;
+
+class BookingContentionTest {
+
+    private static final String[] STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
+    private static final int SEATS = 64;
+    private static final int OPS = 200_000;
+
+    // Throughput as threads are added is measured by the jmh module's ContentionBenchmark
+    @Test
+    void threadsFightingOverOneCoachNeverShareASeatLeg() throws Exception {
+        for (int threads = 1; threads <= Math.max(4, Runtime.getRuntime().availableProcessors()); threads *= 2) {
+            BookingEngine e = new BookingEngine(Map.of("S1", SEATS), Map.of("S1", 500), STATIONS);
+            run(e, threads);
+            check(e);
+        }
+    }
+
+    // Every thread books random legs of random seats and cancels about a third of what it gets
+    private static void run(BookingEngine e, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CyclicBarrier start = new CyclicBarrier(threads + 1);
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Random r = new Random(t);
+                done.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < OPS / threads; i++) {
+                        int from = r.nextInt(STATIONS.length - 1);
+                        int to = from + 1 + r.nextInt(STATIONS.length - 1 - from);
+                        Optional<Ticket> booked = e.tryClaim(BookingEngine.seatId("S1", 1 + r.nextInt(SEATS)), "P", 30,
+                                STATIONS[from], STATIONS[to]);
+                        if (booked.isPresent() && r.nextInt(3) == 0)
+                            assertTrue(e.cancel(booked.get()));
+                    }
+                    return null;
+                }));
+            }
+            start.await();
+            for (Future<?> f : done)
+                f.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void check(BookingEngine e) {
+        int segments = STATIONS.length - 1;
+        int[] sold = new int[segments];
+        for (int seat = 1; seat <= SEATS; seat++) {
+            String id = BookingEngine.seatId("S1", seat);
+            boolean[] taken = new boolean[segments];
+            for (Ticket t : e.ticketsForSeat(id)) {
+                int from = Arrays.asList(STATIONS).indexOf(t.from);
+                int to = Arrays.asList(STATIONS).indexOf(t.to);
+                for (int s = from; s < to; s++) {
+                    assertFalse(taken[s], id + " sold twice between " + STATIONS[s] + " and " + STATIONS[s + 1]);
+                    taken[s] = true;
+                    sold[s]++;
+                }
+            }
+            for (int s = 0; s < segments; s++)
+                assertEquals(!taken[s], e.isAvailable(id, STATIONS[s], STATIONS[s + 1]), id + " leg " + s);
+        }
+        for (int s = 0; s < segments; s++)
+            assertEquals(SEATS, e.availableSeats("S1", STATIONS[s], STATIONS[s + 1]) + sold[s], "leg " + s);
+    }
+}
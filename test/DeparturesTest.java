@@ -0,0 +1,68 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DeparturesTest {
+
+    private static final String[] STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
+    private static final Train TRAIN = new Train("T1", "Test Express", STATIONS, Map.of("S1", 64, "S2", 64),
+            Map.of("S1", 500, "S2", 800));
+
+    @Test
+    void everyBookingReturnsWhileTheDepartureIsHandedOffAndBack(@TempDir Path dir) throws Exception {
+        LocalDate date = LocalDate.now().plusDays(1);
+        Set<BookingEngine> engines = ConcurrentHashMap.newKeySet();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger calls = new AtomicInteger();
+        int threads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (Departures departures = new Departures(List.of(TRAIN), dir, 50, ex -> { })) {
+            for (int w = 0; w < threads; w++) {
+                int worker = w;
+                pool.submit(() -> {
+                    for (int i = 0; !stop.get(); i++) {
+                        String seat = BookingEngine.seatId(worker % 2 == 0 ? "S1" : "S2", 1 + (i * threads + worker) % 64);
+                        try {
+                            BookingEngine e = departures.engine(TRAIN.number, date);
+                            engines.add(e);
+                            Optional<Ticket> t = e.tryClaim(seat, "P" + i, 30, "Bangalore", "Kolkata");
+                            if (t.isPresent() && (i & 1) == 0)
+                                e.cancel(t.get());
+                        } catch (Departures.NotOwnedException | UncheckedIOException expected) {
+                            // Handed off mid-call: the caller retries on the owner
+                        }
+                        calls.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            for (int round = 0; round < 300; round++) {
+                departures.restrictTo((train, day) -> false);
+                departures.restrictTo((train, day) -> true);
+                Thread.sleep(0, 200_000);
+            }
+            stop.set(true);
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS), "a booking never returned");
+        } finally {
+            pool.shutdownNow();
+        }
+        assertTrue(calls.get() > 0);
+        // A booking refused by a closed journal gives its seat back
+        for (BookingEngine e : engines) {
+            for (String coach : e.coaches()) {
+                long sold = e.tickets().stream().filter(t -> t.coach.equals(coach)).count();
+                assertEquals(64, e.availableSeats(coach, "Bangalore", "Kolkata") + sold, coach);
+            }
+        }
+    }
+}
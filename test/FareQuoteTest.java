@@ -0,0 +1,48 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+class FareQuoteTest {
+
+    private static final String[] STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
+
+    // Surge tiers start at 5, 8 and 9 of the 10 seats taken
+    private final BookingEngine engine = new BookingEngine(Map.of("S1", 10), Map.of("S1", 500), STATIONS);
+
+    @Test
+    void eachBuyerPaysTheFareQuotedBeforeTheirBooking() {
+        for (int seat = 1; seat <= 10; seat++) {
+            long quoted = engine.farePaise("S1", "Bangalore", "Kolkata", 30);
+            Ticket t = engine.tryClaim(BookingEngine.seatId("S1", seat), "P" + seat, 30, "Bangalore", "Kolkata")
+                    .orElseThrow();
+            assertEquals(quoted, t.pricePaise(), "seat " + seat);
+        }
+        assertTrue(engine.tickets().get(9).pricePaise() > engine.tickets().get(0).pricePaise());
+    }
+
+    @Test
+    void aHeldSeatIsPricedAsItWasQuotedBeforeTheHold() {
+        for (int seat = 1; seat <= 4; seat++)
+            engine.tryClaim(BookingEngine.seatId("S1", seat), "P" + seat, 30, "Bangalore", "Kolkata").orElseThrow();
+        long quoted = engine.farePaise("S1", "Bangalore", "Kolkata", 30);
+        BookingEngine.SeatHold hold = engine.hold("S1-S5", "Bangalore", "Kolkata");
+        assertEquals(quoted, engine.tryClaim(hold, "P5", 30).orElseThrow().pricePaise());
+    }
+
+    @Test
+    void aPartyPaysTheTierBeforeItsOwnSeatsWereClaimed() {
+        for (int seat = 1; seat <= 4; seat++)
+            engine.tryClaim(BookingEngine.seatId("S1", seat), "P" + seat, 30, "Bangalore", "Kolkata").orElseThrow();
+        long adult = engine.farePaise("S1", "Bangalore", "Kolkata", 30);
+        long child = engine.farePaise("S1", "Bangalore", "Kolkata", 8);
+
+        List<Ticket> party = engine.bookGroup("S1", "Bangalore", "Kolkata",
+                List.of(new BookingEngine.Passenger("A", 30), new BookingEngine.Passenger("B", 31),
+                        new BookingEngine.Passenger("C", 8), new BookingEngine.Passenger("D", 32)),
+                BookingEngine.SeatPreference.ANY);
+
+        assertEquals(List.of(adult, adult, child, adult), party.stream().map(Ticket::pricePaise).toList());
+    }
+}
@@ -0,0 +1,108 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GroupBookingTest {
+
+    private static final String[] STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
+
+    @Test
+    void aFailedJournalWriteLeavesNoTicketOrSeatBehind(@TempDir Path dir) throws Exception {
+        BookingEngine e = new BookingEngine(Map.of("S1", 10), Map.of("S1", 500), STATIONS);
+        e.tryClaim(BookingEngine.seatId("S1", 1), "P1", 30, "Bangalore", "Kolkata").orElseThrow();
+        e.tryClaim(BookingEngine.seatId("S1", 2), "P2", 30, "Bangalore", "Kolkata").orElseThrow();
+        BookingJournal journal = new BookingJournal(dir, BookingJournal.recover(dir), 1000, e::tickets,
+                Collections::emptyList);
+        journal.close();
+        e.attachJournal(journal);
+
+        assertThrows(UncheckedIOException.class, () -> e.bookGroup("S1", "Bangalore", "Kolkata", party(3),
+                BookingEngine.SeatPreference.TOGETHER));
+
+        assertEquals(2, e.tickets().size());
+        assertEquals(8, e.availableSeats("S1", "Bangalore", "Kolkata"));
+        for (int seat = 3; seat <= 10; seat++)
+            assertTrue(e.isAvailable(BookingEngine.seatId("S1", seat), "Bangalore", "Kolkata"), "seat " + seat);
+        // The free-run index got the seats back too, so a party filling the rest of the coach still fits
+        e.attachJournal(null);
+        assertEquals(8, e.bookGroup("S1", "Bangalore", "Kolkata", party(8), BookingEngine.SeatPreference.TOGETHER)
+                .size());
+    }
+
+    @Test
+    void aPartyTooBigForTheFreeSeatsBooksNobody() {
+        BookingEngine e = new BookingEngine(Map.of("S1", 10), Map.of("S1", 500), STATIONS);
+        for (int seat = 1; seat <= 4; seat++)
+            e.tryClaim(BookingEngine.seatId("S1", seat), "P" + seat, 30, "Bangalore", "Kolkata").orElseThrow();
+
+        assertEquals(List.of(), e.bookGroup("S1", "Bangalore", "Kolkata", party(7),
+                BookingEngine.SeatPreference.TOGETHER));
+        assertEquals(List.of(), e.bookGroup(null, "Bangalore", "Kolkata", party(7), BookingEngine.SeatPreference.ANY));
+
+        assertEquals(4, e.tickets().size());
+        assertEquals(6, e.availableSeats("S1", "Bangalore", "Kolkata"));
+    }
+
+    // Single bookings race the parties for the last seats, so a party can lose a seat halfway through
+    // claiming its picks and has to give back the ones it already took
+    @Test
+    void aPartyThatRunsOutOfSeatsMidManifestGivesBackWhatItClaimed() throws Exception {
+        int seats = 40;
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 200; round++) {
+                BookingEngine e = new BookingEngine(Map.of("S1", seats), Map.of("S1", 500), STATIONS);
+                Random r = new Random(round);
+                CyclicBarrier start = new CyclicBarrier(2);
+                Future<List<List<Ticket>>> parties = pool.submit(() -> {
+                    start.await();
+                    List<List<Ticket>> booked = new ArrayList<>();
+                    for (int i = 0; i < seats / 7 + 2; i++)
+                        booked.add(e.bookGroup("S1", "Bangalore", "Kolkata", party(7),
+                                BookingEngine.SeatPreference.TOGETHER));
+                    return booked;
+                });
+                Future<?> singles = pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < seats; i++)
+                        e.tryClaim(BookingEngine.seatId("S1", 1 + r.nextInt(seats)), "Solo", 30, "Bangalore", "Kolkata");
+                    return null;
+                });
+                singles.get();
+                int inParties = 0;
+                for (List<Ticket> p : parties.get()) {
+                    assertTrue(p.isEmpty() || p.size() == 7, "round " + round + ": party of " + p.size());
+                    inParties += p.size();
+                }
+
+                int sold = 0;
+                for (int seat = 1; seat <= seats; seat++) {
+                    String id = BookingEngine.seatId("S1", seat);
+                    int onSeat = e.ticketsForSeat(id).size();
+                    assertTrue(onSeat <= 1, "round " + round + ": " + id + " sold " + onSeat + " times");
+                    assertEquals(onSeat == 0, e.isAvailable(id, "Bangalore", "Kolkata"), "round " + round + ": " + id);
+                    sold += onSeat;
+                }
+                assertEquals(e.tickets().size(), sold, "round " + round);
+                assertEquals(seats, e.availableSeats("S1", "Bangalore", "Kolkata") + sold, "round " + round);
+                assertEquals(inParties, e.tickets().stream().filter(t -> !t.name.equals("Solo")).count(),
+                        "round " + round);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<BookingEngine.Passenger> party(int n) {
+        List<BookingEngine.Passenger> manifest = new ArrayList<>();
+        for (int i = 1; i <= n; i++)
+            manifest.add(new BookingEngine.Passenger("Member " + i, 20 + i));
+        return manifest;
+    }
+}
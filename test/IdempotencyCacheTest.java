@@ -0,0 +1,110 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IdempotencyCacheTest {
+
+    private static final String[] STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
+    private static final int REQUESTS = 1_000_000;
+
+    // Retained heap should level off at the budget however many requests pass through
+    @Test
+    void aFloodOfNewKeysStaysWithinTheBudget() {
+        long budget = BookingEngine.IDEMPOTENCY_BYTES;
+        IdempotencyCache<byte[]> cache = new IdempotencyCache<>(budget, BookingEngine.IDEMPOTENCY_TTL,
+                v -> 16 + v.length, v -> true);
+        long settled = 0;
+        for (int i = 1; i <= REQUESTS; i++) {
+            // A one-ticket booking's worth of outcome per request
+            cache.once(UUID.randomUUID().toString(), () -> new byte[224]);
+            if (i % 10_000 == 0)
+                assertTrue(cache.estimatedBytes() <= budget, i + " requests: " + cache.estimatedBytes() + " bytes");
+            if (i == REQUESTS / 10)
+                settled = usedHeap();
+        }
+        long grown = usedHeap() - settled;
+        assertTrue(grown < 4 * budget, "heap grew " + grown / 1024 + " KiB after the cache filled");
+        assertTrue(cache.size() <= budget / IdempotencyCache.ENTRY_BYTES, cache.size() + " entries");
+    }
+
+    @Test
+    void aRetryWithinTheTtlGetsTheSameTicket() {
+        BookingEngine e = new BookingEngine(Map.of("S1", 10), Map.of("S1", 500), STATIONS);
+        Ticket first = e.tryClaim("req-1", "S1-S1", "Asha", 30, "Bangalore", "Kolkata").orElseThrow();
+        e.tryClaim("req-2", "S1-S2", "Ravi", 40, "Bangalore", "Kolkata").orElseThrow();
+
+        Ticket retried = e.tryClaim("req-1", "S1-S1", "Asha", 30, "Bangalore", "Kolkata").orElseThrow();
+
+        assertEquals(first.ticketId, retried.ticketId);
+        assertEquals(2, e.tickets().size());
+        assertEquals(8, e.availableSeats("S1", "Bangalore", "Kolkata"));
+    }
+
+    @Test
+    void aRetriedPartyGetsTheSameTickets() {
+        BookingEngine e = new BookingEngine(Map.of("S1", 10), Map.of("S1", 500), STATIONS);
+        List<BookingEngine.Passenger> party = List.of(new BookingEngine.Passenger("A", 30),
+                new BookingEngine.Passenger("B", 8), new BookingEngine.Passenger("C", 60));
+        List<Ticket> first = e.bookGroup("group-1", "S1", "Bangalore", "Kolkata", party,
+                BookingEngine.SeatPreference.TOGETHER);
+
+        List<Ticket> retried = e.bookGroup("group-1", "S1", "Bangalore", "Kolkata", party,
+                BookingEngine.SeatPreference.TOGETHER);
+
+        assertEquals(3, first.size());
+        assertEquals(ticketIds(first), ticketIds(retried));
+        assertEquals(3, e.tickets().size());
+    }
+
+    // req-1 and group-1 come back from a snapshot, req-2 and the cancellation from the journal after it
+    @Test
+    void aRetryAfterARestartGetsTheSameTickets(@TempDir Path dir) throws Exception {
+        List<BookingEngine.Passenger> party = List.of(new BookingEngine.Passenger("A", 30),
+                new BookingEngine.Passenger("B", 8));
+        BookingEngine before = new BookingEngine(Map.of("S1", 10), Map.of("S1", 500), STATIONS);
+        BookingJournal journal = attachJournal(before, dir);
+        Ticket asha = before.tryClaim("req-1", "S1-S1", "Asha", 30, "Bangalore", "Kolkata").orElseThrow();
+        List<Ticket> group = before.bookGroup("group-1", "S1", "Bangalore", "Kolkata", party,
+                BookingEngine.SeatPreference.ANY);
+        Ticket ravi = before.tryClaim("req-2", "S1-S9", "Ravi", 40, "Bangalore", "Kolkata").orElseThrow();
+        assertTrue(before.cancel(asha));
+        journal.close();
+
+        BookingEngine after = new BookingEngine(Map.of("S1", 10), Map.of("S1", 500), STATIONS);
+        journal = attachJournal(after, dir);
+        assertEquals(asha.ticketId, after.tryClaim("req-1", "S1-S1", "Asha", 30, "Bangalore", "Kolkata")
+                .orElseThrow().ticketId);
+        assertEquals(ticketIds(group), ticketIds(after.bookGroup("group-1", "S1", "Bangalore", "Kolkata", party,
+                BookingEngine.SeatPreference.ANY)));
+        assertEquals(ravi.ticketId, after.tryClaim("req-2", "S1-S9", "Ravi", 40, "Bangalore", "Kolkata")
+                .orElseThrow().ticketId);
+        // The cancelled ticket is not booked again by its retry
+        assertEquals(3, after.tickets().size());
+        assertTrue(after.isAvailable("S1-S1", "Bangalore", "Kolkata"));
+        journal.close();
+    }
+
+    // As a departure opens its bookings, with a snapshot every three events
+    private static BookingJournal attachJournal(BookingEngine e, Path dir) throws Exception {
+        BookingJournal.Recovered state = BookingJournal.recover(dir);
+        e.restore(state.tickets, state.waitlisted, state.requests);
+        BookingJournal journal = new BookingJournal(dir, state, 3, e::tickets, e::waitlisted, e::keyedRequests);
+        e.attachJournal(journal);
+        return journal;
+    }
+
+    private static List<String> ticketIds(List<Ticket> tickets) {
+        return tickets.stream().map(t -> t.ticketId).toList();
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsTest {
+
+    private static final String[] STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
+
+    private static long value(String name) {
+        Number v = Metrics.process().snapshot().get(name);
+        return v == null ? 0 : v.longValue();
+    }
+
+    @Test
+    void bookingsCancellationsAndFailuresAreCountedExactly() {
+        BookingEngine e = new BookingEngine(Map.of("S1", 1000), Map.of("S1", 500), STATIONS);
+        long booked = value("booking.booked");
+        long failed = value("booking.failed");
+        long cancelled = value("booking.cancelled");
+
+        List<Ticket> tickets = new ArrayList<>();
+        for (int seat = 1; seat <= 1000; seat++)
+            tickets.add(e.tryClaim(BookingEngine.seatId("S1", seat), "P", 30, "Bangalore", "Kolkata").orElseThrow());
+        for (int seat = 1; seat <= 10; seat++)
+            assertTrue(e.tryClaim(BookingEngine.seatId("S1", seat), "P", 30, "Bangalore", "Chennai").isEmpty());
+        assertTrue(e.bookGroup("S1", "Bangalore", "Kolkata",
+                List.of(new BookingEngine.Passenger("A", 30)), BookingEngine.SeatPreference.ANY).isEmpty());
+        for (int i = 0; i < 300; i++)
+            assertTrue(e.cancel(tickets.get(i)));
+        assertFalse(e.cancel(tickets.get(0)));
+        assertEquals(2, e.bookGroup("S1", "Bangalore", "Kolkata",
+                List.of(new BookingEngine.Passenger("A", 30), new BookingEngine.Passenger("B", 8)),
+                BookingEngine.SeatPreference.TOGETHER).size());
+
+        assertEquals(1001, value("booking.booked") - booked);
+        assertEquals(11, value("booking.failed") - failed);
+        assertEquals(300, value("booking.cancelled") - cancelled);
+    }
+
+    @Test
+    void openDeparturesAreCountedAcrossInstances() {
+        Train train = RailwaySystem1.trains().get(0);
+        LocalDate date = LocalDate.now();
+        while (!train.runsOn(date))
+            date = date.plusDays(1);
+        long before = value("departures.open");
+        try (Departures a = new Departures(RailwaySystem1.trains(), null, 1000, ex -> { });
+                Departures b = new Departures(RailwaySystem1.trains(), null, 1000, ex -> { })) {
+            a.engine(train.number, date);
+            b.engine(train.number, date);
+            b.engine(train.number, date.plusDays(7));
+            assertEquals(before + 3, value("departures.open"));
+            a.close();
+            assertEquals(before + 2, value("departures.open"));
+        }
+        assertEquals(before, value("departures.open"));
+    }
+}
@@ -0,0 +1,42 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+class SeatInventoryTest {
+
+    // Six stations, so five segments
+    private final SeatInventory seats = new SeatInventory(Map.of("S1", 4), 6);
+
+    @Test
+    void anExpiredHoldIsFreeToEveryReader() {
+        long past = System.currentTimeMillis() - 1;
+        for (int seat = 0; seat < 4; seat++)
+            assertTrue(seats.hold(SeatInventory.key(0, seat), 0, 5, past));
+
+        assertEquals(4, seats.available(0, 0, 5));
+        assertEquals(4, seats.available(0, 2, 3));
+        assertTrue(seats.isAvailable(SeatInventory.key(0, 3), 0, 5));
+        assertEquals(0, seats.takenSegments(SeatInventory.key(0, 3)));
+        assertArrayEquals(new int[] {SeatInventory.key(0, 0), SeatInventory.key(0, 1)},
+                seats.findSeats(0, 0, 5, 2, true));
+    }
+
+    @Test
+    void aLiveHoldStaysTakenUntilItsDeadline() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 200;
+        assertTrue(seats.hold(SeatInventory.key(0, 0), 1, 3, deadline));
+        assertTrue(seats.hold(SeatInventory.key(0, 1), 1, 3, Long.MAX_VALUE - 1));
+        assertEquals(2, seats.available(0, 1, 3));
+        assertEquals(4, seats.available(0, 3, 5));
+
+        while (System.currentTimeMillis() <= deadline)
+            Thread.sleep(deadline + 1 - System.currentTimeMillis());
+        assertEquals(3, seats.available(0, 1, 3));
+        assertFalse(seats.isAvailable(SeatInventory.key(0, 1), 1, 3));
+        // The expired hold cannot be confirmed, but its seat can be claimed afresh
+        assertFalse(seats.confirm(SeatInventory.key(0, 0), 1, 3, deadline));
+        assertTrue(seats.claim(SeatInventory.key(0, 0), 0, 5));
+    }
+}
@@ -0,0 +1,81 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+class TicketStoreTest {
+
+    private static final String[] STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
+
+    @Test
+    void restoreSkipsADuplicateTicketIdAndFreesItsSeat() {
+        BookingEngine e = new BookingEngine(Map.of("S1", 10), Map.of("S1", 500), STATIONS);
+        String id = TicketIds.format(new TicketIds(1).next());
+        Date now = new Date();
+        Ticket first = new Ticket(id, "Asha", 30, "S1-S1", "S1", "Bangalore", "Kolkata", 500, now);
+        Ticket duplicate = new Ticket(id, "Ravi", 40, "S1-S2", "S1", "Bangalore", "Kolkata", 500, now);
+
+        e.restore(List.of(first, duplicate));
+
+        assertEquals(1, e.ticketCount());
+        List<Ticket> all = e.tickets();
+        assertEquals(1, all.size());
+        assertEquals("Asha", all.get(0).name);
+        assertEquals("S1-S1", all.get(0).seat);
+        assertTrue(e.isAvailable("S1-S2", "Bangalore", "Kolkata"));
+    }
+
+    @Test
+    void aRejectedDuplicateLeavesNoRecordBehindForTheNextTicket() {
+        SeatInventory seats = new SeatInventory(Map.of("S1", 10), STATIONS.length);
+        TicketStore store = new TicketStore(seats, STATIONS);
+        store.add(7, "Asha", 30, SeatInventory.key(0, 0), 0, 5, 50_000, 1000);
+        assertThrows(IllegalStateException.class,
+                () -> store.add(7, "Ravi", 40, SeatInventory.key(0, 1), 0, 5, 50_000, 2000));
+        assertEquals(List.of("Asha"), names(store.all()));
+        assertTrue(store.bySeat("S1-S2").isEmpty());
+
+        // Takes the slot the duplicate gave back
+        store.add(8, "Meera", 50, SeatInventory.key(0, 2), 0, 5, 50_000, 3000);
+        assertEquals(List.of("Asha", "Meera"), names(store.all()));
+        assertEquals(2, store.sales().tickets());
+    }
+
+    @Test
+    void anAgeTooBigForItsByteLeavesTheSeatAndRouteIntact() {
+        SeatInventory seats = new SeatInventory(Map.of("S1", 10), STATIONS.length);
+        TicketStore store = new TicketStore(seats, STATIONS);
+        store.add(7, "Asha", -1, SeatInventory.key(0, 3), 1, 3, 50_000, 1000);
+        store.add(8, "Ravi", 300, SeatInventory.key(0, 4), 2, 4, 50_000, 2000);
+
+        Ticket asha = store.bySeat("S1-S4").get(0);
+        assertEquals("Chennai", asha.from);
+        assertEquals("Hyderabad", asha.to);
+        Ticket ravi = store.bySeat("S1-S5").get(0);
+        assertEquals("Mumbai", ravi.from);
+        assertEquals("Delhi", ravi.to);
+    }
+
+    @Test
+    void theEngineRejectsAnAgeOutOfRangeBeforeTakingASeat() {
+        BookingEngine e = new BookingEngine(Map.of("S1", 10), Map.of("S1", 500), STATIONS);
+        assertThrows(IllegalArgumentException.class,
+                () -> e.tryClaim("S1-S1", "Asha", -1, "Bangalore", "Kolkata"));
+        assertThrows(IllegalArgumentException.class,
+                () -> e.bookGroup("S1", "Bangalore", "Kolkata", List.of(new BookingEngine.Passenger("A", 30),
+                        new BookingEngine.Passenger("B", 121)), BookingEngine.SeatPreference.ANY));
+        assertThrows(IllegalArgumentException.class,
+                () -> e.joinWaitlist("S1", "Ravi", 500, "Bangalore", "Kolkata"));
+
+        assertEquals(0, e.ticketCount());
+        assertEquals(10, e.availableSeats("S1", "Bangalore", "Kolkata"));
+    }
+
+    private static List<String> names(List<Ticket> tickets) {
+        List<String> out = new ArrayList<>();
+        for (Ticket t : tickets)
+            out.add(t.name);
+        return out;
+    }
+}
@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class WaitlistStressTest {
+
+    private static final String[] STATIONS = {"Bangalore", "Chennai", "Mumbai", "Hyderabad", "Delhi", "Kolkata"};
+    private static final int SEATS = 5000;
+    private static final int CANCELLED = 4000;
+    // Journeys passengers wait for; each is its own queue (bucket) within the coach
+    private static final String[][] JOURNEYS = {{"Bangalore", "Kolkata"}, {"Bangalore", "Mumbai"}, {"Mumbai", "Kolkata"}};
+    private static final int WAITING_PER_JOURNEY = 4000;
+
+    @Test
+    void aCancellationBurstPromotesInOrderWhileBookingsGoOn() throws Exception {
+        BookingEngine e = new BookingEngine(new LinkedHashMap<>(Map.of("GEN", SEATS, "RES", 100)),
+                Map.of("GEN", 500, "RES", 900), STATIONS);
+        List<Ticket> sold = new ArrayList<>(SEATS);
+        for (int seat = 1; seat <= SEATS; seat++)
+            sold.add(e.tryClaim(BookingEngine.seatId("GEN", seat), "Sold " + seat, 30, "Bangalore", "Kolkata").orElseThrow());
+        List<List<String>> joined = new ArrayList<>();
+        for (String[] j : JOURNEYS)
+            joined.add(new ArrayList<>());
+        for (int i = 0; i < WAITING_PER_JOURNEY * JOURNEYS.length; i++) {
+            int j = i % JOURNEYS.length;
+            Ticket w = e.joinWaitlist("GEN", "Waiting " + i, 30, JOURNEYS[j][0], JOURNEYS[j][1]);
+            assertNotNull(e.waitlistStatus(w.ticketId));
+            joined.get(j).add(w.ticketId);
+        }
+        Collections.shuffle(sold, new Random(5));
+
+        // Meanwhile: bookings and cancellations in the other coach, and attempts to jump the queue in this one
+        AtomicBoolean burstOver = new AtomicBoolean();
+        AtomicLong booked = new AtomicLong();
+        AtomicLong slowest = new AtomicLong();
+        AtomicLong jumped = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        List<Future<?>> bookers = new ArrayList<>();
+        for (int b = 0; b < 2; b++) {
+            int booker = b;
+            bookers.add(pool.submit(() -> {
+                for (int i = 0; !burstOver.get(); i++) {
+                    long start = System.nanoTime();
+                    Optional<Ticket> t = e.tryClaim(BookingEngine.seatId("RES", 1 + booker * 50 + i % 50), "New", 30,
+                            "Bangalore", "Kolkata");
+                    t.ifPresent(e::cancel);
+                    if (e.tryClaim(BookingEngine.seatId("GEN", 1 + i % SEATS), "Jumper", 30, "Bangalore", "Kolkata")
+                            .isPresent())
+                        jumped.incrementAndGet();
+                    slowest.accumulateAndGet(System.nanoTime() - start, Math::max);
+                    if (t.isPresent())
+                        booked.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        long start = System.nanoTime();
+        List<Future<?>> cancellers = new ArrayList<>();
+        for (int c = 0; c < 4; c++) {
+            List<Ticket> share = sold.subList(c * CANCELLED / 4, (c + 1) * CANCELLED / 4);
+            cancellers.add(pool.submit(() -> {
+                for (Ticket t : share)
+                    assertTrue(e.cancel(t));
+                return null;
+            }));
+        }
+        for (Future<?> f : cancellers)
+            f.get(60, TimeUnit.SECONDS);
+        long burstNanos = System.nanoTime() - start;
+        long bookedDuringBurst = booked.get();
+        burstOver.set(true);
+        for (Future<?> f : bookers)
+            f.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+        System.out.printf(Locale.ROOT, "%,d cancellations in %,d ms; %,d bookings meanwhile, slowest %.1f ms%n", CANCELLED,
+                burstNanos / 1_000_000, bookedDuringBurst, slowest.get() / 1e6);
+
+        assertTrue(bookedDuringBurst > 0, "no booking went through during the burst");
+        assertTrue(slowest.get() < TimeUnit.SECONDS.toNanos(2), "a booking stalled for " + slowest.get() / 1e6 + " ms");
+        assertEquals(0, jumped.get(), "a new booking took a seat someone was waiting for");
+
+        // Per journey: the promoted are the earliest to join, and the rest still wait in order
+        Set<String> stillWaiting = new HashSet<>();
+        for (Ticket w : e.waitlisted())
+            stillWaiting.add(w.ticketId);
+        int promoted = 0;
+        for (int j = 0; j < JOURNEYS.length; j++) {
+            List<String> queue = joined.get(j);
+            int first = 0;
+            while (first < queue.size() && !stillWaiting.contains(queue.get(first))) {
+                Ticket t = e.ticketById(queue.get(first));
+                assertNotNull(t, queue.get(first) + " left the waitlist without a seat");
+                first++;
+            }
+            for (int i = first; i < queue.size(); i++)
+                assertTrue(stillWaiting.contains(queue.get(i)), "promoted out of turn: " + queue.get(i));
+            assertTrue(first < queue.size(), "the waitlist should outlast the burst");
+            promoted += first;
+        }
+        assertEquals(SEATS - CANCELLED + promoted, e.tickets().stream().filter(t -> t.coach.equals("GEN")).count());
+
+        // Those left are numbered afresh across all journeys: RAC first, then WL, in joining order
+        List<Ticket> left = e.waitlisted();
+        for (int i = 0; i < left.size(); i++) {
+            int position = i + 1;
+            String expected = position <= Waitlist.RAC_PER_COACH ? "RAC " + position
+                    : "WL " + (position - Waitlist.RAC_PER_COACH);
+            assertEquals(expected, e.waitlistStatus(left.get(i).ticketId));
+        }
+
+        // No seat leg granted twice, and the inventory agrees with the tickets
+        for (int seat = 1; seat <= SEATS; seat++) {
+            String id = BookingEngine.seatId("GEN", seat);
+            boolean[] taken = new boolean[STATIONS.length - 1];
+            for (Ticket t : e.ticketsForSeat(id)) {
+                for (int s = Arrays.asList(STATIONS).indexOf(t.from); s < Arrays.asList(STATIONS).indexOf(t.to); s++) {
+                    assertFalse(taken[s], id + " granted twice on leg " + s);
+                    taken[s] = true;
+                }
+            }
+            for (int s = 0; s < taken.length; s++)
+                assertEquals(!taken[s], e.isAvailable(id, STATIONS[s], STATIONS[s + 1]), id + " leg " + s);
+        }
+    }
+}